@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.util.Date;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+
+/**
+ * A lightweight description of an entry in an archive, as returned by {@link Archiver#list(java.io.File)}.
+ * <br>
+ * As opposed to an {@link ArchiveEntry}, an ArchiveEntryInfo is a plain value that does not depend on an open
+ * {@link ArchiveStream}, and can therefore not be used to extract the entry.
+ */
+public final class ArchiveEntryInfo {
+
+    private final String name;
+    private final long size;
+    private final Date lastModifiedDate;
+    private final boolean directory;
+
+    ArchiveEntryInfo(String name, long size, Date lastModifiedDate, boolean directory) {
+        this.name = name;
+        this.size = size;
+        this.lastModifiedDate = lastModifiedDate;
+        this.directory = directory;
+    }
+
+    /**
+     * Creates an ArchiveEntryInfo that describes the given commons-compress entry.
+     * 
+     * @param entry the entry to describe
+     * @return a new ArchiveEntryInfo
+     */
+    static ArchiveEntryInfo of(org.apache.commons.compress.archivers.ArchiveEntry entry) {
+        Date lastModifiedDate;
+        if (entry instanceof SevenZArchiveEntry && !((SevenZArchiveEntry) entry).getHasLastModifiedDate()) {
+            lastModifiedDate = null;
+        } else {
+            lastModifiedDate = entry.getLastModifiedDate();
+        }
+
+        return new ArchiveEntryInfo(entry.getName(), entry.getSize(), lastModifiedDate, entry.isDirectory());
+    }
+
+    /**
+     * The name of the entry in the archive. May refer to a file or directory or other item.
+     * 
+     * @return the name of the item
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The (uncompressed) size of the entry. May be {@link ArchiveEntry#UNKNOWN_SIZE} if the size is unknown.
+     * 
+     * @return the size of the entry once uncompressed, or -1 if unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the last modified date of the entry.
+     * 
+     * @return the date the entry was last modified, or null if the archive does not record it
+     */
+    public Date getLastModifiedDate() {
+        return (lastModifiedDate != null) ? new Date(lastModifiedDate.getTime()) : null;
+    }
+
+    /**
+     * Checks whether the entry is a directory.
+     * 
+     * @return true if the entry refers to a directory
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + size + " bytes)";
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of opened archives, s.t. the central directory of a ZIP archive or the header database of a 7z
+ * archive is parsed once instead of on every access. Can be shared by archivers through
+ * {@link ReadOptions#setHandleCache(ArchiveHandleCache)}.
+ * <br>
+ * Archives are cached by their path, and an archive is opened anew if its modification time or size changed. When
+ * the cache is full, the least recently used archive is evicted. Archives are reference counted, s.t. an evicted
+ * archive is only closed once the last stream or extraction that uses it is done.
+ * <br>
+ * An opened ZIP archive can be read by several threads at once. A 7z archive can only be read by one thread at a time,
+ * so if its cached handle is in use, the archive is opened another time without caching it.
+ */
+public final class ArchiveHandleCache {
+
+    private final int maximumSize;
+
+    private final Map<Key, Handle> handles = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache that keeps up to the given amount of archives open.
+     * 
+     * @param maximumSize the maximum amount of cached archives
+     * @throws IllegalArgumentException if maximumSize is smaller than one
+     */
+    public ArchiveHandleCache(int maximumSize) throws IllegalArgumentException {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1, was " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Returns the maximum amount of cached archives.
+     * 
+     * @return the maximum size
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the amount of currently cached archives.
+     * 
+     * @return the size of the cache
+     */
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    /**
+     * Returns how often an archive was served from the cache.
+     * 
+     * @return the amount of cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how often an archive had to be opened.
+     * 
+     * @return the amount of cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns how often an archive was removed from the cache, because the cache was full or the archive changed.
+     * 
+     * @return the amount of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Removes all archives from the cache. Archives that are not in use are closed immediately, all others once they
+     * are released.
+     */
+    public void invalidateAll() {
+        List<Handle> closeable = new ArrayList<>();
+
+        synchronized (this) {
+            for (Handle handle : handles.values()) {
+                if (handle.evict()) {
+                    closeable.add(handle);
+                }
+            }
+            handles.clear();
+        }
+
+        closeAll(closeable);
+    }
+
+    /**
+     * Leases the given archive from the cache, opening it with the given opener if it is not cached.
+     * 
+     * @param archive the archive file
+     * @param type the type of the opened archive
+     * @param shared whether the opened archive can be used by several leases at once
+     * @param opener opens the archive on a cache miss
+     * @return a lease that has to be closed to release the archive
+     * @throws IOException if the archive could not be opened
+     */
+    <T extends Closeable> Lease<T> lease(File archive, Class<T> type, boolean shared, Opener<T> opener)
+        throws IOException {
+        return lease(archive, type, "", shared, opener);
+    }
+
+    /**
+     * Leases the given archive like {@link #lease(File, Class, boolean, Opener)}, where archives that are opened in
+     * different ways are told apart by the given variant, s.t. each is cached separately.
+     * 
+     * @param archive the archive file
+     * @param type the type of the opened archive
+     * @param variant the way the opener opens the archive
+     * @param shared whether the opened archive can be used by several leases at once
+     * @param opener opens the archive on a cache miss
+     * @return a lease that has to be closed to release the archive
+     * @throws IOException if the archive could not be opened
+     */
+    <T extends Closeable> Lease<T> lease(File archive, Class<T> type, String variant, boolean shared,
+        Opener<T> opener) throws IOException {
+        Key key = new Key(archive.getAbsoluteFile(), type, variant);
+        long lastModified = archive.lastModified();
+        long length = archive.length();
+
+        List<Handle> closeable = new ArrayList<>();
+        boolean cache;
+
+        synchronized (this) {
+            Handle handle = handles.get(key);
+
+            if (handle != null && (handle.lastModified != lastModified || handle.length != length)) {
+                remove(key, handle, closeable);
+                handle = null;
+            }
+
+            if (handle != null && (shared || handle.references == 0)) {
+                hits++;
+                handle.references++;
+                return new Lease<>(this, handle, type.cast(handle.archive));
+            }
+
+            misses++;
+            cache = handle == null;
+        }
+
+        closeAll(closeable);
+
+        T opened = opener.open(archive);
+        if (!cache) {
+            return Lease.of(opened);
+        }
+
+        Lease<T> lease;
+        synchronized (this) {
+            if (handles.containsKey(key)) {
+                // another thread cached the archive in the meantime
+                return Lease.of(opened);
+            }
+
+            Handle handle = new Handle(opened, lastModified, length);
+            handle.references++;
+            handles.put(key, handle);
+            lease = new Lease<>(this, handle, opened);
+
+            Iterator<Map.Entry<Key, Handle>> eldest = handles.entrySet().iterator();
+            while (handles.size() > maximumSize) {
+                Handle evicted = eldest.next().getValue();
+                eldest.remove();
+                evictions++;
+                if (evicted.evict()) {
+                    closeable.add(evicted);
+                }
+            }
+        }
+
+        // evicted archives are closed outside of the lock
+        closeAll(closeable);
+        return lease;
+    }
+
+    private void remove(Key key, Handle handle, List<Handle> closeable) {
+        handles.remove(key);
+        evictions++;
+        if (handle.evict()) {
+            closeable.add(handle);
+        }
+    }
+
+    private void release(Handle handle) {
+        boolean close;
+        synchronized (this) {
+            handle.references--;
+            close = handle.evicted && handle.references == 0;
+        }
+        if (close) {
+            IOUtils.closeQuietly(handle.archive);
+        }
+    }
+
+    private static void closeAll(List<Handle> handles) {
+        for (Handle handle : handles) {
+            IOUtils.closeQuietly(handle.archive);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ArchiveHandleCache[size=%d, hits=%d, misses=%d, evictions=%d]", handles.size(), hits,
+                misses, evictions);
+    }
+
+    /**
+     * Opens an archive on a cache miss.
+     */
+    interface Opener<T extends Closeable> {
+        T open(File archive) throws IOException;
+    }
+
+    /**
+     * The use of an opened archive, which releases the archive when it is closed. If the archive is not cached, closing
+     * the lease closes the archive.
+     */
+    static final class Lease<T extends Closeable> implements Closeable {
+        private final ArchiveHandleCache cache;
+        private final Handle handle;
+        private final T archive;
+
+        private boolean closed;
+
+        private Lease(ArchiveHandleCache cache, Handle handle, T archive) {
+            this.cache = cache;
+            this.handle = handle;
+            this.archive = archive;
+        }
+
+        /**
+         * Creates a lease of an archive that is not cached.
+         * 
+         * @param archive the opened archive
+         * @return a lease that closes the archive
+         */
+        static <T extends Closeable> Lease<T> of(T archive) {
+            return new Lease<>(null, null, archive);
+        }
+
+        T get() {
+            return archive;
+        }
+
+        /**
+         * Returns whether the archive is kept open after the lease is closed, i.e. whether it may be used again.
+         */
+        boolean isCached() {
+            return cache != null;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (cache != null) {
+                cache.release(handle);
+            } else {
+                archive.close();
+            }
+        }
+    }
+
+    private static final class Handle {
+        private final Closeable archive;
+        private final long lastModified;
+        private final long length;
+
+        private int references;
+        private boolean evicted;
+
+        Handle(Closeable archive, long lastModified, long length) {
+            this.archive = archive;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        /**
+         * Marks the handle as evicted and returns whether it can be closed right away.
+         */
+        boolean evict() {
+            evicted = true;
+            return references == 0;
+        }
+    }
+
+    private static final class Key {
+        private final File path;
+        private final Class<?> type;
+        private final String variant;
+
+        Key(File path, Class<?> type, String variant) {
+            this.path = path;
+            this.type = type;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && type.equals(other.type) && variant.equals(other.variant);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * path.hashCode() + type.hashCode()) + variant.hashCode();
+        }
+    }
+}
@@ -18,6 +18,9 @@ package org.rauschig.jarchivelib;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 /**
  * An Archiver facades a specific archiving library, allowing for simple archiving of files and directories, and
@@ -61,6 +64,62 @@ public interface Archiver {
      */
     File create(String archive, File destination, File... sources) throws IOException;
 
+    /**
+     * Creates an archive from the given source file or directory, and writes it into the given stream.
+     * <br>
+     * If the source is a directory, the archive will contain all the files in that directory, but not the directory
+     * itself.
+     * <br>
+     * The archive is written while the sources are read, without intermediate files. The stream is flushed, but not
+     * closed.
+     *
+     * @param destination the stream to write the archive to
+     * @param source the input file or directory to archive
+     * @throws IOException propagated I/O errors by {@code java.io}, or if the archive format can not be written
+     *             sequentially (e.g. 7z)
+     */
+    void create(OutputStream destination, File source) throws IOException;
+
+    /**
+     * Creates an archive from the given source files or directories, and writes it into the given stream.
+     * <br>
+     * If the source is a directory, the archive will contain all the files in that directory, but not the directory
+     * itself.
+     * <br>
+     * The archive is written while the sources are read, without intermediate files. The stream is flushed, but not
+     * closed.
+     *
+     * @param destination the stream to write the archive to
+     * @param sources the input files or directories to archive
+     * @throws IOException propagated I/O errors by {@code java.io}, or if the archive format can not be written
+     *             sequentially (e.g. 7z)
+     */
+    void create(OutputStream destination, File... sources) throws IOException;
+
+    /**
+     * Creates an archive from the given source file or directory, and writes it into the given channel. The channel is
+     * not closed.
+     *
+     * @param destination the channel to write the archive to
+     * @param source the input file or directory to archive
+     * @throws IOException propagated I/O errors by {@code java.io}, or if the archive format can not be written
+     *             sequentially (e.g. 7z)
+     * @see #create(OutputStream, File)
+     */
+    void create(WritableByteChannel destination, File source) throws IOException;
+
+    /**
+     * Creates an archive from the given source files or directories, and writes it into the given channel. The channel
+     * is not closed.
+     *
+     * @param destination the channel to write the archive to
+     * @param sources the input files or directories to archive
+     * @throws IOException propagated I/O errors by {@code java.io}, or if the archive format can not be written
+     *             sequentially (e.g. 7z)
+     * @see #create(OutputStream, File...)
+     */
+    void create(WritableByteChannel destination, File... sources) throws IOException;
+
     /**
      * Extracts the given archive file into the given destination directory.
      * <br>
@@ -72,6 +131,20 @@ public interface Archiver {
      */
     void extract(File archive, File destination) throws IOException;
 
+    /**
+     * Extracts the given archive file into the given destination directory, as specified by the given options.
+     * <br>
+     * The destination is expected to be a writable directory. Entries that are not accepted by the
+     * {@link ExtractOptions#getFilter() filter} of the options are skipped without reading their data where the archive
+     * format allows it.
+     * 
+     * @param archive the archive file to extract
+     * @param destination the directory to which to extract the files
+     * @param options the extraction options
+     * @throws IOException propagated I/O errors by {@code java.io}
+     */
+    void extract(File archive, File destination, ExtractOptions options) throws IOException;
+
     /**
      * Extracts the given archive supplied as an input stream into the given destination directory.
      * <br>
@@ -93,6 +166,19 @@ public interface Archiver {
      */
     ArchiveStream stream(File archive) throws IOException;
 
+    /**
+     * Lists the entries of the given archive file without extracting them.
+     * <br>
+     * Only the metadata of the archive is read where the format allows it: the central directory of ZIP archives, the
+     * header database of 7z archives, and the headers of tar archives, whose entry data is skipped. Compressed
+     * archives have to be decompressed sequentially to find the entries.
+     * 
+     * @param archive the archive file to list
+     * @return descriptors of the entries, in the order they appear in the archive
+     * @throws IOException propagated I/O errors by {@code java.io}
+     */
+    List<ArchiveEntryInfo> list(File archive) throws IOException;
+
     /**
      * Returns the filename extension that indicates the file format this archiver handles. E.g .tar" or ".zip". In case
      * of compressed archives, it will return the composite filename extensions, e.g. ".tar.gz"
@@ -16,17 +16,25 @@
 package org.rauschig.jarchivelib;
 
 import static org.rauschig.jarchivelib.CommonsStreamFactory.createArchiveInputStream;
-import static org.rauschig.jarchivelib.CommonsStreamFactory.createCompressorInputStream;
+import static org.rauschig.jarchivelib.CommonsStreamFactory.createRandomAccessCompressorInputStream;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.compressors.CompressorInputStream;
 
 /**
  * Decorates an {@link Archiver} with a {@link Compressor}, s.t. it is able to compress the archives it generates and
@@ -57,23 +65,68 @@ class ArchiverCompressorDecorator implements Archiver {
     public File create(String archive, File destination, File... sources) throws IOException {
         IOUtils.requireDirectory(destination);
 
-        File temp = File.createTempFile(destination.getName(), archiver.getFilenameExtension(), destination);
-        File destinationArchive = null;
+        File destinationArchive = new File(destination, getArchiveFileName(archive));
 
+        OutputStream output = null;
+        boolean created = false;
         try {
-            temp = archiver.create(temp.getName(), temp.getParentFile(), sources);
-            destinationArchive = new File(destination, getArchiveFileName(archive));
-
-            compressor.compress(temp, destinationArchive);
+            output = new BufferedOutputStream(new FileOutputStream(destinationArchive), getBufferSize());
+            create(output, sources);
+            output.close();
+            compressor.writeBgzfIndex(destinationArchive);
+            created = true;
         } finally {
-            temp.delete();
+            IOUtils.closeQuietly(output);
+
+            if (!created) {
+                destinationArchive.delete();
+            }
         }
 
         return destinationArchive;
     }
 
+    @Override
+    public void create(OutputStream destination, File source) throws IOException {
+        create(destination, IOUtils.filesContainedIn(source));
+    }
+
+    @Override
+    public void create(OutputStream destination, File... sources) throws IOException {
+        OutputStream compressed = null;
+        ArchiveOutputStream archiveStream = null;
+        try {
+            compressed = compressor.compressingStream(new CloseShieldOutputStream(destination));
+            archiveStream = archiver.createArchiveOutputStream(compressed);
+
+            archiver.writeToArchive(sources, archiveStream);
+
+            // closing the archive stream finishes the archive and the compressed stream it writes into, and flushes
+            // the destination without closing it
+            archiveStream.close();
+        } finally {
+            IOUtils.closeQuietly(archiveStream);
+            IOUtils.closeQuietly(compressed);
+        }
+    }
+
+    @Override
+    public void create(WritableByteChannel destination, File source) throws IOException {
+        create(Channels.newOutputStream(destination), source);
+    }
+
+    @Override
+    public void create(WritableByteChannel destination, File... sources) throws IOException {
+        create(Channels.newOutputStream(destination), sources);
+    }
+
     @Override
     public void extract(File archive, File destination) throws IOException {
+        extract(archive, destination, new ExtractOptions());
+    }
+
+    @Override
+    public void extract(File archive, File destination, ExtractOptions options) throws IOException {
         IOUtils.requireDirectory(destination);
 
         /*
@@ -84,15 +137,37 @@ class ArchiverCompressorDecorator implements Archiver {
             throw new FileNotFoundException(String.format("Archive %s does not exist.", archive.getAbsolutePath()));
         }
 
-        InputStream archiveStream = null;
+        InputStream archiveStream;
         try {
-
-            archiveStream = new BufferedInputStream(new FileInputStream(archive));
-            archiver.extract(compressor.decompressingStream(archiveStream), destination);
+            archiveStream = new FileInputStream(archive);
         } catch (FileNotFoundException e) {
             // Java throws F-N-F for no access, and callers expect I-A-E for that.
             throw new IllegalArgumentException(String.format("Access control or other error opening %s", archive.getAbsolutePath()), e);
+        }
+
+        InputStream decompressed = null;
+        try {
+            CompressorInputStream blocks = createRandomAccessCompressorInputStream(compressor.getCompressionType(),
+                    compressor.getCompressionOptions(), archive);
+            if (blocks != null) {
+                // the blocks are read from the archive by random access and decompressed ahead by their workers
+                IOUtils.closeQuietly(archiveStream);
+                archiveStream = blocks;
+                decompressed = blocks;
+            } else if (options.getThreads() > 1) {
+                // read, decompress and parse the archive on separate threads
+                ExtractStatistics statistics = CommonsArchiver.statisticsOf(options);
+                archiveStream = new ReadAheadInputStream(archiveStream, "read-ahead", statistics.getReadStage(),
+                        statistics.getDecompressStage());
+                decompressed = new ReadAheadInputStream(compressor.decompressingStream(archiveStream), "decompress",
+                        statistics.getDecompressStage(), statistics.getParseStage());
+            } else {
+                archiveStream = new BufferedInputStream(archiveStream, getBufferSize());
+                decompressed = compressor.decompressingStream(archiveStream);
+            }
+            archiver.extract(archiver.createArchiveInputStream(decompressed), destination, options);
         } finally {
+            IOUtils.closeQuietly(decompressed);
             IOUtils.closeQuietly(archiveStream);
         }
     }
@@ -106,11 +181,30 @@ class ArchiverCompressorDecorator implements Archiver {
     @Override
     public ArchiveStream stream(File archive) throws IOException {
         try {
-            return new CommonsArchiveStream(createArchiveInputStream(archiver, createCompressorInputStream(archive)));
+            InputStream decompressed = compressor.decompressingStream(new BufferedInputStream(new FileInputStream(
+                    archive), getBufferSize()));
+            return new CommonsArchiveStream(createArchiveInputStream(archiver, decompressed));
         } catch (ArchiveException e) {
             throw new IOException(e);
-        } catch (CompressorException e) {
+        }
+    }
+
+    @Override
+    public List<ArchiveEntryInfo> list(File archive) throws IOException {
+        if (!archive.exists()) {
+            throw new FileNotFoundException(String.format("Archive %s does not exist.", archive.getAbsolutePath()));
+        }
+
+        ArchiveInputStream input = null;
+        try {
+            InputStream decompressed = compressor.decompressingStream(new BufferedInputStream(new FileInputStream(
+                    archive), getBufferSize()));
+            input = createArchiveInputStream(archiver, decompressed);
+            return archiver.list(input);
+        } catch (ArchiveException e) {
             throw new IOException(e);
+        } finally {
+            IOUtils.closeQuietly(input);
         }
     }
 
@@ -119,6 +213,10 @@ class ArchiverCompressorDecorator implements Archiver {
         return archiver.getFilenameExtension() + compressor.getFilenameExtension();
     }
 
+    private int getBufferSize() {
+        return compressor.getCompressionOptions().getBufferSize();
+    }
+
     /**
      * Returns a file name from the given archive name. The file extension suffix will be appended according to what is
      * already present.
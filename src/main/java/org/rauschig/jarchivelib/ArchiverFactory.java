@@ -94,8 +94,22 @@ public final class ArchiverFactory {
      * @return a new Archiver instance that also handles compression
      */
     public static Archiver createArchiver(ArchiveFormat archiveFormat, CompressionType compression) {
-        CommonsArchiver archiver = new CommonsArchiver(archiveFormat);
-        CommonsCompressor compressor = new CommonsCompressor(compression);
+        return createArchiver(archiveFormat, compression, new CompressionOptions());
+    }
+
+    /**
+     * Creates an Archiver for the given archive format that uses compression tuned by the given
+     * {@link CompressionOptions}, e.g. to compress in parallel.
+     * 
+     * @param archiveFormat the archive format
+     * @param compression the compression algorithm
+     * @param options the compression options
+     * @return a new Archiver instance that also handles compression
+     */
+    public static Archiver createArchiver(ArchiveFormat archiveFormat, CompressionType compression,
+            CompressionOptions options) {
+        CommonsArchiver archiver = new CommonsArchiver(archiveFormat, options);
+        CommonsCompressor compressor = new CommonsCompressor(compression, options);
 
         return new ArchiverCompressorDecorator(archiver, compressor);
     }
@@ -115,6 +129,51 @@ public final class ArchiverFactory {
         return createArchiver(ArchiveFormat.fromString(archiveFormat));
     }
 
+    /**
+     * Creates an Archiver for the given archive format that is tuned by the given {@link CompressionOptions}. ZIP and
+     * JAR archives are created in parallel if the options specify more than one thread. The buffer size of the options
+     * applies to all formats.
+     * 
+     * @param archiveFormat the archive format
+     * @param options the compression options
+     * @return a new Archiver instance
+     */
+    public static Archiver createArchiver(ArchiveFormat archiveFormat, CompressionOptions options) {
+        return createArchiver(archiveFormat, options, new ReadOptions());
+    }
+
+    /**
+     * Creates an Archiver for the given archive format that reads archives as specified by the given
+     * {@link ReadOptions}, e.g. through memory mappings.
+     * 
+     * @param archiveFormat the archive format
+     * @param readOptions the options for reading archives
+     * @return a new Archiver instance
+     */
+    public static Archiver createArchiver(ArchiveFormat archiveFormat, ReadOptions readOptions) {
+        return createArchiver(archiveFormat, new CompressionOptions(), readOptions);
+    }
+
+    /**
+     * Creates an Archiver for the given archive format that is tuned by the given {@link CompressionOptions}, and
+     * reads archives as specified by the given {@link ReadOptions}. The read options only affect archive formats with
+     * random access (ZIP, JAR and 7z).
+     * 
+     * @param archiveFormat the archive format
+     * @param options the compression options
+     * @param readOptions the options for reading archives
+     * @return a new Archiver instance
+     */
+    public static Archiver createArchiver(ArchiveFormat archiveFormat, CompressionOptions options,
+            ReadOptions readOptions) {
+        if (archiveFormat == ArchiveFormat.SEVEN_Z) {
+            return new SevenZArchiver(options, readOptions);
+        } else if (archiveFormat == ArchiveFormat.ZIP || archiveFormat == ArchiveFormat.JAR) {
+            return new ZipFileArchiver(archiveFormat, options, readOptions);
+        }
+        return new CommonsArchiver(archiveFormat, options, readOptions);
+    }
+
     /**
      * Creates an Archiver for the given archive format.
      * 
@@ -124,8 +183,8 @@ public final class ArchiverFactory {
     public static Archiver createArchiver(ArchiveFormat archiveFormat) {
         if (archiveFormat == ArchiveFormat.SEVEN_Z) {
             return new SevenZArchiver();
-        } else if (archiveFormat == ArchiveFormat.ZIP) {
-            return new ZipFileArchiver();
+        } else if (archiveFormat == ArchiveFormat.ZIP || archiveFormat == ArchiveFormat.JAR) {
+            return new ZipFileArchiver(archiveFormat, new CompressionOptions());
         }
         return new CommonsArchiver(archiveFormat);
     }
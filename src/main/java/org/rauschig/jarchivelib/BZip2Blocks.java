@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Utility class for handling individual blocks of bzip2 streams, used by the parallel bzip2 implementations.
+ * <br>
+ * A bzip2 stream consists of a 32 bit header ("BZh" and the block size), a sequence of blocks, and an end of stream
+ * marker followed by the combined CRC of all blocks. Blocks and the end of stream marker start with 48 bit magic
+ * numbers, and are not aligned to byte boundaries. Blocks are compressed independently of each other.
+ */
+final class BZip2Blocks {
+
+    /**
+     * Magic number at the start of each block (BCD pi).
+     */
+    static final long BLOCK_MAGIC = 0x314159265359L;
+
+    /**
+     * Magic number of the end of stream marker (BCD sqrt(pi)).
+     */
+    static final long EOS_MAGIC = 0x177245385090L;
+
+    static final int MAGIC_BITS = 48;
+
+    static final int HEADER_BITS = 32;
+
+    static final int CRC_BITS = 32;
+
+    private BZip2Blocks() {
+
+    }
+
+    /**
+     * Returns the stream header for the given block size.
+     * 
+     * @param blockSize100k the block size in units of 100k (1-9)
+     * @return the 32 bit stream header
+     */
+    static long header(int blockSize100k) {
+        return ((long) 'B' << 24) | ('Z' << 16) | ('h' << 8) | ('0' + blockSize100k);
+    }
+
+    /**
+     * Checks whether the given bytes start with a bzip2 stream header.
+     * 
+     * @param b the bytes to check
+     * @param off the offset of the header
+     * @return true if the bytes are a stream header
+     */
+    static boolean isHeader(byte[] b, int off) {
+        return b[off] == 'B' && b[off + 1] == 'Z' && b[off + 2] == 'h' && b[off + 3] >= '1' && b[off + 3] <= '9';
+    }
+
+    /**
+     * Folds the CRC of a block into the combined CRC of a stream.
+     * 
+     * @param combined the combined CRC of the preceding blocks
+     * @param blockCrc the CRC of the next block
+     * @return the new combined CRC
+     */
+    static int combineCrc(int combined, int blockCrc) {
+        return ((combined << 1) | (combined >>> 31)) ^ blockCrc;
+    }
+
+    /**
+     * Reads the CRC of the uncompressed data of a block, which follows the block magic.
+     * 
+     * @param block the block bits, starting with the block magic
+     * @return the block CRC
+     */
+    static int blockCrc(byte[] block) {
+        return (int) BitWriter.readBits(block, MAGIC_BITS, CRC_BITS);
+    }
+
+    /**
+     * Decodes a single block by wrapping it into a stream with a header and an end of stream marker.
+     * 
+     * @param block the block bits, starting with the block magic
+     * @param bitLength the amount of bits of the block
+     * @return the uncompressed data of the block
+     * @throws IOException if the block is corrupt
+     */
+    static byte[] decode(byte[] block, long bitLength) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream((int) (bitLength / 8) + 16);
+        BitWriter writer = new BitWriter(stream);
+        writer.writeBits(HEADER_BITS, header(9));
+        writer.writeBits(block, 0, bitLength);
+        writer.writeBits(MAGIC_BITS, EOS_MAGIC);
+        writer.writeBits(CRC_BITS, blockCrc(block) & 0xffffffffL);
+        writer.flush();
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream((int) (bitLength / 2));
+        InputStream input = new BZip2CompressorInputStream(new ByteArrayInputStream(stream.toByteArray()));
+        try {
+            IOUtils.copy(input, decoded);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return decoded.toByteArray();
+    }
+
+    /**
+     * Copies a range of bits into a new array, s.t. the first bit is aligned to the start of the array.
+     * 
+     * @param source the bits to copy
+     * @param fromBit the index of the first bit
+     * @param count the amount of bits
+     * @return a new array holding the bits
+     * @throws IOException never
+     */
+    static byte[] copyBits(byte[] source, long fromBit, long count) throws IOException {
+        ByteArrayOutputStream copy = new ByteArrayOutputStream((int) ((count + 7) / 8));
+        BitWriter writer = new BitWriter(copy);
+        writer.writeBits(source, fromBit, count);
+        writer.flush();
+        return copy.toByteArray();
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utility class for handling the blocks of BGZF files, the blocked gzip format of samtools.
+ * <br>
+ * A BGZF file is a concatenation of independent gzip members of at most 64 KiB each, which makes it a valid gzip file
+ * that any gzip tool can decompress. The header of each member has an extra field with the subfield "BC", which holds
+ * the total size of the member minus one. This allows to find the members without decompressing them. The file ends
+ * with an empty member as end of file marker.
+ */
+final class BgzfBlocks {
+
+    /**
+     * Maximum size of a compressed block, including header and trailer.
+     */
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum amount of uncompressed data in a block, s.t. even incompressible data fits into a stored block.
+     */
+    static final int MAX_DATA_SIZE = 0xff00;
+
+    /**
+     * Size of the gzip header of a block, including the extra field.
+     */
+    static final int HEADER_SIZE = 18;
+
+    /**
+     * Size of the gzip trailer of a block (CRC32 and ISIZE).
+     */
+    static final int TRAILER_SIZE = 8;
+
+    /**
+     * The empty block that marks the end of a BGZF file.
+     */
+    static final byte[] EOF_BLOCK = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private BgzfBlocks() {
+
+    }
+
+    /**
+     * Returns the total size of the block that starts with the given header.
+     * 
+     * @param b the bytes to check
+     * @param off the offset of the header
+     * @return the block size, or -1 if the bytes are not a BGZF block header
+     */
+    static int blockSize(byte[] b, int off) {
+        if (b[off] != 0x1f || b[off + 1] != (byte) 0x8b || b[off + 2] != 8 || (b[off + 3] & 4) == 0) {
+            return -1;
+        }
+        // a single extra subfield 'BC' of length 2, which holds the block size
+        if (readShortLE(b, off + 10) != 6 || b[off + 12] != 'B' || b[off + 13] != 'C'
+            || readShortLE(b, off + 14) != 2) {
+            return -1;
+        }
+        return readShortLE(b, off + 16) + 1;
+    }
+
+    /**
+     * Checks whether the given stream starts with a BGZF block, without consuming any of its data.
+     * 
+     * @param in a stream that supports marks
+     * @return true if the stream starts with a BGZF block header
+     * @throws IOException if the stream could not be read
+     */
+    static boolean isBgzf(InputStream in) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        in.mark(HEADER_SIZE);
+        try {
+            return IOUtils.readFully(in, header) == HEADER_SIZE && blockSize(header, 0) > 0;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Compresses the given data into a complete block. Data that does not compress is stored, s.t. the block does
+     * not exceed {@link #MAX_BLOCK_SIZE}.
+     * 
+     * @param data the data to compress
+     * @param length the amount of data, at most {@link #MAX_DATA_SIZE}
+     * @param level the deflate compression level
+     * @return the block
+     */
+    static byte[] deflate(byte[] data, int length, int level) {
+        byte[] block = deflate(data, length, level, MAX_BLOCK_SIZE);
+        if (block == null) {
+            block = deflate(data, length, Deflater.NO_COMPRESSION, MAX_BLOCK_SIZE);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+
+        writeShortLE(block, 16, block.length - 1);
+        writeIntLE(block, block.length - TRAILER_SIZE, crc.getValue());
+        writeIntLE(block, block.length - 4, length);
+        return block;
+    }
+
+    /**
+     * Decompresses the given block and verifies its checksum.
+     * 
+     * @param block the block, starting with its header
+     * @param blockSize the size of the block
+     * @return the uncompressed data of the block
+     * @throws IOException if the block is corrupt
+     */
+    static byte[] inflate(byte[] block, int blockSize) throws IOException {
+        int length = (int) readIntLE(block, blockSize - 4);
+        if (length < 0 || length > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid BGZF block size " + length);
+        }
+
+        // one spare byte detects blocks that hold more data than their trailer claims
+        byte[] data = new byte[length + 1];
+        int n = 0;
+        boolean finished;
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, HEADER_SIZE, blockSize - HEADER_SIZE - TRAILER_SIZE);
+            while (!inflater.finished() && n < data.length) {
+                int inflated = inflater.inflate(data, n, data.length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            finished = inflater.finished();
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+        if (!finished || n != length) {
+            throw new IOException("BGZF block size mismatch");
+        }
+        data = Arrays.copyOf(data, length);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        if (crc.getValue() != readIntLE(block, blockSize - TRAILER_SIZE)) {
+            throw new IOException("BGZF block CRC error");
+        }
+        return data;
+    }
+
+    /**
+     * Deflates the data into a block with header and space for the trailer, or returns null if the block would be
+     * larger than the given limit.
+     */
+    private static byte[] deflate(byte[] data, int length, int level, int limit) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            ByteArrayOutputStream block = new ByteArrayOutputStream(length / 2 + HEADER_SIZE + TRAILER_SIZE);
+            block.write(EOF_BLOCK, 0, HEADER_SIZE);
+
+            byte[] chunk = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                block.write(chunk, 0, deflater.deflate(chunk));
+                if (block.size() + TRAILER_SIZE > limit) {
+                    return null;
+                }
+            }
+            block.write(new byte[TRAILER_SIZE], 0, TRAILER_SIZE);
+            return block.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static int readShortLE(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    static long readIntLE(byte[] b, int off) {
+        return (readShortLE(b, off) | ((long) readShortLE(b, off + 2) << 16));
+    }
+
+    private static void writeShortLE(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeIntLE(byte[] b, int off, long value) {
+        writeShortLE(b, off, (int) value);
+        writeShortLE(b, off + 2, (int) (value >>> 16));
+    }
+}
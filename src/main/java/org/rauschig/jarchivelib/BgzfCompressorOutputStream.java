@@ -0,0 +1,203 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.CompressorOutputStream;
+
+/**
+ * A gzip CompressorOutputStream that writes BGZF, i.e. a sequence of independent gzip members of at most 64 KiB each
+ * (see {@link BgzfBlocks}).
+ * <br>
+ * The input is split into blocks of at most {@link BgzfBlocks#MAX_DATA_SIZE} bytes. Since the blocks do not share a
+ * dictionary, they are compressed on a pool of worker threads if more than one thread is requested, and can be
+ * decompressed in parallel or individually later on. The price is a slightly worse compression ratio than that of a
+ * single gzip member.
+ */
+class BgzfCompressorOutputStream extends CompressorOutputStream {
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count;
+
+    private boolean finished;
+    private boolean closed;
+
+    BgzfCompressorOutputStream(OutputStream out, CompressionOptions options) {
+        this(out, options.getLevel(), options.getBlockSize(), options.getThreads());
+    }
+
+    /**
+     * Creates a new BGZF stream.
+     * 
+     * @param out the stream to write the compressed data to
+     * @param level the deflate compression level
+     * @param blockSize the amount of data per block, capped at {@link BgzfBlocks#MAX_DATA_SIZE}, or 0 for the maximum
+     * @param threads the amount of worker threads, where one compresses on the calling thread
+     */
+    BgzfCompressorOutputStream(OutputStream out, int level, int blockSize, int threads) {
+        this.out = out;
+        this.level = level;
+        this.blockSize = (blockSize > 0) ? Math.min(blockSize, BgzfBlocks.MAX_DATA_SIZE) : BgzfBlocks.MAX_DATA_SIZE;
+        this.maxPendingBlocks = threads * 2;
+        this.executor = (threads > 1) ? ThreadPools.newFixedThreadPool(threads, "bgzf") : null;
+        this.buffer = new byte[this.blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        assertOpen();
+
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+
+            if (count == blockSize) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Compresses the buffered data into a block, and writes all pending blocks to the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        assertOpen();
+
+        if (count > 0) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            writeNextBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Finishes writing compressed data, including the end of file marker, to the underlying stream without closing it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        assertOpen();
+
+        try {
+            if (count > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            out.write(BgzfBlocks.EOF_BLOCK);
+            finished = true;
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            shutdown();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        DeflateTask task = new DeflateTask(buffer, count, level);
+
+        if (executor == null) {
+            byte[] block = task.call();
+            out.write(block, 0, block.length);
+        } else {
+            if (pending.size() >= maxPendingBlocks) {
+                writeNextBlock();
+            }
+            pending.add(executor.submit(task));
+            buffer = new byte[blockSize];
+        }
+        count = 0;
+    }
+
+    private void writeNextBlock() throws IOException {
+        byte[] block = ThreadPools.await(pending.poll());
+        out.write(block, 0, block.length);
+    }
+
+    private void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertOpen() throws IOException {
+        if (closed || finished) {
+            throw new IOException("Stream has already been finished");
+        }
+    }
+
+    /**
+     * Compresses a single block.
+     */
+    private static class DeflateTask implements Callable<byte[]> {
+        private final byte[] data;
+        private final int length;
+        private final int level;
+
+        DeflateTask(byte[] data, int length, int level) {
+            this.data = data;
+            this.length = length;
+            this.level = level;
+        }
+
+        @Override
+        public byte[] call() {
+            return BgzfBlocks.deflate(data, length, level);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * The block offsets of a BGZF file (see {@link BgzfBlocks}), i.e. where each block starts in the compressed file and
+ * in the uncompressed data.
+ * <br>
+ * The index is read from and written to .gzi files in the format of bgzip: the amount of entries followed by the
+ * compressed and uncompressed offset of each block but the first, all as unsigned 64 bit little endian integers.
+ */
+final class BgzfIndex {
+
+    /**
+     * Suffix of the index file next to the BGZF file.
+     */
+    static final String SIDECAR_SUFFIX = ".gzi";
+
+    private long[] compressedOffsets;
+    private long[] uncompressedOffsets;
+    private int size;
+
+    private BgzfIndex(int capacity) {
+        this.compressedOffsets = new long[Math.max(1, capacity)];
+        this.uncompressedOffsets = new long[Math.max(1, capacity)];
+        add(0, 0);
+    }
+
+    /**
+     * Builds the index of the given BGZF file by reading the header and trailer of each block.
+     * 
+     * @param file the BGZF file
+     * @return the index
+     * @throws IOException if the file could not be read or is not a BGZF file
+     */
+    static BgzfIndex scan(File file) throws IOException {
+        BgzfIndex index = new BgzfIndex((int) Math.min(Integer.MAX_VALUE, file.length() / BgzfBlocks.MAX_BLOCK_SIZE));
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            long compressed = 0;
+            long uncompressed = 0;
+            byte[] header = new byte[BgzfBlocks.HEADER_SIZE];
+            byte[] isize = new byte[4];
+
+            while (compressed < length) {
+                in.seek(compressed);
+                in.readFully(header);
+                int blockSize = BgzfBlocks.blockSize(header, 0);
+                if (blockSize < BgzfBlocks.HEADER_SIZE + BgzfBlocks.TRAILER_SIZE) {
+                    throw new IOException(file + " is not a BGZF file");
+                }
+
+                in.seek(compressed + blockSize - isize.length);
+                in.readFully(isize);
+
+                compressed += blockSize;
+                uncompressed += BgzfBlocks.readIntLE(isize, 0);
+                if (compressed < length) {
+                    index.add(compressed, uncompressed);
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated BGZF file " + file, e);
+        } finally {
+            in.close();
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads an index from a .gzi file.
+     * 
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file could not be read
+     */
+    static BgzfIndex read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            byte[] entry = new byte[8];
+            long count = readLongLE(in, entry);
+            if (count < 0 || count * 16 != file.length() - 8) {
+                throw new IOException(file + " is not a BGZF index");
+            }
+
+            BgzfIndex index = new BgzfIndex((int) count + 1);
+            for (long i = 0; i < count; i++) {
+                index.add(readLongLE(in, entry), readLongLE(in, entry));
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the index file next to the given BGZF file.
+     * 
+     * @param file the BGZF file
+     * @return the index file
+     */
+    static File sidecarOf(File file) {
+        return new File(file.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Writes the index into a .gzi file.
+     * 
+     * @param file the index file
+     * @throws IOException if the file could not be written
+     */
+    void write(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            byte[] buffer = new byte[8];
+            writeLongLE(out, buffer, size - 1);
+            for (int i = 1; i < size; i++) {
+                writeLongLE(out, buffer, compressedOffsets[i]);
+                writeLongLE(out, buffer, uncompressedOffsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the amount of blocks.
+     * 
+     * @return the amount of blocks, including the first one
+     */
+    int size() {
+        return size;
+    }
+
+    long getCompressedOffset(int block) {
+        return compressedOffsets[block];
+    }
+
+    long getUncompressedOffset(int block) {
+        return uncompressedOffsets[block];
+    }
+
+    private void add(long compressed, long uncompressed) {
+        if (size == compressedOffsets.length) {
+            compressedOffsets = Arrays.copyOf(compressedOffsets, size * 2);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, size * 2);
+        }
+        compressedOffsets[size] = compressed;
+        uncompressedOffsets[size] = uncompressed;
+        size++;
+    }
+
+    private static long readLongLE(InputStream in, byte[] buffer) throws IOException {
+        if (IOUtils.readFully(in, buffer, 0, 8) != 8) {
+            throw new EOFException("Truncated BGZF index");
+        }
+        return BgzfBlocks.readIntLE(buffer, 0) | (BgzfBlocks.readIntLE(buffer, 4) << 32);
+    }
+
+    private static void writeLongLE(OutputStream out, byte[] buffer, long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (value >>> (8 * i));
+        }
+        out.write(buffer, 0, 8);
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes bit sequences of arbitrary length and alignment into an OutputStream, most significant bit first.
+ */
+class BitWriter {
+
+    /**
+     * Amount of bytes that are assembled before they are written, when the bits of a byte array are not byte-aligned.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    private final OutputStream out;
+
+    /**
+     * The bits that do not fill a byte yet, in the lowest {@code bufferedBits} bits.
+     */
+    private long buffer;
+    private int bufferedBits;
+
+    private long bitsWritten;
+
+    BitWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the lowest {@code count} bits of the given value.
+     * 
+     * @param count the amount of bits to write, at most 32
+     * @param value the value holding the bits
+     * @throws IOException propagated I/O errors
+     */
+    public void writeBits(int count, long value) throws IOException {
+        buffer = (buffer << count) | (value & ((1L << count) - 1));
+        bufferedBits += count;
+        while (bufferedBits >= 8) {
+            bufferedBits -= 8;
+            out.write((int) (buffer >>> bufferedBits));
+        }
+        buffer &= (1L << bufferedBits) - 1;
+        bitsWritten += count;
+    }
+
+    /**
+     * Writes a range of bits of the given byte array. If both the range and the output are byte-aligned, the bytes are
+     * written as they are, otherwise they are shifted into place a byte at a time.
+     * 
+     * @param source the bits to write
+     * @param fromBit the index of the first bit to write
+     * @param count the amount of bits to write
+     * @throws IOException propagated I/O errors
+     */
+    public void writeBits(byte[] source, long fromBit, long count) throws IOException {
+        long position = fromBit;
+        long end = fromBit + count;
+
+        if (bufferedBits == 0 && (position & 7) == 0) {
+            int length = (int) (count >>> 3);
+            out.write(source, (int) (position >>> 3), length);
+            position += length * 8L;
+            bitsWritten += length * 8L;
+        } else if (end - position >= 8) {
+            byte[] chunk = new byte[(int) Math.min((end - position) >>> 3, CHUNK_SIZE)];
+            int keep = 8 - bufferedBits;
+
+            while (end - position >= 8) {
+                int length = 0;
+                while (length < chunk.length && end - position >= 8) {
+                    int index = (int) (position >>> 3);
+                    int skip = (int) (position & 7);
+                    int b = source[index] & 0xff;
+                    if (skip > 0) {
+                        // the byte straddles two source bytes
+                        b = ((b << skip) | ((source[index + 1] & 0xff) >>> (8 - skip))) & 0xff;
+                    }
+
+                    chunk[length++] = (byte) ((buffer << keep) | (b >>> bufferedBits));
+                    buffer = b & ((1 << bufferedBits) - 1);
+                    position += 8;
+                }
+                out.write(chunk, 0, length);
+                bitsWritten += length * 8L;
+            }
+        }
+
+        if (position < end) {
+            int remaining = (int) (end - position);
+            writeBits(remaining, readBits(source, position, remaining));
+        }
+    }
+
+    /**
+     * Pads the last byte with zero bits and writes it.
+     * 
+     * @throws IOException propagated I/O errors
+     */
+    public void flush() throws IOException {
+        if (bufferedBits > 0) {
+            writeBits(8 - bufferedBits, 0);
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the amount of bits written so far.
+     * 
+     * @return the amount of bits written
+     */
+    public long getBitsWritten() {
+        return bitsWritten;
+    }
+
+    /**
+     * Reads up to 57 bits at an arbitrary bit position of the given array, most significant bit first.
+     * 
+     * @param source the array to read from
+     * @param fromBit the index of the first bit
+     * @param count the amount of bits to read
+     * @return the bits as the lowest bits of a long
+     */
+    static long readBits(byte[] source, long fromBit, int count) {
+        int index = (int) (fromBit >>> 3);
+        int skip = (int) (fromBit & 7);
+        int needed = skip + count;
+
+        long value = 0;
+        int bits = 0;
+        while (bits < needed) {
+            value = (value << 8) | (source[index++] & 0xff);
+            bits += 8;
+        }
+
+        return (value >>> (bits - needed)) & ((1L << count) - 1);
+    }
+}
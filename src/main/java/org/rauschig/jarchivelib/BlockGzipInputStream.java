@@ -0,0 +1,196 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * A gzip InputStream that decodes its members with a {@link BlockInflater}, and thereby can report and resume at the
+ * deflate blocks of the stream. Concatenated members are decoded as one stream.
+ * <br>
+ * The CRC32 and size of each member are verified, except for the member decoding was resumed in, as its data is only
+ * partially decoded.
+ */
+class BlockGzipInputStream extends InputStream {
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    private final InputStream source;
+    private final DeflateBitReader in;
+    private final CRC32 crc = new CRC32();
+
+    private BlockInflater inflater;
+    private BlockInflater.BlockListener listener;
+
+    private long output;
+    private long memberStart;
+    private boolean verify;
+    private boolean firstMember = true;
+    private boolean eof;
+
+    /**
+     * Creates a stream that decodes the given gzip data from the beginning.
+     * 
+     * @param source the gzip data
+     */
+    BlockGzipInputStream(InputStream source) {
+        this.source = source;
+        this.in = new DeflateBitReader(source);
+    }
+
+    private BlockGzipInputStream(InputStream source, DeflateBitReader in, BlockInflater inflater, long output) {
+        this.source = source;
+        this.in = in;
+        this.inflater = inflater;
+        this.output = output;
+        this.firstMember = false;
+    }
+
+    /**
+     * Creates a stream that resumes decoding at a deflate block.
+     * 
+     * @param source the gzip data, positioned at the byte the block starts in
+     * @param bitPosition the position of the block in the gzip data
+     * @param output the amount of uncompressed bytes preceding the block
+     * @param window the uncompressed data preceding the block, at most 32 KiB
+     * @return a stream of the uncompressed data following the block start
+     * @throws IOException propagated I/O errors
+     */
+    static BlockGzipInputStream resume(InputStream source, long bitPosition, long output, byte[] window)
+        throws IOException {
+        DeflateBitReader in = new DeflateBitReader(source, bitPosition >>> 3, (int) (bitPosition & 7));
+        return new BlockGzipInputStream(source, in, new BlockInflater(in, window, output), output);
+    }
+
+    /**
+     * Sets the listener that is notified at the start of each deflate block. Has to be set before reading.
+     * 
+     * @param listener the block listener
+     */
+    void setBlockListener(BlockInflater.BlockListener listener) {
+        this.listener = listener;
+        if (inflater != null) {
+            inflater.setBlockListener(listener);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!eof) {
+            if (inflater == null && !readHeader()) {
+                eof = true;
+                break;
+            }
+
+            int n = inflater.inflate(b, off, len);
+            if (n > 0) {
+                if (verify) {
+                    crc.update(b, off, n);
+                }
+                output += n;
+                return n;
+            }
+
+            readTrailer();
+            inflater = null;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private boolean readHeader() throws IOException {
+        if (!firstMember && in.isAtEnd()) {
+            return false;
+        }
+
+        if (in.readByte() != 0x1F || in.readByte() != 0x8B) {
+            throw new IOException(firstMember ? "Input is not in the .gz format" : "Garbage after a valid .gz stream");
+        }
+        if (in.readByte() != 8) {
+            throw new IOException("Unsupported compression method");
+        }
+
+        int flags = in.readByte();
+        in.bits(32); // modification time
+        in.bits(16); // extra flags and operating system
+
+        if ((flags & FEXTRA) != 0) {
+            int length = in.bits(16);
+            for (int i = 0; i < length; i++) {
+                in.readByte();
+            }
+        }
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FHCRC) != 0) {
+            in.bits(16);
+        }
+
+        firstMember = false;
+        verify = true;
+        crc.reset();
+        memberStart = output;
+
+        inflater = new BlockInflater(in, new byte[0], output);
+        inflater.setBlockListener(listener);
+        return true;
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (in.readByte() != 0) {
+            // skip
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        in.alignToByte();
+        long expectedCrc = in.bits(32) & 0xFFFFFFFFL;
+        long expectedSize = in.bits(32) & 0xFFFFFFFFL;
+
+        if (verify) {
+            if (expectedCrc != crc.getValue()) {
+                throw new IOException("Gzip-compressed data is corrupt (CRC32 error)");
+            }
+            if (expectedSize != ((output - memberStart) & 0xFFFFFFFFL)) {
+                throw new IOException("Gzip-compressed data is corrupt (uncompressed size mismatch)");
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A decoder for raw deflate data (RFC 1951) that, unlike {@link java.util.zip.Inflater}, exposes the boundaries of
+ * deflate blocks.
+ * <br>
+ * At the start of each block the decoder state consists of nothing but the bit position in the input and the last 32
+ * KiB of output. A decoder created with these can resume decoding at that block, which is what random access into
+ * deflate streams is built upon (see {@link TarGzIndex}).
+ */
+class BlockInflater {
+
+    /**
+     * Size of the deflate window.
+     */
+    static final int WINDOW_SIZE = 32 * 1024;
+
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+        67, 83, 99, 115, 131, 163, 195, 227, 258 };
+    static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+        5, 5, 5, 5, 0 };
+    static final int[] DISTANCE_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+        513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+    static final int[] DISTANCE_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+        10, 11, 11, 12, 12, 13, 13 };
+
+    /**
+     * Order in which the code lengths of the code length alphabet are stored.
+     */
+    private static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1,
+        15 };
+
+    static final Huffman FIXED_LITERALS;
+    static final Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        FIXED_LITERALS = fixed(lengths, 288);
+
+        Arrays.fill(lengths, 0, 30, 5);
+        FIXED_DISTANCES = fixed(lengths, 30);
+    }
+
+    private static Huffman fixed(int[] lengths, int count) {
+        try {
+            return new Huffman(lengths, 0, count);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Receives the decoder state at the start of blocks.
+     */
+    interface BlockListener {
+
+        /**
+         * Called before the header of a block is read.
+         * 
+         * @param bitPosition the position of the block in the input
+         * @param output the amount of bytes decoded before the block
+         * @param inflater the decoder, to retrieve the window from
+         * @throws IOException propagated I/O errors
+         */
+        void blockStart(long bitPosition, long output, BlockInflater inflater) throws IOException;
+    }
+
+    private enum State {
+        HEADER, STORED, HUFFMAN, DONE
+    }
+
+    private final DeflateBitReader in;
+    private final byte[] window = new byte[WINDOW_SIZE];
+
+    /**
+     * Position of the next byte in the window, and the amount of valid bytes in the window.
+     */
+    private int windowPosition;
+    private int windowed;
+    private long output;
+
+    private BlockListener listener;
+
+    private State state = State.HEADER;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private Huffman literals;
+    private Huffman distances;
+
+    private int matchLength;
+    private int matchDistance;
+
+    BlockInflater(DeflateBitReader in) {
+        this(in, new byte[0], 0);
+    }
+
+    /**
+     * Creates a decoder that starts at a block boundary.
+     * 
+     * @param in the reader positioned at the start of a block
+     * @param dictionary the output preceding the block, at most {@link #WINDOW_SIZE} bytes
+     * @param output the amount of bytes output before the block, from which the output is counted on
+     */
+    BlockInflater(DeflateBitReader in, byte[] dictionary, long output) {
+        this.in = in;
+        this.output = output;
+        System.arraycopy(dictionary, 0, window, 0, dictionary.length);
+        this.windowPosition = dictionary.length & WINDOW_MASK;
+        this.windowed = dictionary.length;
+    }
+
+    void setBlockListener(BlockListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the amount of bytes output so far.
+     * 
+     * @return the amount of output bytes
+     */
+    long getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the last 32 KiB (or fewer, at the start of the stream) of output, which is the dictionary to resume
+     * decoding with.
+     * 
+     * @return a copy of the window
+     */
+    byte[] getWindow() {
+        int size = windowed;
+        byte[] copy = new byte[size];
+        int start = (windowPosition - size) & WINDOW_MASK;
+        int first = Math.min(size, WINDOW_SIZE - start);
+        System.arraycopy(window, start, copy, 0, first);
+        System.arraycopy(window, 0, copy, first, size - first);
+        return copy;
+    }
+
+    /**
+     * Returns whether the last block of the deflate stream has been decoded.
+     * 
+     * @return true if the stream is finished
+     */
+    boolean isFinished() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Decodes data into the given array.
+     * 
+     * @param b the target array
+     * @param off the offset in the array
+     * @param len the maximum amount of bytes to decode
+     * @return the amount of bytes decoded, or -1 if the stream is finished
+     * @throws IOException if the input ends prematurely or is not valid deflate data
+     */
+    int inflate(byte[] b, int off, int len) throws IOException {
+        int n = 0;
+
+        while (n < len) {
+            if (matchLength > 0) {
+                int count = Math.min(matchLength, len - n);
+                copyMatch(b, off + n, count);
+                matchLength -= count;
+                n += count;
+                continue;
+            }
+
+            switch (state) {
+            case HEADER:
+                if (lastBlock) {
+                    state = State.DONE;
+                } else {
+                    readBlockHeader();
+                }
+                break;
+            case STORED:
+                if (storedRemaining == 0) {
+                    state = State.HEADER;
+                    break;
+                }
+                int count = in.readBytes(b, off + n, Math.min(storedRemaining, len - n));
+                for (int i = 0; i < count; i++) {
+                    put(b[off + n + i]);
+                }
+                storedRemaining -= count;
+                n += count;
+                break;
+            case HUFFMAN:
+                n = decodeSymbols(b, off, n, len);
+                break;
+            case DONE:
+                return (n == 0) ? -1 : n;
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * Decodes literals into the array until it is full, or a match or the end of the block is decoded.
+     */
+    private int decodeSymbols(byte[] b, int off, int n, int len) throws IOException {
+        while (n < len) {
+            int symbol = literals.decode(in);
+            if (symbol < 256) {
+                b[off + n++] = put((byte) symbol);
+            } else if (symbol == 256) {
+                state = State.HEADER;
+                break;
+            } else {
+                readMatch(symbol);
+                break;
+            }
+        }
+        return n;
+    }
+
+    private void copyMatch(byte[] b, int off, int count) {
+        int from = (windowPosition - matchDistance) & WINDOW_MASK;
+        for (int i = 0; i < count; i++) {
+            byte value = window[from];
+            from = (from + 1) & WINDOW_MASK;
+            window[windowPosition] = value;
+            windowPosition = (windowPosition + 1) & WINDOW_MASK;
+            b[off + i] = value;
+        }
+        if (windowed < WINDOW_SIZE) {
+            windowed = Math.min(WINDOW_SIZE, windowed + count);
+        }
+        output += count;
+    }
+
+    private byte put(byte value) {
+        window[windowPosition] = value;
+        windowPosition = (windowPosition + 1) & WINDOW_MASK;
+        if (windowed < WINDOW_SIZE) {
+            windowed++;
+        }
+        output++;
+        return value;
+    }
+
+    private void readMatch(int symbol) throws IOException {
+        symbol -= 257;
+        if (symbol >= LENGTH_BASE.length) {
+            throw invalid("Invalid length symbol " + (symbol + 257));
+        }
+        int length = LENGTH_BASE[symbol] + in.bits(LENGTH_EXTRA[symbol]);
+
+        int code = distances.decode(in);
+        if (code >= DISTANCE_BASE.length) {
+            throw invalid("Invalid distance symbol " + code);
+        }
+        int distance = DISTANCE_BASE[code] + in.bits(DISTANCE_EXTRA[code]);
+        if (distance > windowed) {
+            throw invalid("Distance " + distance + " too far back");
+        }
+
+        matchLength = length;
+        matchDistance = distance;
+    }
+
+    private void readBlockHeader() throws IOException {
+        if (listener != null) {
+            listener.blockStart(in.bitPosition(), output, this);
+        }
+
+        lastBlock = in.bits(1) == 1;
+        int type = in.bits(2);
+
+        switch (type) {
+        case 0:
+            in.alignToByte();
+            int length = in.bits(16);
+            int complement = in.bits(16);
+            if ((length ^ 0xFFFF) != complement) {
+                throw invalid("Stored block length does not match its complement");
+            }
+            storedRemaining = length;
+            state = State.STORED;
+            break;
+        case 1:
+            literals = FIXED_LITERALS;
+            distances = FIXED_DISTANCES;
+            state = State.HUFFMAN;
+            break;
+        case 2:
+            Huffman[] tables = readDynamicTables(in, false);
+            literals = tables[0];
+            distances = tables[1];
+            state = State.HUFFMAN;
+            break;
+        default:
+            throw invalid("Invalid block type");
+        }
+    }
+
+    /**
+     * Reads the code lengths of a dynamic block, which follow the block header, and builds the literal/length and the
+     * distance code from them. A strict reader also rejects incomplete codes, which zlib does not produce (except for
+     * a distance code of a single symbol), to tell block headers apart from arbitrary data.
+     * 
+     * @param in the reader positioned after the block type
+     * @param strict whether to reject incomplete codes
+     * @return the literal/length and the distance code
+     * @throws IOException if the code lengths are invalid
+     */
+    static Huffman[] readDynamicTables(DeflateBitReader in, boolean strict) throws IOException {
+        int literalCount = in.bits(5) + 257;
+        int distanceCount = in.bits(5) + 1;
+        int codeLengthCount = in.bits(4) + 4;
+
+        int[] codeLengthLengths = new int[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = in.bits(3);
+        }
+        if (strict && !Huffman.isComplete(codeLengthLengths, 0, 19)) {
+            throw invalid("Incomplete code length code");
+        }
+        Huffman codeLengths = new Huffman(codeLengthLengths, 0, 19);
+
+        int[] lengths = new int[literalCount + distanceCount];
+        int i = 0;
+        while (i < lengths.length) {
+            int symbol = codeLengths.decode(in);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+
+            int value = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw invalid("Repeated code length without previous length");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + in.bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + in.bits(3);
+            } else {
+                repeat = 11 + in.bits(7);
+            }
+            if (i + repeat > lengths.length) {
+                throw invalid("Too many code lengths");
+            }
+            Arrays.fill(lengths, i, i + repeat, value);
+            i += repeat;
+        }
+
+        if (lengths[256] == 0) {
+            throw invalid("Missing end-of-block code");
+        }
+
+        if (strict && (!Huffman.isComplete(lengths, 0, literalCount)
+            || !Huffman.isComplete(lengths, literalCount, distanceCount))) {
+            throw invalid("Incomplete Huffman code");
+        }
+
+        return new Huffman[] { new Huffman(lengths, 0, literalCount),
+                new Huffman(lengths, literalCount, distanceCount) };
+    }
+
+    static IOException invalid(String message) {
+        return new IOException("Invalid deflate data: " + message);
+    }
+
+    /**
+     * A canonical Huffman code, decoded with a lookup table indexed by the next (bit-reversed) input bits.
+     */
+    static class Huffman {
+        private static final int MAX_BITS = 15;
+
+        /**
+         * Entries hold the symbol in the upper and the code length in the lowest four bits. A length of zero marks
+         * bit sequences that are not a valid code.
+         */
+        private final int[] table;
+        private final int maxBits;
+
+        Huffman(int[] lengths, int offset, int count) throws IOException {
+            int[] lengthCounts = new int[MAX_BITS + 1];
+            int max = 1;
+            for (int i = 0; i < count; i++) {
+                lengthCounts[lengths[offset + i]]++;
+                max = Math.max(max, lengths[offset + i]);
+            }
+            lengthCounts[0] = 0;
+
+            int left = 1;
+            int[] nextCode = new int[MAX_BITS + 1];
+            for (int bits = 1; bits <= MAX_BITS; bits++) {
+                left = (left << 1) - lengthCounts[bits];
+                if (left < 0) {
+                    throw invalid("Over-subscribed Huffman code");
+                }
+                nextCode[bits] = (nextCode[bits - 1] + lengthCounts[bits - 1]) << 1;
+            }
+
+            this.maxBits = max;
+            this.table = new int[1 << max];
+
+            for (int symbol = 0; symbol < count; symbol++) {
+                int length = lengths[offset + symbol];
+                if (length == 0) {
+                    continue;
+                }
+                int code = Integer.reverse(nextCode[length]++) >>> (32 - length);
+                for (int i = code; i < table.length; i += 1 << length) {
+                    table[i] = (symbol << 4) | length;
+                }
+            }
+        }
+
+        /**
+         * Checks whether the given code lengths form a complete code, a code of a single symbol, or an empty code.
+         */
+        static boolean isComplete(int[] lengths, int offset, int count) {
+            int left = 1 << MAX_BITS;
+            int symbols = 0;
+            for (int i = 0; i < count; i++) {
+                if (lengths[offset + i] > 0) {
+                    left -= 1 << (MAX_BITS - lengths[offset + i]);
+                    symbols++;
+                }
+            }
+            return left == 0 || symbols == 0 || (symbols == 1 && left == 1 << (MAX_BITS - 1));
+        }
+
+        int decode(DeflateBitReader in) throws IOException {
+            int entry = table[in.peek(maxBits)];
+            int length = entry & 0xF;
+            if (length == 0) {
+                throw invalid("Invalid Huffman code");
+            }
+            in.skip(length);
+            return entry >>> 4;
+        }
+    }
+}
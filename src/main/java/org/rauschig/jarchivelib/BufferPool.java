@@ -0,0 +1,42 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+/**
+ * A source of byte arrays used as copy buffers, s.t. copying the data of many entries or files does not allocate a
+ * new buffer each time. Can be set with {@link CompressionOptions#setBufferPool(BufferPool)}; {@link BufferPools}
+ * provides the common implementations.
+ */
+public interface BufferPool {
+
+    /**
+     * Returns a buffer of at least the given size. The buffer should be handed back with {@link #release(byte[])}
+     * once it is no longer used.
+     * 
+     * @param size the minimum size of the buffer
+     * @return a buffer
+     */
+    byte[] acquire(int size);
+
+    /**
+     * Hands a buffer that is no longer used back to the pool. The pool may keep it for a later {@link #acquire(int)},
+     * or drop it.
+     * 
+     * @param buffer the buffer that is no longer used
+     */
+    void release(byte[] buffer);
+
+}
@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+/**
+ * Factory for common {@link BufferPool}s.
+ */
+public final class BufferPools {
+
+    /**
+     * Buffers larger than this are not kept by the default pool, s.t. idle threads do not hold on to large amounts of
+     * memory.
+     */
+    public static final int DEFAULT_MAX_POOLED_SIZE = 1024 * 1024;
+
+    private static final BufferPool THREAD_LOCAL = new ThreadLocalBufferPool(DEFAULT_MAX_POOLED_SIZE);
+
+    private static final BufferPool NONE = new BufferPool() {
+        @Override
+        public byte[] acquire(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] buffer) {
+            // dropped
+        }
+    };
+
+    private BufferPools() {
+
+    }
+
+    /**
+     * Returns the default pool, a shared {@link #threadLocal(int)} pool that keeps buffers of up to
+     * {@link #DEFAULT_MAX_POOLED_SIZE} bytes.
+     * 
+     * @return the default pool
+     */
+    public static BufferPool threadLocal() {
+        return THREAD_LOCAL;
+    }
+
+    /**
+     * Returns a new pool in which each thread keeps the largest buffer it released (up to the given size) for its next
+     * copy, which avoids any synchronization. A buffer that is acquired while the thread's buffer is in use is
+     * allocated freshly.
+     * <br>
+     * The kept buffer lives as long as the thread, so each thread that ever copied data holds up to the given amount of
+     * memory. Applications with many long-lived threads should use a small limit, or {@link #none()}.
+     * 
+     * @param maxPooledSize the size of the largest buffer that is kept
+     * @return a new pool
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public static BufferPool threadLocal(int maxPooledSize) throws IllegalArgumentException {
+        if (maxPooledSize < 0) {
+            throw new IllegalArgumentException("Maximum pooled size must not be negative, was " + maxPooledSize);
+        }
+        return new ThreadLocalBufferPool(maxPooledSize);
+    }
+
+    /**
+     * Returns a pool that allocates a new buffer for every copy and keeps none.
+     * 
+     * @return a pool that does not pool
+     */
+    public static BufferPool none() {
+        return NONE;
+    }
+
+    /**
+     * Keeps one buffer per thread.
+     */
+    private static class ThreadLocalBufferPool implements BufferPool {
+        private final int maxPooledSize;
+        private final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+        ThreadLocalBufferPool(int maxPooledSize) {
+            this.maxPooledSize = maxPooledSize;
+        }
+
+        @Override
+        public byte[] acquire(int size) {
+            byte[] buffer = buffers.get();
+            if (buffer != null && buffer.length >= size) {
+                buffers.set(null);
+                return buffer;
+            }
+            return new byte[size];
+        }
+
+        @Override
+        public void release(byte[] buffer) {
+            if (buffer.length > maxPooledSize) {
+                return;
+            }
+
+            byte[] pooled = buffers.get();
+            if (pooled == null || pooled.length < buffer.length) {
+                buffers.set(buffer);
+            }
+        }
+    }
+}
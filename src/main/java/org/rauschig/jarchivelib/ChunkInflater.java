@@ -0,0 +1,497 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes a chunk of raw deflate data (RFC 1951) for parallel decompression, in the spirit of rapidgzip.
+ * <br>
+ * The deflate stream is cut into chunks at arbitrary byte offsets. The decoder of a chunk searches the chunk for the
+ * first bit sequence that looks like the header of a dynamic or stored block, and decodes from there without knowing
+ * the 32 KiB of output preceding the chunk. Back-references into that unknown window are decoded as markers, i.e. 16
+ * bit values of {@link #MARKER_BASE} plus the position in the window, which are propagated by later back-references.
+ * After 32 KiB of output without markers, no marker can be referenced anymore, and the decoder switches to plain bytes.
+ * Once the window is known, the markers are replaced by the bytes they refer to.
+ * <br>
+ * A chunk is decoded up to the first block boundary at or after the end of the chunk, s.t. consecutive chunks fit
+ * together if the block boundary found by the next chunk is a real one. Whether it is, is only known once the
+ * preceding chunk is decoded: the caller has to compare the end of the one with the start of the other, and decode
+ * chunks that do not fit again, this time from the known end of the preceding chunk and with a known window.
+ */
+final class ChunkInflater {
+
+    /**
+     * Output values from this value on are markers that refer to the unknown window.
+     */
+    static final int MARKER_BASE = 256;
+
+    private static final int WINDOW_SIZE = BlockInflater.WINDOW_SIZE;
+
+    private final DeflateBitReader in;
+    private final boolean speculative;
+
+    /**
+     * Output that may contain markers.
+     */
+    private char[] marked;
+    private int markedLength;
+    private int lastMarker = -1;
+
+    /**
+     * Output without markers, preceded by {@link #WINDOW_SIZE} bytes of history, of which only those from floor on
+     * are valid.
+     */
+    private byte[] bytes;
+    private int bytesLength;
+    private int floor;
+
+    /**
+     * Position of the data of the first block if it is a stored block, or -1.
+     */
+    private long storedStart = -1;
+    private boolean firstBlock = true;
+
+    private ChunkInflater(DeflateBitReader in, byte[] window) {
+        this.in = in;
+        this.speculative = window == null;
+
+        if (speculative) {
+            marked = new char[64 * 1024];
+        } else {
+            bytes = new byte[WINDOW_SIZE + 256 * 1024];
+            floor = WINDOW_SIZE - window.length;
+            System.arraycopy(window, 0, bytes, floor, window.length);
+            bytesLength = WINDOW_SIZE;
+        }
+    }
+
+    /**
+     * Decodes from a known block boundary with a known window.
+     * 
+     * @param data the deflate data
+     * @param length the amount of valid bytes in the data
+     * @param base the bit position of the data in the deflate stream
+     * @param startBit the position of the block to start at, relative to the data
+     * @param window the output preceding the block, at most 32 KiB
+     * @param endBit the position relative to the data after which decoding stops at the next block boundary
+     * @param outputLimit the amount of output after which decoding stops at the next block boundary
+     * @return the decoded chunk
+     * @throws EOFException if the data ends before the first block is decoded
+     * @throws IOException if the first block is not valid deflate data
+     */
+    static Chunk inflate(byte[] data, int length, long base, long startBit, byte[] window, long endBit,
+        int outputLimit) throws IOException {
+        return new ChunkInflater(new DeflateBitReader(data, length, startBit), window).run(base, startBit, endBit,
+                outputLimit);
+    }
+
+    /**
+     * Searches the given range of the data for the first block boundary from which the data can be decoded up to the
+     * end bit, and decodes from there with markers for the unknown window.
+     * 
+     * @param data the deflate data
+     * @param length the amount of valid bytes in the data
+     * @param base the bit position of the data in the deflate stream
+     * @param fromBit the first position to search, relative to the data
+     * @param toBit the position to stop searching at, relative to the data
+     * @param endBit the position relative to the data after which decoding stops at the next block boundary
+     * @param outputLimit the amount of output after which decoding stops at the next block boundary
+     * @return the decoded chunk, or null if no block boundary was found
+     */
+    static Chunk inflateSpeculatively(byte[] data, int length, long base, long fromBit, long toBit, long endBit,
+        int outputLimit) {
+        for (long bit = fromBit; bit < toBit; bit++) {
+            if (!isBlockCandidate(data, length, bit)) {
+                continue;
+            }
+            try {
+                return new ChunkInflater(new DeflateBitReader(data, length, bit), null).run(base, bit, endBit,
+                        outputLimit);
+            } catch (IOException e) {
+                // not a block boundary, or the chunk is too short to tell
+            }
+        }
+        return null;
+    }
+
+    private Chunk run(long base, long startBit, long endBit, int outputLimit) throws IOException {
+        long blockEnd = startBit;
+        boolean last = false;
+        int blocks = 0;
+
+        while (!last && blockEnd < endBit && size() < outputLimit) {
+            int markedMark = markedLength;
+            int lastMarkerMark = lastMarker;
+            int bytesMark = bytesLength;
+            try {
+                last = inflateBlock();
+            } catch (EOFException e) {
+                if (blocks == 0) {
+                    throw e;
+                }
+                // the data ends within the block, which is decoded again when more data is available
+                markedLength = markedMark;
+                lastMarker = lastMarkerMark;
+                bytesLength = bytesMark;
+                break;
+            } catch (IOException e) {
+                if (blocks == 0 || speculative) {
+                    throw e;
+                }
+                // the error is reported when decoding is resumed at the block
+                markedLength = markedMark;
+                lastMarker = lastMarkerMark;
+                bytesLength = bytesMark;
+                break;
+            }
+            blocks++;
+            blockEnd = in.bitPosition();
+            firstBlock = false;
+
+            if (bytes == null && markedLength - lastMarker > WINDOW_SIZE) {
+                switchToBytes();
+            }
+        }
+
+        return new Chunk(base + startBit, base + blockEnd, (storedStart < 0) ? -1 : base + storedStart, last, marked,
+                markedLength, bytes, bytesLength, floor);
+    }
+
+    private int size() {
+        return markedLength + ((bytes == null) ? 0 : bytesLength - WINDOW_SIZE);
+    }
+
+    /**
+     * Continues with plain bytes, using the last 32 KiB of marker free output as history.
+     */
+    private void switchToBytes() {
+        bytes = new byte[WINDOW_SIZE + Math.max(256 * 1024, markedLength)];
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            bytes[i] = (byte) marked[markedLength - WINDOW_SIZE + i];
+        }
+        bytesLength = WINDOW_SIZE;
+        floor = 0;
+    }
+
+    /**
+     * Decodes a single block.
+     * 
+     * @return whether it was the last block of the stream
+     */
+    private boolean inflateBlock() throws IOException {
+        boolean last = in.bits(1) == 1;
+        int type = in.bits(2);
+
+        switch (type) {
+        case 0:
+            in.alignToByte();
+            if (firstBlock) {
+                storedStart = in.bitPosition();
+            }
+            int length = in.bits(16);
+            if ((length ^ 0xFFFF) != in.bits(16)) {
+                throw BlockInflater.invalid("Stored block length does not match its complement");
+            }
+            inflateStored(length);
+            break;
+        case 1:
+            inflateHuffman(BlockInflater.FIXED_LITERALS, BlockInflater.FIXED_DISTANCES);
+            break;
+        case 2:
+            BlockInflater.Huffman[] tables = BlockInflater.readDynamicTables(in, speculative);
+            inflateHuffman(tables[0], tables[1]);
+            break;
+        default:
+            throw BlockInflater.invalid("Invalid block type");
+        }
+
+        return last;
+    }
+
+    private void inflateStored(int length) throws IOException {
+        if (bytes != null) {
+            ensureBytes(length);
+            while (length > 0) {
+                int n = in.readBytes(bytes, bytesLength, length);
+                bytesLength += n;
+                length -= n;
+            }
+            return;
+        }
+
+        ensureMarked(length);
+        byte[] buffer = new byte[length];
+        int read = 0;
+        while (read < length) {
+            read += in.readBytes(buffer, read, length - read);
+        }
+        for (int i = 0; i < length; i++) {
+            marked[markedLength++] = (char) (buffer[i] & 0xFF);
+        }
+    }
+
+    private void inflateHuffman(BlockInflater.Huffman literals, BlockInflater.Huffman distances) throws IOException {
+        while (true) {
+            int symbol = literals.decode(in);
+            if (symbol < 256) {
+                if (bytes != null) {
+                    ensureBytes(1);
+                    bytes[bytesLength++] = (byte) symbol;
+                } else {
+                    ensureMarked(1);
+                    marked[markedLength++] = (char) symbol;
+                }
+                continue;
+            } else if (symbol == 256) {
+                return;
+            }
+
+            symbol -= 257;
+            if (symbol >= BlockInflater.LENGTH_BASE.length) {
+                throw BlockInflater.invalid("Invalid length symbol " + (symbol + 257));
+            }
+            int length = BlockInflater.LENGTH_BASE[symbol] + in.bits(BlockInflater.LENGTH_EXTRA[symbol]);
+
+            int code = distances.decode(in);
+            if (code >= BlockInflater.DISTANCE_BASE.length) {
+                throw BlockInflater.invalid("Invalid distance symbol " + code);
+            }
+            int distance = BlockInflater.DISTANCE_BASE[code] + in.bits(BlockInflater.DISTANCE_EXTRA[code]);
+
+            if (bytes != null) {
+                copyBytes(length, distance);
+            } else {
+                copyMarked(length, distance);
+            }
+        }
+    }
+
+    private void copyBytes(int length, int distance) throws IOException {
+        int from = bytesLength - distance;
+        if (from < floor) {
+            throw BlockInflater.invalid("Distance " + distance + " too far back");
+        }
+        ensureBytes(length);
+        if (distance >= length) {
+            System.arraycopy(bytes, from, bytes, bytesLength, length);
+            bytesLength += length;
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[bytesLength++] = bytes[from + i];
+            }
+        }
+    }
+
+    private void copyMarked(int length, int distance) throws IOException {
+        int from = markedLength - distance;
+        if (from < -WINDOW_SIZE) {
+            throw BlockInflater.invalid("Distance " + distance + " too far back");
+        }
+        ensureMarked(length);
+        for (int i = 0; i < length; i++, from++) {
+            char value = (from < 0) ? (char) (MARKER_BASE + WINDOW_SIZE + from) : marked[from];
+            if (value >= MARKER_BASE) {
+                lastMarker = markedLength;
+            }
+            marked[markedLength++] = value;
+        }
+    }
+
+    private void ensureBytes(int count) {
+        if (bytesLength + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytesLength + count, bytes.length * 2));
+        }
+    }
+
+    private void ensureMarked(int count) {
+        if (markedLength + count > marked.length) {
+            marked = Arrays.copyOf(marked, Math.max(markedLength + count, marked.length * 2));
+        }
+    }
+
+    /**
+     * Checks whether a dynamic or stored block that is not the last block may start at the given bit. For dynamic
+     * blocks this checks the code length counts and that the code length code is complete, for stored blocks that the
+     * length matches its complement.
+     */
+    static boolean isBlockCandidate(byte[] data, int length, long bit) {
+        long bits = peek64(data, length, bit);
+        if ((bits & 7) == 4) {
+            if (((bits >>> 3) & 31) > 29 || ((bits >>> 8) & 31) > 29) {
+                return false;
+            }
+            int codeLengthCount = (int) ((bits >>> 13) & 15) + 4;
+            long codeLengths = peek64(data, length, bit + 17);
+            int left = 1 << 7;
+            for (int i = 0; i < codeLengthCount; i++) {
+                int codeLength = (int) (codeLengths >>> (3 * i)) & 7;
+                if (codeLength > 0) {
+                    left -= 1 << (7 - codeLength);
+                }
+            }
+            return left == 0;
+        } else if ((bits & 7) == 0) {
+            long aligned = (bit + 3 + 7) & ~7L;
+            int padding = (int) (aligned - bit - 3);
+            int offset = (int) (aligned >>> 3);
+            if (((bits >>> 3) & ((1 << padding) - 1)) != 0 || offset + 4 > length) {
+                return false;
+            }
+            int storedLength = (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+            int complement = (data[offset + 2] & 0xFF) | ((data[offset + 3] & 0xFF) << 8);
+            return (storedLength ^ complement) == 0xFFFF;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the 64 bits from the given bit position on, least significant bit first. Bits beyond the data are zero.
+     */
+    private static long peek64(byte[] data, int length, long bit) {
+        int offset = (int) (bit >>> 3);
+        int shift = (int) (bit & 7);
+
+        long value = 0;
+        int end = Math.min(length, offset + 8);
+        for (int i = offset; i < end; i++) {
+            value |= (data[i] & 0xFFL) << (8 * (i - offset));
+        }
+        value >>>= shift;
+        if (shift > 0 && offset + 8 < length) {
+            value |= (data[offset + 8] & 0xFFL) << (64 - shift);
+        }
+        return value;
+    }
+
+    /**
+     * The output of a decoded chunk.
+     */
+    static final class Chunk {
+        /**
+         * Position of the first block in the deflate stream, in bits.
+         */
+        final long startBit;
+        /**
+         * Position after the last decoded block in the deflate stream, in bits.
+         */
+        final long endBit;
+        /**
+         * Whether the last decoded block was the last block of the stream.
+         */
+        final boolean last;
+
+        private final long storedStart;
+        private final char[] marked;
+        private final int markedLength;
+        private final byte[] bytes;
+        private final int bytesLength;
+        private final int floor;
+
+        Chunk(long startBit, long endBit, long storedStart, boolean last, char[] marked, int markedLength,
+                byte[] bytes, int bytesLength, int floor) {
+            this.startBit = startBit;
+            this.endBit = endBit;
+            this.storedStart = storedStart;
+            this.last = last;
+            this.marked = marked;
+            this.markedLength = markedLength;
+            this.bytes = bytes;
+            this.bytesLength = bytesLength;
+            this.floor = floor;
+        }
+
+        /**
+         * Checks whether the chunk continues the deflate stream at the given block boundary. If the first block is a
+         * stored block, its header bits and the padding that follows are all zero, so a header at any position before
+         * the same byte boundary decodes the same way.
+         * 
+         * @param bitPosition the end of the preceding block
+         * @return true if the chunk starts at the given position
+         */
+        boolean startsAt(long bitPosition) {
+            if (storedStart >= 0) {
+                return startBit <= bitPosition && bitPosition + 3 <= storedStart;
+            }
+            return startBit == bitPosition;
+        }
+
+        /**
+         * Replaces the markers of the output by the bytes of the window they refer to, and returns the output that
+         * was decoded before the switch to plain bytes.
+         * 
+         * @param window the output preceding the chunk, at most 32 KiB
+         * @return the resolved output
+         * @throws IOException if a marker refers to data before the start of the stream
+         */
+        byte[] resolve(byte[] window) throws IOException {
+            byte[] resolved = new byte[markedLength];
+            int missing = WINDOW_SIZE - window.length;
+            for (int i = 0; i < markedLength; i++) {
+                int value = marked[i];
+                if (value >= MARKER_BASE) {
+                    int index = value - MARKER_BASE - missing;
+                    if (index < 0) {
+                        throw BlockInflater.invalid("Distance too far back");
+                    }
+                    value = window[index];
+                }
+                resolved[i] = (byte) value;
+            }
+            return resolved;
+        }
+
+        /**
+         * Returns the plain bytes of the output, which follow the resolved output.
+         * 
+         * @return the array holding the plain bytes, from {@link #getBytesOffset()} on
+         */
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        int getBytesOffset() {
+            return WINDOW_SIZE;
+        }
+
+        int getBytesLength() {
+            return (bytes == null) ? 0 : bytesLength - WINDOW_SIZE;
+        }
+
+        /**
+         * Returns the window following this chunk.
+         * 
+         * @param window the window preceding this chunk
+         * @param resolved the resolved output of this chunk
+         * @return the last 32 KiB of output including this chunk
+         */
+        byte[] nextWindow(byte[] window, byte[] resolved) {
+            if (bytes != null) {
+                return Arrays.copyOfRange(bytes, Math.max(floor, bytesLength - WINDOW_SIZE), bytesLength);
+            }
+
+            int size = Math.min(WINDOW_SIZE, window.length + resolved.length);
+            byte[] next = new byte[size];
+            int fromResolved = Math.min(size, resolved.length);
+            int fromWindow = size - fromResolved;
+            System.arraycopy(window, window.length - fromWindow, next, 0, fromWindow);
+            System.arraycopy(resolved, resolved.length - fromResolved, next, fromWindow, fromResolved);
+            return next;
+        }
+    }
+}
@@ -32,9 +32,9 @@ class CommonsArchiveEntry implements ArchiveEntry {
     /**
      * The {@link ArchiveStream} this entry belongs to.
      */
-    private ArchiveStream stream;
+    private CommonsArchiveStream stream;
 
-    CommonsArchiveEntry(ArchiveStream stream, org.apache.commons.compress.archivers.ArchiveEntry entry) {
+    CommonsArchiveEntry(CommonsArchiveStream stream, org.apache.commons.compress.archivers.ArchiveEntry entry) {
         this.stream = stream;
         this.entry = entry;
     }
@@ -71,14 +71,14 @@ class CommonsArchiveEntry implements ArchiveEntry {
         File file = new File(destination, entry.getName());
 
         if (entry.isDirectory()) {
-            file.mkdirs();
+            // entries are extracted one at a time, so the mode can not be deferred until all contents are written
+            stream.getDirectories().mkdirs(file);
+            FileModeMapper.map(entry, file);
         } else {
-            file.getParentFile().mkdirs();
-            IOUtils.copy(stream, file);
+            stream.getDirectories().mkdirsFor(file);
+            FileModeMapper.copy(entry, stream, file);
         }
 
-        FileModeMapper.map(entry, file);
-
         return file;
     }
 
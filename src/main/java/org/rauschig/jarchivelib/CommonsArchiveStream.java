@@ -26,10 +26,21 @@ class CommonsArchiveStream extends ArchiveStream {
 
     private ArchiveInputStream stream;
 
+    private final DirectoryCache directories = new DirectoryCache();
+
     CommonsArchiveStream(ArchiveInputStream stream) {
         this.stream = stream;
     }
 
+    /**
+     * Returns the directories that were created by extracting entries of this stream.
+     * 
+     * @return the directory cache of this stream
+     */
+    DirectoryCache getDirectories() {
+        return directories;
+    }
+
     @Override
     protected ArchiveEntry createNextEntry() throws IOException {
         org.apache.commons.compress.archivers.ArchiveEntry next = stream.getNextEntry();
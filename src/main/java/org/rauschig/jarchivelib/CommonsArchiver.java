@@ -15,17 +15,29 @@
  */
 package org.rauschig.jarchivelib;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 
 /**
@@ -37,14 +49,36 @@ class CommonsArchiver implements Archiver {
 
     private final ArchiveFormat archiveFormat;
 
+    private final CompressionOptions compressionOptions;
+
+    private final ReadOptions readOptions;
+
     CommonsArchiver(ArchiveFormat archiveFormat) {
+        this(archiveFormat, new CompressionOptions());
+    }
+
+    CommonsArchiver(ArchiveFormat archiveFormat, CompressionOptions options) {
+        this(archiveFormat, options, new ReadOptions());
+    }
+
+    CommonsArchiver(ArchiveFormat archiveFormat, CompressionOptions options, ReadOptions readOptions) {
         this.archiveFormat = archiveFormat;
+        this.compressionOptions = options;
+        this.readOptions = readOptions;
     }
 
     public ArchiveFormat getArchiveFormat() {
         return archiveFormat;
     }
 
+    public CompressionOptions getCompressionOptions() {
+        return compressionOptions;
+    }
+
+    public ReadOptions getReadOptions() {
+        return readOptions;
+    }
+
     @Override
     public File create(String archive, File destination, File source) throws IOException {
         return create(archive, destination, IOUtils.filesContainedIn(source));
@@ -62,7 +96,7 @@ class CommonsArchiver implements Archiver {
             outputStream = createArchiveOutputStream(archiveFile);
             writeToArchive(sources, outputStream);
 
-            outputStream.flush();
+            outputStream.finish();
         } finally {
             IOUtils.closeQuietly(outputStream);
         }
@@ -70,49 +104,283 @@ class CommonsArchiver implements Archiver {
         return archiveFile;
     }
 
+    @Override
+    public void create(OutputStream destination, File source) throws IOException {
+        create(destination, IOUtils.filesContainedIn(source));
+    }
+
+    @Override
+    public void create(OutputStream destination, File... sources) throws IOException {
+        ArchiveOutputStream outputStream = null;
+        try {
+            outputStream = createArchiveOutputStream(new CloseShieldOutputStream(destination));
+            writeToArchive(sources, outputStream);
+
+            // closing the archive stream finishes the archive and flushes the destination without closing it
+            outputStream.close();
+        } finally {
+            IOUtils.closeQuietly(outputStream);
+        }
+    }
+
+    @Override
+    public void create(WritableByteChannel destination, File source) throws IOException {
+        create(Channels.newOutputStream(destination), source);
+    }
+
+    @Override
+    public void create(WritableByteChannel destination, File... sources) throws IOException {
+        create(Channels.newOutputStream(destination), sources);
+    }
+
     @Override
     public void extract(File archive, File destination) throws IOException {
+        extract(archive, destination, new ExtractOptions());
+    }
+
+    @Override
+    public void extract(File archive, File destination, ExtractOptions options) throws IOException {
         assertExtractSource(archive);
 
         IOUtils.requireDirectory(destination);
 
         ArchiveInputStream input = null;
+        FileChannel channel = null;
         try {
-            input = createArchiveInputStream(archive);
-            extract(input, destination);
+            if (options.getThreads() > 1) {
+                input = createReadAheadArchiveInputStream(archive, statisticsOf(options));
+            } else {
+                input = createArchiveInputStream(archive);
+                if (getArchiveFormat() == ArchiveFormat.TAR) {
+                    // the data of uncompressed tar entries can be transferred straight from the archive file
+                    channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+                }
+            }
+            extract(input, destination, options, channel);
 
         } finally {
             IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(channel);
         }
     }
 
     @Override
     public void extract(InputStream archive, File destination) throws IOException {
         ArchiveInputStream input = createArchiveInputStream(archive);
-        extract(input, destination);
+        extract(input, destination, new ExtractOptions());
     }
 
-    private void extract(ArchiveInputStream input, File destination) throws IOException {
-        ArchiveEntry entry;
-        while ((entry = input.getNextEntry()) != null) {
-            File file = new File(destination, entry.getName());
+    /**
+     * Extracts the entries of the given ArchiveInputStream that are accepted by the filter of the given options. The
+     * data of other entries is skipped by the stream. If the options specify more than one thread, the entry data is
+     * written by a {@link PipelinedExtractor}.
+     * 
+     * @param input the archive to extract
+     * @param destination the directory to which to extract the files
+     * @param options the extraction options
+     * @throws IOException propagated I/O errors
+     */
+    void extract(ArchiveInputStream input, File destination, ExtractOptions options) throws IOException {
+        extract(input, destination, options, null);
+    }
 
-            if (entry.isDirectory()) {
-                file.mkdirs();
-            } else {
-                file.getParentFile().mkdirs();
-                IOUtils.copy(input, file);
+    /**
+     * Extracts the entries of the given ArchiveInputStream like {@link #extract(ArchiveInputStream, File,
+     * ExtractOptions)}. If the channel of the archive file is given, entries whose data is stored contiguously and
+     * uncompressed (see {@link #dataOffset(ArchiveInputStream, ArchiveEntry)}) are transferred from the channel into
+     * their files, and skipped by the stream.
+     * 
+     * @param input the archive to extract
+     * @param destination the directory to which to extract the files
+     * @param options the extraction options
+     * @param archive the channel of the archive file the stream reads, or null
+     * @throws IOException propagated I/O errors
+     */
+    void extract(ArchiveInputStream input, File destination, ExtractOptions options, FileChannel archive)
+        throws IOException {
+        EntryFilter filter = options.getFilter();
+        Set<String> remaining = null;
+        if (filter instanceof EntryFilters.NameFilter && hasUniqueEntryNames()) {
+            remaining = new HashSet<>(((EntryFilters.NameFilter) filter).getNames());
+        }
+
+        DirectoryCache directories = new DirectoryCache();
+        IncrementalExtraction incremental = IncrementalExtraction.of(destination, options);
+        if (incremental != null && incremental.isDeletingRemoved()) {
+            // the names of all entries are needed to tell which files were removed
+            remaining = null;
+        }
+        PipelinedExtractor pipeline = null;
+        if (options.getThreads() > 1) {
+            pipeline = new PipelinedExtractor(destination, options, statisticsOf(options), directories);
+        }
+
+        try {
+            ArchiveEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                if (filter != EntryFilters.all() && !filter.accept(ArchiveEntryInfo.of(entry))) {
+                    if (incremental != null) {
+                        incremental.retain(entry);
+                    }
+                    continue;
+                }
+
+                if (incremental != null && incremental.skip(entry)) {
+                    // the data of the unchanged entry is skipped by the stream
+                } else if (pipeline != null) {
+                    pipeline.extractEntry(entry, input);
+                } else {
+                    long position = (archive != null) ? dataOffset(input, entry) : -1;
+                    if (position >= 0) {
+                        transferEntry(entry, archive, position, destination, directories);
+                    } else {
+                        extractEntry(entry, input, destination, directories);
+                    }
+                }
+
+                if (remaining != null) {
+                    remaining.remove(EntryFilters.normalize(entry.getName()));
+                    if (remaining.isEmpty()) {
+                        // all requested entries were found, the rest of the archive need not be read
+                        break;
+                    }
+                }
             }
 
-            FileModeMapper.map(entry, file);
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+            if (incremental != null) {
+                incremental.finish();
+            }
+            directories.applyModes();
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+            }
         }
     }
 
+    /**
+     * Returns true if each entry name occurs only once in the archives of this archiver, s.t. the extraction of named
+     * entries can stop once all of them were found. Sequential formats like tar may contain an entry name several
+     * times, where the last entry wins.
+     * 
+     * @return true if entry names are unique
+     */
+    protected boolean hasUniqueEntryNames() {
+        return false;
+    }
+
+    /**
+     * Returns the statistics of the given options, or a new instance that is discarded after the extraction if the
+     * options collect none.
+     * 
+     * @param options the extraction options
+     * @return the statistics to record into
+     */
+    static ExtractStatistics statisticsOf(ExtractOptions options) {
+        return (options.getStatistics() != null) ? options.getStatistics() : new ExtractStatistics();
+    }
+
+    /**
+     * Extracts a single entry into the given destination directory, and maps the file mode of the entry onto the
+     * extracted file. Directories are created through the given cache, which applies their file modes once the
+     * extraction is done.
+     * 
+     * @param entry the entry to extract
+     * @param data the data of the entry
+     * @param destination the directory to which to extract the entry
+     * @param directories the directories of the extraction session
+     * @throws IOException propagated I/O errors
+     */
+    protected void extractEntry(ArchiveEntry entry, InputStream data, File destination, DirectoryCache directories)
+        throws IOException {
+        File file = new File(destination, entry.getName());
+
+        if (entry.isDirectory()) {
+            directories.add(entry, file);
+        } else {
+            directories.mkdirsFor(file);
+            FileModeMapper.copy(entry, data, file, compressionOptions.getBufferSize(),
+                    compressionOptions.getBufferPool());
+        }
+    }
+
+    /**
+     * Returns the position of the data of the given entry within the archive file, if it is stored there contiguously
+     * and uncompressed, s.t. it can be transferred with {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}. This is the case for regular files in tar archives, whose data starts
+     * right after the header the stream has just read.
+     * 
+     * @param input the stream that has just read the header of the entry
+     * @param entry the entry
+     * @return the position of the entry data, or -1 if it can not be transferred
+     */
+    protected long dataOffset(ArchiveInputStream input, ArchiveEntry entry) {
+        if (entry instanceof TarArchiveEntry) {
+            TarArchiveEntry tarEntry = (TarArchiveEntry) entry;
+            if (tarEntry.isFile() && !tarEntry.isSparse() && tarEntry.getSize() > 0) {
+                return input.getBytesRead();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Transfers the data of a single file entry from the archive file into the given destination directory, and maps
+     * the file mode of the entry onto the extracted file.
+     * 
+     * @param entry the entry to extract
+     * @param archive the channel of the archive file
+     * @param position the position of the entry data in the archive file
+     * @param destination the directory to which to extract the entry
+     * @param directories the directories of the extraction session
+     * @throws IOException propagated I/O errors
+     */
+    protected void transferEntry(ArchiveEntry entry, FileChannel archive, long position, File destination,
+        DirectoryCache directories) throws IOException {
+        File file = new File(destination, entry.getName());
+        directories.mkdirsFor(file);
+        FileModeMapper.transfer(entry, archive, position, entry.getSize(), file);
+    }
+
     @Override
     public ArchiveStream stream(File archive) throws IOException {
         return new CommonsArchiveStream(createArchiveInputStream(archive));
     }
 
+    @Override
+    public List<ArchiveEntryInfo> list(File archive) throws IOException {
+        assertExtractSource(archive);
+
+        ArchiveInputStream input = null;
+        try {
+            input = createArchiveInputStream(archive);
+            return list(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads the entries of the given ArchiveInputStream without reading their data.
+     * 
+     * @param input the stream to read the entries from
+     * @return descriptors of the entries
+     * @throws IOException propagated I/O errors
+     */
+    List<ArchiveEntryInfo> list(ArchiveInputStream input) throws IOException {
+        List<ArchiveEntryInfo> entries = new ArrayList<>();
+
+        ArchiveEntry entry;
+        while ((entry = input.getNextEntry()) != null) {
+            entries.add(ArchiveEntryInfo.of(entry));
+        }
+
+        return entries;
+    }
+
     @Override
     public String getFilenameExtension() {
         return getArchiveFormat().getDefaultFileExtension();
@@ -128,8 +396,34 @@ class CommonsArchiver implements Archiver {
      */
     protected ArchiveInputStream createArchiveInputStream(File archive) throws IOException {
         try {
-            return CommonsStreamFactory.createArchiveInputStream(archive);
+            /*
+             * The stream is created for the known archive format instead of detecting it, as detection marks the
+             * buffered stream, which would make it read the data of skipped entries instead of seeking over it.
+             */
+            return CommonsStreamFactory.createArchiveInputStream(this,
+                    new BufferedInputStream(new FileInputStream(archive), compressionOptions.getBufferSize()));
+        } catch (ArchiveException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns a new ArchiveInputStream for pipelined extraction, whose archive file is read ahead by a separate thread.
+     * Subclasses for formats that can not be read as a stream override this to return a regular ArchiveInputStream.
+     * 
+     * @param archive the archive file to stream from
+     * @param statistics the statistics to record the stalls of the read stage into
+     * @return a new ArchiveInputStream for the given archive file
+     * @throws IOException propagated IO exceptions
+     */
+    protected ArchiveInputStream createReadAheadArchiveInputStream(File archive, ExtractStatistics statistics)
+        throws IOException {
+        InputStream in = new ReadAheadInputStream(new FileInputStream(archive), "read-ahead",
+                statistics.getReadStage(), statistics.getParseStage());
+        try {
+            return CommonsStreamFactory.createArchiveInputStream(this, in);
         } catch (ArchiveException e) {
+            IOUtils.closeQuietly(in);
             throw new IOException(e);
         }
     }
@@ -159,8 +453,21 @@ class CommonsArchiver implements Archiver {
      * @throws IOException propagated IO exceptions
      */
     protected ArchiveOutputStream createArchiveOutputStream(File archiveFile) throws IOException {
+        return createArchiveOutputStream(new FileOutputStream(archiveFile));
+    }
+
+    /**
+     * Returns a new ArchiveOutputStream that writes the archive into the given OutputStream. This is used to create
+     * archives in streams, and by {@link ArchiverCompressorDecorator} to write the archive straight into a compressing
+     * stream.
+     *
+     * @param out the stream to write the archive to
+     * @return a new ArchiveOutputStream writing to the given stream
+     * @throws IOException propagated IO exceptions
+     */
+    protected ArchiveOutputStream createArchiveOutputStream(OutputStream out) throws IOException {
         try {
-            ArchiveOutputStream archiveOutputStream = CommonsStreamFactory.createArchiveOutputStream(this, archiveFile);
+            ArchiveOutputStream archiveOutputStream = CommonsStreamFactory.createArchiveOutputStream(this, out);
 
             if (archiveOutputStream instanceof TarArchiveOutputStream) {
                 ((TarArchiveOutputStream) archiveOutputStream).setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
@@ -270,7 +577,7 @@ class CommonsArchiver implements Archiver {
             FileInputStream input = null;
             try {
                 input = new FileInputStream(file);
-                IOUtils.copy(input, archive);
+                IOUtils.copy(input, archive, compressionOptions.getBufferSize(), compressionOptions.getBufferPool());
             } finally {
                 IOUtils.closeQuietly(input);
             }
@@ -18,13 +18,13 @@ package org.rauschig.jarchivelib;
 import static org.rauschig.jarchivelib.CommonsStreamFactory.createCompressorInputStream;
 import static org.rauschig.jarchivelib.CommonsStreamFactory.createCompressorOutputStream;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorInputStream;
@@ -40,14 +40,25 @@ class CommonsCompressor implements Compressor {
 
     private final CompressionType compressionType;
 
+    private final CompressionOptions compressionOptions;
+
     CommonsCompressor(CompressionType type) {
+        this(type, new CompressionOptions());
+    }
+
+    CommonsCompressor(CompressionType type, CompressionOptions options) {
         this.compressionType = type;
+        this.compressionOptions = options;
     }
 
     public CompressionType getCompressionType() {
         return compressionType;
     }
 
+    public CompressionOptions getCompressionOptions() {
+        return compressionOptions;
+    }
+
     @Override
     public void compress(File source, File destination) throws IllegalArgumentException, IOException {
         assertSource(source);
@@ -58,18 +69,22 @@ class CommonsCompressor implements Compressor {
         }
 
         CompressorOutputStream compressed = null;
-        BufferedInputStream input = null;
+        InputStream input = null;
         try {
-            input = new BufferedInputStream(new FileInputStream(source));
+            // the copy buffer is large enough, an additional BufferedInputStream would only copy the data once more
+            input = new FileInputStream(source);
             compressed = createCompressorOutputStream(this, destination);
 
-            IOUtils.copy(input, compressed);
+            IOUtils.copy(input, compressed, compressionOptions.getBufferSize(), compressionOptions.getBufferPool());
+            compressed.close();
         } catch (CompressorException e) {
             throw new IOException(e);
         } finally {
             IOUtils.closeQuietly(compressed);
             IOUtils.closeQuietly(input);
         }
+
+        writeBgzfIndex(destination);
     }
 
     @Override
@@ -84,9 +99,9 @@ class CommonsCompressor implements Compressor {
         CompressorInputStream compressed = null;
         FileOutputStream output = null;
         try {
-            compressed = createCompressorInputStream(getCompressionType(), source);
+            compressed = createCompressorInputStream(this, source);
             output = new FileOutputStream(destination);
-            IOUtils.copy(compressed, output);
+            IOUtils.copy(compressed, output, compressionOptions.getBufferSize(), compressionOptions.getBufferPool());
         } catch (CompressorException e) {
             throw new IOException(e);
         } finally {
@@ -98,12 +113,37 @@ class CommonsCompressor implements Compressor {
     @Override
     public InputStream decompressingStream(InputStream compressedStream) throws IOException {
         try {
-            return CommonsStreamFactory.createCompressorInputStream(getCompressionType(), compressedStream);
+            return CommonsStreamFactory.createCompressorInputStream(getCompressionType(), getCompressionOptions(),
+                    compressedStream);
+        } catch (CompressorException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public OutputStream compressingStream(OutputStream destination) throws IOException {
+        try {
+            return CommonsStreamFactory.createCompressorOutputStream(getCompressionType(), getCompressionOptions(),
+                    destination);
         } catch (CompressorException e) {
             throw new IOException(e);
         }
     }
 
+    /**
+     * Writes the .gzi index of the given compressed file next to it, if the compression options request BGZF with an
+     * index.
+     * 
+     * @param compressed the file that was compressed with this compressor
+     * @throws IOException if the file could not be read or the index could not be written
+     */
+    void writeBgzfIndex(File compressed) throws IOException {
+        if (compressionType == CompressionType.GZIP && compressionOptions.isBgzf()
+            && compressionOptions.isBgzfIndex()) {
+            BgzfIndex.scan(compressed).write(BgzfIndex.sidecarOf(compressed));
+        }
+    }
+
     @Override
     public String getFilenameExtension() {
         return getCompressionType().getDefaultFileExtension();
@@ -31,6 +31,10 @@ import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.CompressorOutputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
 
 /**
  * Wraps the two commons-compress factory types {@link CompressorFactory} and {@link ArchiveStreamFactory} into a
@@ -74,10 +78,11 @@ final class CommonsStreamFactory {
     }
 
     /**
-     * @see {@link ArchiveStreamFactory#createArchiveInputStream(InputStream)};
+     * @see {@link ArchiveStreamFactory#createArchiveInputStream(InputStream)}; the stream is only buffered if it does
+     *      not support the marks needed to detect the archive format.
      */
     static ArchiveInputStream createArchiveInputStream(InputStream in) throws ArchiveException {
-        return archiveStreamFactory.createArchiveInputStream(new BufferedInputStream(in));
+        return archiveStreamFactory.createArchiveInputStream(in.markSupported() ? in : new BufferedInputStream(in));
     }
 
     /**
@@ -102,7 +107,15 @@ final class CommonsStreamFactory {
 
     static ArchiveOutputStream createArchiveOutputStream(ArchiveFormat format, File archive) throws IOException,
         ArchiveException {
-        return createArchiveOutputStream(format.getName(), new FileOutputStream(archive));
+        return createArchiveOutputStream(format, new FileOutputStream(archive));
+    }
+
+    /**
+     * @see {@link ArchiveStreamFactory#createArchiveOutputStream(String, OutputStream)};
+     */
+    static ArchiveOutputStream createArchiveOutputStream(ArchiveFormat format, OutputStream out)
+        throws ArchiveException {
+        return createArchiveOutputStream(format.getName(), out);
     }
 
     /**
@@ -120,6 +133,20 @@ final class CommonsStreamFactory {
         return createArchiveOutputStream(archiver.getArchiveFormat(), archive);
     }
 
+    /**
+     * Uses the {@link ArchiveStreamFactory} and the name of the given archiver to create a new
+     * {@link ArchiveOutputStream} that writes into the given {@link OutputStream}.
+     *
+     * @param archiver the invoking archiver
+     * @param out the stream to write the archive to
+     * @return a new {@link ArchiveOutputStream}
+     * @throws ArchiveException if the archiver name is not known
+     */
+    static ArchiveOutputStream createArchiveOutputStream(CommonsArchiver archiver, OutputStream out)
+        throws ArchiveException {
+        return createArchiveOutputStream(archiver.getArchiveFormat(), out);
+    }
+
     /**
      * Uses the {@link CompressorStreamFactory} to create a new {@link CompressorInputStream} for the given source
      * {@link File}.
@@ -155,6 +182,86 @@ final class CommonsStreamFactory {
         return compressorStreamFactory.createCompressorInputStream(compressionType.getName(), in);
     }
 
+    /**
+     * Creates a new {@link CompressorInputStream} for the given compression type that is tuned by the given options.
+     * If the options request more than one thread and the compression type supports it, a parallel decompressor is
+     * returned, otherwise the {@link CompressorStreamFactory} is used. GZIP data is checked for BGZF, whose blocks are
+     * decompressed in parallel or, with a single thread, as concatenated gzip members. Other GZIP data is decompressed
+     * speculatively in parallel if more than one thread is requested.
+     * 
+     * @param compressionType the compression type
+     * @param options the compression options
+     * @param in the stream to read the compressed data from
+     * @return a new {@link CompressorInputStream}
+     * @throws IOException if the stream could not be read
+     * @throws CompressorException if the compressor name is not known
+     */
+    static CompressorInputStream createCompressorInputStream(CompressionType compressionType,
+        CompressionOptions options, InputStream in) throws IOException, CompressorException {
+        if (options.getThreads() > 1 && compressionType == CompressionType.BZIP2) {
+            return new ParallelBZip2CompressorInputStream(in, options);
+        }
+
+        if (compressionType == CompressionType.GZIP) {
+            in = in.markSupported() ? in : new BufferedInputStream(in);
+            if (BgzfBlocks.isBgzf(in)) {
+                if (options.getThreads() > 1) {
+                    return new ParallelBgzfCompressorInputStream(in, options);
+                }
+                // the factory would stop after the first gzip member
+                return new GzipCompressorInputStream(in, true);
+            }
+            if (options.getThreads() > 1) {
+                return new ParallelGzipCompressorInputStream(in, options);
+            }
+        }
+
+        return createCompressorInputStream(compressionType, in);
+    }
+
+    /**
+     * Uses the compression type and options of the given compressor to create a new {@link CompressorInputStream}
+     * for the given source {@link File}.
+     * 
+     * @param compressor the invoking compressor
+     * @param source the file to create the {@link CompressorInputStream} for
+     * @return a new {@link CompressorInputStream}
+     * @throws IOException if an I/O error occurs
+     * @throws CompressorException if the compressor name is not known
+     */
+    static CompressorInputStream createCompressorInputStream(CommonsCompressor compressor, File source)
+        throws IOException, CompressorException {
+        CompressionOptions options = compressor.getCompressionOptions();
+
+        CompressorInputStream blocks = createRandomAccessCompressorInputStream(compressor.getCompressionType(),
+                options, source);
+        if (blocks != null) {
+            return blocks;
+        }
+
+        return createCompressorInputStream(compressor.getCompressionType(), options,
+                new BufferedInputStream(new FileInputStream(source), options.getBufferSize()));
+    }
+
+    /**
+     * Creates a new {@link CompressorInputStream} that decompresses the given file by random access, which is possible
+     * for XZ files with more than one block if the options request more than one thread. The blocks are then
+     * decompressed in parallel.
+     * 
+     * @param compressionType the compression type
+     * @param options the compression options
+     * @param source the file to create the {@link CompressorInputStream} for
+     * @return a new {@link CompressorInputStream}, or null if the file has to be decompressed as a stream
+     * @throws IOException if an I/O error occurs
+     */
+    static CompressorInputStream createRandomAccessCompressorInputStream(CompressionType compressionType,
+        CompressionOptions options, File source) throws IOException {
+        if (compressionType == CompressionType.XZ) {
+            return ParallelXZCompressorInputStream.open(source, options);
+        }
+        return null;
+    }
+
     /**
      * @see {@link CompressorStreamFactory#createCompressorInputStream(InputStream)};
      */
@@ -164,12 +271,72 @@ final class CommonsStreamFactory {
 
     static CompressorOutputStream createCompressorOutputStream(CompressionType compressionType, File destination)
         throws IOException, CompressorException {
-        return createCompressorOutputStream(compressionType.getName(), new FileOutputStream(destination));
+        return createCompressorOutputStream(compressionType, new FileOutputStream(destination));
+    }
+
+    /**
+     * @see {@link CompressorStreamFactory#createCompressorOutputStream(String, OutputStream)};
+     */
+    static CompressorOutputStream createCompressorOutputStream(CompressionType compressionType, OutputStream out)
+        throws CompressorException {
+        return createCompressorOutputStream(compressionType.getName(), out);
+    }
+
+    /**
+     * Creates a new {@link CompressorOutputStream} for the given compression type that is tuned by the given options.
+     * If the options request BGZF for GZIP, a {@link BgzfCompressorOutputStream} is returned, which compresses its
+     * blocks in parallel if more than one thread is requested. If the options request more than one thread and the
+     * compression type supports it, a parallel compressor is returned. Otherwise the commons-compress stream of the
+     * compression type is configured with the level and dictionary size of the options, or, if those are the defaults,
+     * created by the {@link CompressorStreamFactory}.
+     * 
+     * @param compressionType the compression type
+     * @param options the compression options
+     * @param out the stream to write the compressed data to
+     * @return a new {@link CompressorOutputStream}
+     * @throws IOException if the compressor can not be initialized
+     * @throws CompressorException if the compressor name is not known
+     */
+    static CompressorOutputStream createCompressorOutputStream(CompressionType compressionType,
+        CompressionOptions options, OutputStream out) throws IOException, CompressorException {
+        if (options.isBgzf() && compressionType == CompressionType.GZIP) {
+            return new BgzfCompressorOutputStream(out, options);
+        }
+
+        if (options.getThreads() > 1) {
+            switch (compressionType) {
+                case GZIP:
+                    return new ParallelGzipCompressorOutputStream(out, options);
+                case XZ:
+                    return new ParallelXZCompressorOutputStream(out, options);
+                case BZIP2:
+                    return new ParallelBZip2CompressorOutputStream(out, options);
+                default:
+                    break;
+            }
+        }
+
+        if (!options.isDefaultLevel()) {
+            switch (compressionType) {
+                case GZIP:
+                    GzipParameters parameters = new GzipParameters();
+                    parameters.setCompressionLevel(options.getLevel());
+                    return new GzipCompressorOutputStream(out, parameters);
+                case XZ:
+                    return new XZOptionsCompressorOutputStream(out, options.createLZMA2Options());
+                case BZIP2:
+                    return new BZip2CompressorOutputStream(out, options.getBZip2BlockSize());
+                default:
+                    break;
+            }
+        }
+
+        return createCompressorOutputStream(compressionType, out);
     }
 
     /**
-     * Uses the {@link CompressorStreamFactory} and the name of the given compressor to create a new
-     * {@link CompressorOutputStream} for the given destination {@link File}.
+     * Uses the compression type and options of the given compressor to create a new {@link CompressorOutputStream}
+     * for the given destination {@link File}.
      * 
      * @param compressor the invoking compressor
      * @param destination the file to create the {@link CompressorOutputStream} for
@@ -179,7 +346,8 @@ final class CommonsStreamFactory {
      */
     static CompressorOutputStream createCompressorOutputStream(CommonsCompressor compressor, File destination)
         throws IOException, CompressorException {
-        return createCompressorOutputStream(compressor.getCompressionType(), destination);
+        return createCompressorOutputStream(compressor.getCompressionType(), compressor.getCompressionOptions(),
+                new FileOutputStream(destination));
     }
 
     /**
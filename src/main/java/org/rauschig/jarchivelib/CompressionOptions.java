@@ -0,0 +1,356 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+
+/**
+ * Tuning options for a {@link Compressor}, or an {@link Archiver} that uses compression. Can be passed to the
+ * {@link CompressorFactory} and the {@link ArchiverFactory}.
+ * <br>
+ * The default options use a single thread and the default settings of each compression type, which results in the
+ * plain commons-compress stream implementations being used. {@link #bestSpeed()} and {@link #bestCompression()} create
+ * options for the two ends of the trade-off between throughput and compression ratio.
+ */
+public final class CompressionOptions {
+
+    /**
+     * Default amount of memory parallel compressors may use to buffer compressed data.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 64 * 1024 * 1024;
+
+    /**
+     * Default size of the buffers used to copy data into and out of archives and compressed files.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = IOUtils.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Compression level that selects the default level of the compression type.
+     */
+    public static final int DEFAULT_LEVEL = -1;
+
+    /**
+     * Block size that selects the default block size of the compression type.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 0;
+
+    /**
+     * Compression level that favours throughput over compression ratio.
+     */
+    public static final int BEST_SPEED = 1;
+
+    /**
+     * Compression level that favours compression ratio over throughput.
+     */
+    public static final int BEST_COMPRESSION = 9;
+
+    private int level = DEFAULT_LEVEL;
+
+    private int dictionarySize;
+
+    private int threads = 1;
+
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private BufferPool bufferPool = BufferPools.threadLocal();
+
+    private boolean bgzf;
+
+    private boolean bgzfIndex;
+
+    /**
+     * Creates options that favour throughput over compression ratio.
+     * 
+     * @return new options with the level {@link #BEST_SPEED}
+     */
+    public static CompressionOptions bestSpeed() {
+        return new CompressionOptions().setLevel(BEST_SPEED);
+    }
+
+    /**
+     * Creates options that favour compression ratio over throughput.
+     * 
+     * @return new options with the level {@link #BEST_COMPRESSION}
+     */
+    public static CompressionOptions bestCompression() {
+        return new CompressionOptions().setLevel(BEST_COMPRESSION);
+    }
+
+    /**
+     * Returns the compression level.
+     * 
+     * @return the compression level between 0 and 9, or {@link #DEFAULT_LEVEL}
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the compression level, where 0 or 1 is fastest and 9 yields the best compression. The level is used as
+     * deflate level for GZIP and ZIP, as preset for XZ, and selects the block size in units of 100 KB for BZIP2 (as
+     * the command line option of bzip2 does).
+     * 
+     * @param level the compression level between 0 and 9, or {@link #DEFAULT_LEVEL}
+     * @return this options object
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    public CompressionOptions setLevel(int level) throws IllegalArgumentException {
+        if (level < DEFAULT_LEVEL || level > BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9, was " + level);
+        }
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * Returns the dictionary size.
+     * 
+     * @return the dictionary size in bytes, or 0 if the dictionary size of the level is used
+     */
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    /**
+     * Sets the dictionary size of XZ compression, which overrides the one of the level's preset. Larger dictionaries
+     * find matches further back in the input at the cost of memory for both compression and decompression. The window
+     * of deflate based compression types (GZIP and ZIP) is fixed at 32 KB.
+     * 
+     * @param dictionarySize the dictionary size in bytes
+     * @return this options object
+     * @throws IllegalArgumentException if the dictionary size is not supported by XZ
+     */
+    public CompressionOptions setDictionarySize(int dictionarySize) throws IllegalArgumentException {
+        if (dictionarySize < LZMA2Options.DICT_SIZE_MIN || dictionarySize > LZMA2Options.DICT_SIZE_MAX) {
+            throw new IllegalArgumentException("Dictionary size must be between " + LZMA2Options.DICT_SIZE_MIN
+                    + " and " + LZMA2Options.DICT_SIZE_MAX + ", was " + dictionarySize);
+        }
+        this.dictionarySize = dictionarySize;
+        return this;
+    }
+
+    /**
+     * Returns the amount of worker threads used for compression.
+     * 
+     * @return the amount of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the amount of worker threads used for compression. A value greater than one selects a parallel compressor
+     * implementation for compression types and archive formats that support it (e.g. GZIP, XZ or ZIP).
+     * 
+     * @param threads the amount of worker threads
+     * @return this options object
+     * @throws IllegalArgumentException if threads is smaller than one
+     */
+    public CompressionOptions setThreads(int threads) throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, was " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Returns the amount of uncompressed bytes that are compressed as one independent block by parallel compressors.
+     * 
+     * @return the block size in bytes, or {@link #DEFAULT_BLOCK_SIZE}
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the amount of uncompressed bytes that are compressed as one independent block by parallel compressors.
+     * Smaller blocks allow more parallelism, larger blocks yield better compression. By default a block size suitable
+     * for the compression type is used (e.g. 128 KiB for GZIP, three times the dictionary size for XZ).
+     * 
+     * @param blockSize the block size in bytes, or {@link #DEFAULT_BLOCK_SIZE}
+     * @return this options object
+     * @throws IllegalArgumentException if the block size is negative
+     */
+    public CompressionOptions setBlockSize(int blockSize) throws IllegalArgumentException {
+        if (blockSize < DEFAULT_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must not be negative, was " + blockSize);
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * Returns the amount of memory parallel compressors may use to buffer compressed data that is waiting to be
+     * written.
+     * 
+     * @return the memory limit in bytes
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the amount of memory parallel compressors may use to buffer compressed data that is waiting to be written.
+     * Data exceeding this limit is spilled into temporary files.
+     * 
+     * @param memoryLimit the memory limit in bytes
+     * @return this options object
+     * @throws IllegalArgumentException if the memory limit is negative
+     */
+    public CompressionOptions setMemoryLimit(long memoryLimit) throws IllegalArgumentException {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be negative, was " + memoryLimit);
+        }
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    /**
+     * Returns the size of the buffers used to copy data.
+     * 
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the buffers used to copy data into and out of archives and compressed files, and to buffer the
+     * files that are read.
+     * 
+     * @param bufferSize the buffer size in bytes
+     * @return this options object
+     * @throws IllegalArgumentException if the buffer size is smaller than one
+     */
+    public CompressionOptions setBufferSize(int bufferSize) throws IllegalArgumentException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1, was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Returns the pool the copy buffers are taken from.
+     * 
+     * @return the buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets the pool the copy buffers are taken from. The default {@link BufferPools#threadLocal()} pool lets each
+     * thread keep its last buffer of up to {@link BufferPools#DEFAULT_MAX_POOLED_SIZE} bytes for as long as the thread
+     * lives.
+     * 
+     * @param bufferPool the buffer pool
+     * @return this options object
+     * @throws IllegalArgumentException if the pool is null
+     */
+    public CompressionOptions setBufferPool(BufferPool bufferPool) throws IllegalArgumentException {
+        if (bufferPool == null) {
+            throw new IllegalArgumentException("Buffer pool must not be null");
+        }
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Returns whether GZIP data is written as BGZF.
+     * 
+     * @return true if GZIP data is written as BGZF
+     */
+    public boolean isBgzf() {
+        return bgzf;
+    }
+
+    /**
+     * Sets whether GZIP data is written as BGZF, the blocked gzip format of samtools: a sequence of independently
+     * compressed gzip members of at most 64 KiB each. Any gzip tool can decompress such files, while this library
+     * decompresses their blocks in parallel if more than one thread is requested, and a {@link TarGzIndex} of a BGZF
+     * tar.gz archive needs no decompressed data to resume at its checkpoints. Blocks compress slightly worse than a
+     * single gzip member.
+     * 
+     * @param bgzf whether to write BGZF
+     * @return this options object
+     */
+    public CompressionOptions setBgzf(boolean bgzf) {
+        this.bgzf = bgzf;
+        return this;
+    }
+
+    /**
+     * Returns whether a .gzi index is written next to compressed BGZF files.
+     * 
+     * @return true if a .gzi index is written
+     */
+    public boolean isBgzfIndex() {
+        return bgzfIndex;
+    }
+
+    /**
+     * Sets whether a .gzi index of the block offsets (as written by bgzip) is written next to the BGZF files that are
+     * compressed into a file, or archives that are created in a directory. It is used when building a
+     * {@link TarGzIndex}, and has no effect unless BGZF is enabled.
+     * 
+     * @param bgzfIndex whether to write a .gzi index
+     * @return this options object
+     */
+    public CompressionOptions setBgzfIndex(boolean bgzfIndex) {
+        this.bgzfIndex = bgzfIndex;
+        return this;
+    }
+
+    /**
+     * Returns whether the level and dictionary size are the defaults of the compression type.
+     * 
+     * @return true if neither level nor dictionary size were set
+     */
+    boolean isDefaultLevel() {
+        return level == DEFAULT_LEVEL && dictionarySize == 0;
+    }
+
+    /**
+     * Creates the LZMA2Options for XZ compression from the level and dictionary size.
+     * 
+     * @return new LZMA2Options
+     * @throws UnsupportedOptionsException never, as the level and dictionary size are validated when set
+     */
+    LZMA2Options createLZMA2Options() throws UnsupportedOptionsException {
+        LZMA2Options options = new LZMA2Options((level == DEFAULT_LEVEL) ? LZMA2Options.PRESET_DEFAULT : level);
+        if (dictionarySize > 0) {
+            options.setDictSize(dictionarySize);
+        }
+        return options;
+    }
+
+    /**
+     * Returns the BZIP2 block size in units of 100 KB for the level.
+     * 
+     * @return the block size between 1 and 9
+     */
+    int getBZip2BlockSize() {
+        return (level == DEFAULT_LEVEL) ? BEST_COMPRESSION : Math.max(BEST_SPEED, level);
+    }
+
+}
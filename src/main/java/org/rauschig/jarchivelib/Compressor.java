@@ -18,6 +18,7 @@ package org.rauschig.jarchivelib;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * A compressor facades a specific compression library, allowing for simple compression and decompression of files.
@@ -59,6 +60,17 @@ public interface Compressor {
      */
     InputStream decompressingStream(InputStream compressedStream) throws IOException;
 
+    /**
+     * Wraps the given stream in a compressing stream suitable for the current compressor. Data written to the returned
+     * stream is compressed into the given stream. Closing the returned stream finishes the compressed data and closes
+     * the given stream.
+     *
+     * @param destination the stream the compressed data is written to
+     * @return a new compressing stream
+     * @throws IOException an I/O error
+     */
+    OutputStream compressingStream(OutputStream destination) throws IOException;
+
     /**
      * Returns the filename extension that indicates the file format this compressor handles. E.g .gz". or ".bz2".
      * 
@@ -88,4 +88,16 @@ public final class CompressorFactory {
         return new CommonsCompressor(compression);
     }
 
+    /**
+     * Creates a compressor from the given CompressionType that is tuned by the given {@link CompressionOptions}, e.g.
+     * to compress in parallel.
+     * 
+     * @param compression the type of the compression algorithm
+     * @param options the compression options
+     * @return a new {@link Compressor} instance that uses the specified compression algorithm.
+     */
+    public static Compressor createCompressor(CompressionType compression, CompressionOptions options) {
+        return new CommonsCompressor(compression, options);
+    }
+
 }
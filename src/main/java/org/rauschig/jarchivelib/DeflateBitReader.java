@@ -0,0 +1,235 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads bit sequences from an InputStream least significant bit first, as they are laid out in deflate streams.
+ * <br>
+ * Keeps track of the absolute bit position in the underlying data, s.t. a reader can later be created at the exact
+ * position a previous reader reached.
+ */
+class DeflateBitReader {
+
+    private final InputStream in;
+    private final byte[] buffer;
+
+    private int position;
+    private int limit;
+
+    /**
+     * Offset of the first byte of the buffer in the underlying data.
+     */
+    private long bufferOffset;
+
+    private long bits;
+    private int bitCount;
+
+    DeflateBitReader(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Creates a reader that starts within the first byte of the given stream.
+     * 
+     * @param in the stream to read, positioned at byte {@code byteOffset} of the underlying data
+     * @param byteOffset the offset of the stream position in the underlying data
+     * @param bitOffset the amount of bits of the first byte that are skipped
+     * @throws IOException propagated I/O errors
+     */
+    DeflateBitReader(InputStream in, long byteOffset, int bitOffset) throws IOException {
+        this(in);
+        this.bufferOffset = byteOffset;
+
+        if (bitOffset > 0) {
+            bits(bitOffset);
+        }
+    }
+
+    /**
+     * Creates a reader of the given array, which starts at the given bit of the array. The bit position is counted
+     * from the start of the array.
+     * 
+     * @param data the data to read
+     * @param length the amount of valid bytes in the array
+     * @param bitPosition the position of the first bit to read
+     * @throws IOException if the position is beyond the data
+     */
+    DeflateBitReader(byte[] data, int length, long bitPosition) throws IOException {
+        this.in = null;
+        this.buffer = data;
+        this.position = (int) (bitPosition >>> 3);
+        this.limit = length;
+
+        if ((bitPosition & 7) > 0) {
+            bits((int) (bitPosition & 7));
+        }
+    }
+
+    /**
+     * Returns the absolute position of the next bit to read.
+     * 
+     * @return the bit position
+     */
+    long bitPosition() {
+        return (bufferOffset + position) * 8 - bitCount;
+    }
+
+    /**
+     * Reads the given amount of bits.
+     * 
+     * @param count the amount of bits, at most 32
+     * @return the bits, with the first bit read as least significant bit
+     * @throws IOException if the stream ends before
+     */
+    int bits(int count) throws IOException {
+        if (bitCount < count) {
+            refill();
+            if (bitCount < count) {
+                throw new EOFException("Unexpected end of deflate stream");
+            }
+        }
+        int value = (int) (bits & ((1L << count) - 1));
+        bits >>>= count;
+        bitCount -= count;
+        return value;
+    }
+
+    /**
+     * Returns up to the given amount of bits without consuming them. Missing bits at the end of the stream are zero.
+     * 
+     * @param count the amount of bits, at most 32
+     * @return the bits, with the first bit as least significant bit
+     * @throws IOException propagated I/O errors
+     */
+    int peek(int count) throws IOException {
+        if (bitCount < count) {
+            refill();
+        }
+        return (int) (bits & ((1L << count) - 1));
+    }
+
+    /**
+     * Consumes bits that were returned by {@link #peek(int)}.
+     * 
+     * @param count the amount of bits
+     * @throws EOFException if fewer bits are available
+     */
+    void skip(int count) throws EOFException {
+        if (count > bitCount) {
+            throw new EOFException("Unexpected end of deflate stream");
+        }
+        bits >>>= count;
+        bitCount -= count;
+    }
+
+    /**
+     * Discards the remaining bits of the current byte.
+     */
+    void alignToByte() {
+        int drop = bitCount & 7;
+        bits >>>= drop;
+        bitCount -= drop;
+    }
+
+    /**
+     * Reads a byte. The reader has to be aligned to a byte boundary.
+     * 
+     * @return the byte
+     * @throws IOException if the stream ends before
+     */
+    int readByte() throws IOException {
+        return bits(8);
+    }
+
+    /**
+     * Reads bytes into the given array. The reader has to be aligned to a byte boundary.
+     * 
+     * @param b the target array
+     * @param off the offset in the array
+     * @param len the maximum amount of bytes to read
+     * @return the amount of bytes read, at least one
+     * @throws IOException if the stream ends before
+     */
+    int readBytes(byte[] b, int off, int len) throws IOException {
+        if (bitCount > 0) {
+            b[off] = (byte) bits(8);
+            return 1;
+        }
+        if (position == limit) {
+            fill();
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Returns whether all data has been read.
+     * 
+     * @return true if there are no more bits
+     * @throws IOException propagated I/O errors
+     */
+    boolean isAtEnd() throws IOException {
+        if (bitCount > 0 || position < limit) {
+            return false;
+        }
+        return !tryFill();
+    }
+
+    /**
+     * Fills the bit buffer with as many whole bytes as fit, or as are left.
+     */
+    private void refill() throws IOException {
+        while (bitCount <= 56) {
+            if (position == limit && !tryFill()) {
+                return;
+            }
+            bits |= (long) (buffer[position++] & 0xFF) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private void fill() throws IOException {
+        if (!tryFill()) {
+            throw new EOFException("Unexpected end of deflate stream");
+        }
+    }
+
+    private boolean tryFill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+
+        if (n < 0) {
+            return false;
+        }
+        bufferOffset += limit;
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
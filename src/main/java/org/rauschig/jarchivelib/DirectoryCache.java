@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+
+/**
+ * Keeps track of the directories an extraction session knows to exist, s.t. each distinct directory is created only
+ * once instead of once per entry it contains.
+ * <br>
+ * The file modes of directory entries are not applied when the directories are created, but in a final pass by
+ * {@link #applyModes()}, children before parents, s.t. restrictive directory permissions do not prevent writing their
+ * contents.
+ * <br>
+ * A DirectoryCache is not thread-safe. Concurrent readers are fine once all directories were created.
+ */
+class DirectoryCache {
+
+    private final Set<File> existing = new HashSet<>();
+
+    private final List<DirectoryEntry> entries = new ArrayList<>();
+
+    /**
+     * Makes sure the given directory and all of its parents exist.
+     * 
+     * @param directory the directory to create
+     */
+    void mkdirs(File directory) {
+        if (directory == null || existing.contains(directory)) {
+            return;
+        }
+
+        File parent = directory.getParentFile();
+        if (parent != null && existing.contains(parent)) {
+            directory.mkdir();
+        } else {
+            directory.mkdirs();
+        }
+
+        File known = directory;
+        while (known != null && existing.add(known)) {
+            known = known.getParentFile();
+        }
+    }
+
+    /**
+     * Makes sure the parent directory of the given file exists.
+     * 
+     * @param file the file that is about to be created
+     */
+    void mkdirsFor(File file) {
+        mkdirs(file.getParentFile());
+    }
+
+    /**
+     * Creates the directory of the given directory entry, and remembers the entry to apply its file mode in
+     * {@link #applyModes()}.
+     * 
+     * @param entry the directory entry
+     * @param directory the directory to create for the entry
+     */
+    void add(ArchiveEntry entry, File directory) {
+        mkdirs(directory);
+        entries.add(new DirectoryEntry(entry, directory));
+    }
+
+    /**
+     * Applies the file modes of all directory entries that were added, children before parents.
+     * 
+     * @throws IOException propagated I/O errors
+     */
+    void applyModes() throws IOException {
+        // a directory path sorts after the paths of its parents
+        Collections.sort(entries, Collections.reverseOrder(new Comparator<DirectoryEntry>() {
+            @Override
+            public int compare(DirectoryEntry a, DirectoryEntry b) {
+                return a.directory.getPath().compareTo(b.directory.getPath());
+            }
+        }));
+
+        for (DirectoryEntry entry : entries) {
+            FileModeMapper.map(entry.entry, entry.directory);
+        }
+        entries.clear();
+    }
+
+    private static class DirectoryEntry {
+        final ArchiveEntry entry;
+        final File directory;
+
+        DirectoryEntry(ArchiveEntry entry, File directory) {
+            this.entry = entry;
+            this.directory = directory;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Factory for common {@link EntryFilter}s.
+ * <br>
+ * Entry names are compared without trailing slashes, s.t. directories can be selected with or without them.
+ */
+public final class EntryFilters {
+
+    private static final EntryFilter ALL = new EntryFilter() {
+        @Override
+        public boolean accept(ArchiveEntryInfo entry) {
+            return true;
+        }
+    };
+
+    private EntryFilters() {
+
+    }
+
+    /**
+     * Returns a filter that accepts all entries.
+     * 
+     * @return a filter that accepts all entries
+     */
+    public static EntryFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Returns a filter that accepts the entries with the given names. Archivers use the names to look up entries
+     * directly where the archive format allows it (e.g. in the central directory of ZIP archives), and stop reading
+     * 7z archives once all names were found. Sequential archives like tar are read to their end, as an entry appended
+     * later replaces an earlier entry of the same name.
+     * 
+     * @param names the full names of the entries to accept
+     * @return a new filter
+     */
+    public static EntryFilter names(String... names) {
+        return names(Arrays.asList(names));
+    }
+
+    /**
+     * Returns a filter that accepts the entries with the given names.
+     * 
+     * @param names the full names of the entries to accept
+     * @return a new filter
+     * @see #names(String...)
+     */
+    public static EntryFilter names(Collection<String> names) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String name : names) {
+            normalized.add(normalize(name));
+        }
+        return new NameFilter(normalized);
+    }
+
+    /**
+     * Returns a filter that accepts the entries whose names match any of the given glob patterns. In a pattern,
+     * {@code *} matches any characters except {@code /}, {@code **} matches any characters including {@code /},
+     * {@code ?} matches a single character except {@code /}, and {@code [...]} matches a single character of a set.
+     * E.g. {@code folder/**}{@code /*.txt} matches all text files below {@code folder}.
+     * 
+     * @param patterns the glob patterns
+     * @return a new filter
+     * @throws IllegalArgumentException if a pattern is malformed
+     */
+    public static EntryFilter glob(String... patterns) throws IllegalArgumentException {
+        Pattern[] compiled = new Pattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            compiled[i] = Pattern.compile(globToRegex(normalize(patterns[i])));
+        }
+        return new GlobFilter(compiled);
+    }
+
+    static String normalize(String name) {
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    static String globToRegex(String glob) throws IllegalArgumentException {
+        StringBuilder regex = new StringBuilder(glob.length() * 2);
+
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            // "**/" also matches no directory at all
+                            i++;
+                            regex.append("(?:.*/)?");
+                        } else {
+                            regex.append(".*");
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    int start = (i + 1 < glob.length() && glob.charAt(i + 1) == '!') ? i + 2 : i + 1;
+                    // a leading ']' is part of the set, like in "[]a]"
+                    int end = glob.indexOf(']', start + 1);
+                    if (start >= glob.length() || end < 0) {
+                        throw new IllegalArgumentException("Unclosed character set in glob " + glob);
+                    }
+                    regex.append(start > i + 1 ? "[^" : "[");
+                    appendSet(regex, glob, start, end);
+                    i = end;
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                    break;
+            }
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * Appends the characters and ranges of a glob character set to the given regex character class, quoting the
+     * characters that have a meaning within a regex character class, like nested classes or intersections.
+     */
+    private static void appendSet(StringBuilder regex, String glob, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' || c == '[' || c == ']' || c == '&') {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+        regex.append(']');
+    }
+
+    /**
+     * Accepts entries by their exact name.
+     */
+    static final class NameFilter implements EntryFilter {
+        private final Set<String> names;
+
+        NameFilter(Set<String> names) {
+            this.names = Collections.unmodifiableSet(names);
+        }
+
+        /**
+         * Returns the names of the entries this filter accepts, without trailing slashes.
+         * 
+         * @return an unmodifiable set of names
+         */
+        Set<String> getNames() {
+            return names;
+        }
+
+        @Override
+        public boolean accept(ArchiveEntryInfo entry) {
+            return names.contains(normalize(entry.getName()));
+        }
+    }
+
+    /**
+     * Accepts entries whose names match one of a set of glob patterns.
+     */
+    private static final class GlobFilter implements EntryFilter {
+        private final Pattern[] patterns;
+
+        GlobFilter(Pattern[] patterns) {
+            this.patterns = patterns;
+        }
+
+        @Override
+        public boolean accept(ArchiveEntryInfo entry) {
+            String name = normalize(entry.getName());
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(name).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
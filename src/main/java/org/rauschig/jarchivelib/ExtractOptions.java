@@ -0,0 +1,218 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+/**
+ * Options for extracting an archive with {@link Archiver#extract(java.io.File, java.io.File, ExtractOptions)}.
+ * <br>
+ * The default options extract all entries, just like {@link Archiver#extract(java.io.File, java.io.File)}.
+ */
+public final class ExtractOptions {
+
+    /**
+     * Default amount of memory a pipelined extraction may use to buffer entry data that is waiting to be written.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 32 * 1024 * 1024;
+
+    private EntryFilter filter = EntryFilters.all();
+
+    private int threads = 1;
+
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+
+    private ExtractStatistics statistics;
+
+    private boolean skipUnchanged;
+
+    private boolean compareChecksums;
+
+    private boolean deleteRemoved;
+
+    /**
+     * Returns the filter that selects the entries to extract.
+     * 
+     * @return the entry filter
+     */
+    public EntryFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Sets the filter that selects the entries to extract. Entries that are not accepted are skipped without reading
+     * their data where the archive format allows it.
+     * 
+     * @param filter the entry filter
+     * @return this options object
+     * @throws IllegalArgumentException if the filter is null
+     * @see EntryFilters
+     */
+    public ExtractOptions setFilter(EntryFilter filter) throws IllegalArgumentException {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter is null");
+        }
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Returns the amount of worker threads used for extraction.
+     * 
+     * @return the amount of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the amount of worker threads used for extraction. A value greater than one extracts entries concurrently
+     * for archive formats that allow random access to their entries (ZIP and JAR). All other formats are extracted by
+     * a pipeline that reads, decompresses, parses and writes on separate threads, with the given amount of threads
+     * writing files.
+     * 
+     * @param threads the amount of worker threads
+     * @return this options object
+     * @throws IllegalArgumentException if threads is smaller than one
+     */
+    public ExtractOptions setThreads(int threads) throws IllegalArgumentException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1, was " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Returns the amount of memory a pipelined extraction may use to buffer entry data.
+     * 
+     * @return the memory limit in bytes
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the amount of memory a pipelined extraction (see {@link #setThreads(int)}) may use to buffer entry data
+     * that is waiting to be written. The archive is read ahead of the writer threads until this limit is reached,
+     * which lets the writers create many small files concurrently. A single chunk of data is always buffered, even if
+     * it exceeds the limit.
+     * 
+     * @param memoryLimit the memory limit in bytes
+     * @return this options object
+     * @throws IllegalArgumentException if the memory limit is negative
+     */
+    public ExtractOptions setMemoryLimit(long memoryLimit) throws IllegalArgumentException {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be negative, was " + memoryLimit);
+        }
+        this.memoryLimit = memoryLimit;
+        return this;
+    }
+
+    /**
+     * Returns the statistics that are collected by pipelined or incremental extraction, or null if none are collected.
+     * 
+     * @return the extraction statistics
+     */
+    public ExtractStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the statistics into which a pipelined extraction (see {@link #setThreads(int)}) records the time each
+     * stage spent stalled.
+     * 
+     * @param statistics the extraction statistics, or null to collect none
+     * @return this options object
+     */
+    public ExtractOptions setStatistics(ExtractStatistics statistics) {
+        this.statistics = statistics;
+        return this;
+    }
+
+    /**
+     * Returns whether files that match their entry are left as they are.
+     * 
+     * @return true if unchanged files are skipped
+     */
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * Sets whether existing files that match their entry are left as they are, instead of being extracted again. A
+     * file matches its entry if it has the same size and modification time, and, if checksums are compared (see
+     * {@link #setCompareChecksums(boolean)}), the same CRC32. The data of skipped entries is not decompressed where
+     * the archive format allows it (e.g. ZIP). Extracted files get the modification time of their entry, s.t. an
+     * extraction of the same archive into the same directory skips them.
+     * <br>
+     * The amount of created, updated and skipped files is counted by the {@link #setStatistics(ExtractStatistics)
+     * statistics}.
+     * 
+     * @param skipUnchanged whether to skip unchanged files
+     * @return this options object
+     */
+    public ExtractOptions setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        return this;
+    }
+
+    /**
+     * Returns whether the CRC32 of existing files is compared with the one recorded in the archive.
+     * 
+     * @return true if checksums are compared
+     */
+    public boolean isCompareChecksums() {
+        return compareChecksums;
+    }
+
+    /**
+     * Sets whether an existing file that has the size and modification time of its entry also has to have the CRC32
+     * recorded in the archive to be skipped (see {@link #setSkipUnchanged(boolean)}). This reads the existing files,
+     * but not the archive data. Only ZIP, JAR and 7z archives record checksums, for other formats this has no effect.
+     * 
+     * @param compareChecksums whether to compare checksums
+     * @return this options object
+     */
+    public ExtractOptions setCompareChecksums(boolean compareChecksums) {
+        this.compareChecksums = compareChecksums;
+        return this;
+    }
+
+    /**
+     * Returns whether files that are not in the archive are deleted from the destination directory.
+     * 
+     * @return true if removed files are deleted
+     */
+    public boolean isDeleteRemoved() {
+        return deleteRemoved;
+    }
+
+    /**
+     * Sets whether files in the destination directory that are not entries of the archive are deleted after the
+     * extraction, along with the directories that are left empty. Entries that are not accepted by the
+     * {@link #setFilter(EntryFilter) filter} still count as in the archive, so their files are kept, which requires
+     * reading all entry headers of the archive even with a {@link EntryFilters#names(String...) name filter}. The
+     * amount of deleted files is counted by the {@link #setStatistics(ExtractStatistics) statistics}.
+     * 
+     * @param deleteRemoved whether to delete files that are not in the archive
+     * @return this options object
+     */
+    public ExtractOptions setDeleteRemoved(boolean deleteRemoved) {
+        this.deleteRemoved = deleteRemoved;
+        return this;
+    }
+
+}
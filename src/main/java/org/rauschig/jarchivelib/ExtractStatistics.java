@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a pipelined extraction, which is used by {@link Archiver#extract(java.io.File, java.io.File,
+ * ExtractOptions)} for sequential archive formats if the {@link ExtractOptions} specify more than one thread.
+ * <br>
+ * The pipeline consists of the following stages, connected by bounded queues:
+ * <ul>
+ * <li>read: reads the archive file ahead</li>
+ * <li>decompress: decompresses the archive (only for compressed archives)</li>
+ * <li>parse: reads the entries of the archive and hands their data to the writers</li>
+ * <li>write: writes the entry data to files (summed up over all writer threads)</li>
+ * </ul>
+ * An incremental extraction (see {@link ExtractOptions#setSkipUnchanged(boolean)}) also counts the files it created,
+ * updated, skipped and deleted, regardless of the amount of threads.
+ * <br>
+ * The statistics accumulate if the same instance is used for several extractions.
+ */
+public final class ExtractStatistics {
+
+    private final StageStatistics read = new StageStatistics("read");
+    private final StageStatistics decompress = new StageStatistics("decompress");
+    private final StageStatistics parse = new StageStatistics("parse");
+    private final StageStatistics write = new StageStatistics("write");
+
+    private final AtomicLong createdFiles = new AtomicLong();
+    private final AtomicLong updatedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong deletedFiles = new AtomicLong();
+
+    /**
+     * Returns the statistics of the stage that reads the archive file.
+     * 
+     * @return the read stage statistics
+     */
+    public StageStatistics getReadStage() {
+        return read;
+    }
+
+    /**
+     * Returns the statistics of the stage that decompresses the archive.
+     * 
+     * @return the decompress stage statistics
+     */
+    public StageStatistics getDecompressStage() {
+        return decompress;
+    }
+
+    /**
+     * Returns the statistics of the stage that parses the archive entries.
+     * 
+     * @return the parse stage statistics
+     */
+    public StageStatistics getParseStage() {
+        return parse;
+    }
+
+    /**
+     * Returns the statistics of the stage that writes the extracted files.
+     * 
+     * @return the write stage statistics
+     */
+    public StageStatistics getWriteStage() {
+        return write;
+    }
+
+    /**
+     * Returns the amount of files an incremental extraction created, as they did not exist before.
+     * 
+     * @return the amount of created files
+     */
+    public long getCreatedFiles() {
+        return createdFiles.get();
+    }
+
+    /**
+     * Returns the amount of existing files an incremental extraction overwrote, as they differed from their entry.
+     * 
+     * @return the amount of updated files
+     */
+    public long getUpdatedFiles() {
+        return updatedFiles.get();
+    }
+
+    /**
+     * Returns the amount of existing files an incremental extraction left as they were, as they matched their entry.
+     * 
+     * @return the amount of skipped files
+     */
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * Returns the amount of files an incremental extraction deleted, as the archive did not contain them.
+     * 
+     * @return the amount of deleted files
+     */
+    public long getDeletedFiles() {
+        return deletedFiles.get();
+    }
+
+    void addCreatedFile() {
+        createdFiles.incrementAndGet();
+    }
+
+    void addUpdatedFile() {
+        updatedFiles.incrementAndGet();
+    }
+
+    void addSkippedFile() {
+        skippedFiles.incrementAndGet();
+    }
+
+    void addDeletedFile() {
+        deletedFiles.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return read + "; " + decompress + "; " + parse + "; " + write + "; files: " + getCreatedFiles() + " created, "
+            + getUpdatedFiles() + " updated, " + getSkippedFiles() + " skipped, " + getDeletedFiles() + " deleted";
+    }
+}
@@ -16,12 +16,25 @@
 package org.rauschig.jarchivelib;
 
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -57,7 +70,110 @@ abstract class FileModeMapper {
      * @param file the file to apply the mode onto
      */
     public static void map(ArchiveEntry entry, File file) throws IOException {
-        create(entry).map(file);
+        // maps the mode statically, s.t. mapping many entries does not allocate mapper instances
+        if (IS_POSIX) {
+            PosixPermissionMapper.map(getMode(entry), file);
+        }
+    }
+
+    /**
+     * Opens a stream that creates the given file for the data of the given entry, and maps the file mode of the entry
+     * onto the file. Where the file system allows it, the file is created with its permissions in place, which saves
+     * a separate call to change them. Otherwise, or if the umask of the process would withhold some of the
+     * permissions, or if the file already existed, the permissions are set when the stream is closed.
+     * 
+     * @param entry the archive entry that holds the mode
+     * @param file the file to create
+     * @return a stream writing to the file
+     * @throws IOException if the file can not be opened
+     */
+    public static OutputStream newOutputStream(ArchiveEntry entry, File file) throws IOException {
+        return open(entry, file);
+    }
+
+    private static ChannelOutputStream open(ArchiveEntry entry, File file) throws IOException {
+        int mode = IS_POSIX ? getMode(entry) : 0;
+        Path path = file.toPath();
+
+        if (mode > 0 && (mode & Umask.get()) == 0) {
+            try {
+                FileAttribute<Set<PosixFilePermission>> permissions = PosixFilePermissions
+                        .asFileAttribute(PosixFilePermissionsMapper.permissions(mode));
+                return new ChannelOutputStream(FileChannel.open(path,
+                        EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), permissions), 0, path);
+            } catch (FileAlreadyExistsException e) {
+                // permissions are only applied to newly created files
+            }
+        }
+
+        return new ChannelOutputStream(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), mode, path);
+    }
+
+    /**
+     * Transfers a range of an archive file into a new file, and maps the file mode of the entry onto it. The data is
+     * moved by {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the
+     * operating system copy it without passing it through a buffer in the JVM.
+     * 
+     * @param entry the archive entry that holds the mode
+     * @param archive the channel of the archive file
+     * @param position the position of the entry data in the archive file
+     * @param count the size of the entry data
+     * @param file the file to create
+     * @throws IOException if an I/O error occurs
+     * @see #newOutputStream(ArchiveEntry, File)
+     */
+    public static void transfer(ArchiveEntry entry, FileChannel archive, long position, long count, File file)
+        throws IOException {
+        ChannelOutputStream output = null;
+        try {
+            output = open(entry, file);
+            IOUtils.transfer(archive, position, count, output.channel);
+            output.close();
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Copies the given data into a new file, and maps the file mode of the entry onto it.
+     * 
+     * @param entry the archive entry that holds the mode
+     * @param data the data of the entry
+     * @param file the file to create
+     * @throws IOException if an I/O error occurs
+     * @see #newOutputStream(ArchiveEntry, File)
+     */
+    public static void copy(ArchiveEntry entry, InputStream data, File file) throws IOException {
+        copy(entry, data, file, IOUtils.DEFAULT_BUFFER_SIZE, BufferPools.threadLocal());
+    }
+
+    /**
+     * Copies the given data into a new file using a buffer of the given size, and maps the file mode of the entry onto
+     * it.
+     * 
+     * @param entry the archive entry that holds the mode
+     * @param data the data of the entry
+     * @param file the file to create
+     * @param bufferSize the size of the copy buffer
+     * @param bufferPool the pool to take the copy buffer from
+     * @throws IOException if an I/O error occurs
+     * @see #newOutputStream(ArchiveEntry, File)
+     */
+    public static void copy(ArchiveEntry entry, InputStream data, File file, int bufferSize, BufferPool bufferPool)
+        throws IOException {
+        OutputStream output = null;
+        try {
+            output = newOutputStream(entry, file);
+            IOUtils.copy(data, output, bufferSize, bufferPool);
+            output.close();
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private static int getMode(ArchiveEntry entry) throws IOException {
+        return AttributeAccessor.create(entry).getMode() & PosixPermissionMapper.UNIX_PERMISSION_MASK;
     }
 
     /**
@@ -104,23 +220,24 @@ abstract class FileModeMapper {
 
         @Override
         public void map(File file) throws IOException {
-            int mode = getMode() & UNIX_PERMISSION_MASK;
-
-            if (mode > 0) {
-                setPermissions(mode, file);
-            }
+            map(getMode() & UNIX_PERMISSION_MASK, file);
         }
 
         public int getMode() throws IOException {
             return AttributeAccessor.create(getArchiveEntry()).getMode();
         }
 
-        private void setPermissions(int mode, File file) {
+        static void map(int mode, File file) {
+            if (mode > 0) {
+                setPermissions(mode, file.toPath());
+            }
+        }
+
+        static void setPermissions(int mode, Path path) {
             try {
-                Set<PosixFilePermission> posixFilePermissions = new PosixFilePermissionsMapper().map(mode);
-                Files.setPosixFilePermissions(file.toPath(), posixFilePermissions);
+                Files.setPosixFilePermissions(path, PosixFilePermissionsMapper.permissions(mode));
             } catch (Exception e) {
-                LOG.warning("Could not set file permissions of " + file + ". Exception was: " + e.getMessage());
+                LOG.warning("Could not set file permissions of " + path + ". Exception was: " + e.getMessage());
             }
         }
     }
@@ -143,14 +260,120 @@ abstract class FileModeMapper {
             intToPosixFilePermission.put(0001, PosixFilePermission.OTHERS_EXECUTE);
         }
 
+        /**
+         * The permission sets of all 512 modes, indexed by mode.
+         */
+        private static final List<Set<PosixFilePermission>> PERMISSIONS;
+
+        static {
+            List<Set<PosixFilePermission>> permissions = new ArrayList<>(
+                    PosixPermissionMapper.UNIX_PERMISSION_MASK + 1);
+            for (int mode = 0; mode <= PosixPermissionMapper.UNIX_PERMISSION_MASK; mode++) {
+                Set<PosixFilePermission> permissionSet = EnumSet.noneOf(PosixFilePermission.class);
+                for (Map.Entry<Integer, PosixFilePermission> entry : intToPosixFilePermission.entrySet()) {
+                    if ((mode & entry.getKey()) > 0) {
+                        permissionSet.add(entry.getValue());
+                    }
+                }
+                permissions.add(Collections.unmodifiableSet(permissionSet));
+            }
+            PERMISSIONS = Collections.unmodifiableList(permissions);
+        }
+
+        /**
+         * Returns the shared, unmodifiable set of permissions of the given mode.
+         * 
+         * @param mode the unix file mode
+         * @return the permissions of the mode
+         */
         public Set<PosixFilePermission> map(int mode) {
-            Set<PosixFilePermission> permissionSet = new HashSet<>();
+            return permissions(mode);
+        }
+
+        static Set<PosixFilePermission> permissions(int mode) {
+            return PERMISSIONS.get(mode & PosixPermissionMapper.UNIX_PERMISSION_MASK);
+        }
+
+        static int mode(Set<PosixFilePermission> permissions) {
+            int mode = 0;
             for (Map.Entry<Integer, PosixFilePermission> entry : intToPosixFilePermission.entrySet()) {
-                if ((mode & entry.getKey()) > 0) {
-                     permissionSet.add(entry.getValue());
+                if (permissions.contains(entry.getValue())) {
+                    mode |= entry.getKey();
                 }
             }
-            return permissionSet;
+            return mode;
+        }
+    }
+
+    /**
+     * Detects the umask of the process on first use, by creating a temporary file that requests all permissions.
+     */
+    private static final class Umask {
+
+        private static final int UNKNOWN = -1;
+
+        private static volatile int umask = UNKNOWN;
+
+        static int get() {
+            int value = umask;
+            if (value == UNKNOWN) {
+                // concurrent first calls may detect the umask more than once, which yields the same value
+                value = detect();
+                umask = value;
+            }
+            return value;
+        }
+
+        private static int detect() {
+            try {
+                Set<PosixFilePermission> all = PosixFilePermissionsMapper.permissions(0777);
+                Path probe = Files.createTempFile("jarchivelib", ".umask", PosixFilePermissions.asFileAttribute(all));
+                try {
+                    return ~PosixFilePermissionsMapper.mode(Files.getPosixFilePermissions(probe))
+                        & PosixPermissionMapper.UNIX_PERMISSION_MASK;
+                } finally {
+                    Files.deleteIfExists(probe);
+                }
+            } catch (Exception e) {
+                // permissions are then always set after creating a file
+                return PosixPermissionMapper.UNIX_PERMISSION_MASK;
+            }
+        }
+    }
+
+    /**
+     * Writes into a file channel, and sets the given file mode when closed.
+     */
+    private static final class ChannelOutputStream extends FilterOutputStream {
+
+        private final FileChannel channel;
+        private final int mode;
+        private final Path path;
+        private boolean closed;
+
+        ChannelOutputStream(FileChannel channel, int mode, Path path) {
+            super(Channels.newOutputStream(channel));
+            this.channel = channel;
+            this.mode = mode;
+            this.path = path;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.close();
+
+            if (mode > 0) {
+                PosixPermissionMapper.setPermissions(mode, path);
+            }
         }
     }
 
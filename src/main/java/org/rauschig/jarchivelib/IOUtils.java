@@ -16,11 +16,13 @@
 package org.rauschig.jarchivelib;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * Utility class for I/O operations.
@@ -30,7 +32,7 @@ public final class IOUtils {
     /**
      * Default buffer size used for {@code copy} operations.
      */
-    private static final int DEFAULT_BUFFER_SIZE = 8024;
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
 
     private IOUtils() {
 
@@ -55,7 +57,7 @@ public final class IOUtils {
     }
 
     /**
-     * Copies the content of a InputStream into an OutputStream. Uses a default buffer size of 8024 bytes.
+     * Copies the content of a InputStream into an OutputStream. Uses a default buffer size of 64 KiB.
      * 
      * @param input the InputStream to copy
      * @param output the target Stream
@@ -67,7 +69,8 @@ public final class IOUtils {
     }
 
     /**
-     * Copies the entire content of the given InputStream into the given OutputStream.
+     * Copies the entire content of the given InputStream into the given OutputStream. The buffer is taken from the
+     * default {@link BufferPools#threadLocal()} pool.
      * 
      * @param input the InputStream to copy
      * @param output the target Stream
@@ -76,16 +79,120 @@ public final class IOUtils {
      * @throws IOException if an error occurs
      */
     public static long copy(final InputStream input, final OutputStream output, int buffersize) throws IOException {
-        final byte[] buffer = new byte[buffersize];
-        int n;
-        long count = 0;
-        while (-1 != (n = input.read(buffer))) {
-            output.write(buffer, 0, n);
+        return copy(input, output, buffersize, BufferPools.threadLocal());
+    }
+
+    /**
+     * Copies the entire content of the given InputStream into the given OutputStream, using a buffer taken from the
+     * given pool.
+     * 
+     * @param input the InputStream to copy
+     * @param output the target Stream
+     * @param buffersize the buffer size to use
+     * @param pool the pool to take the buffer from
+     * @return the amount of bytes written
+     * @throws IOException if an error occurs
+     */
+    public static long copy(final InputStream input, final OutputStream output, int buffersize, BufferPool pool)
+        throws IOException {
+        final byte[] buffer = pool.acquire(buffersize);
+        try {
+            int n;
+            long count = 0;
+            while (-1 != (n = input.read(buffer, 0, buffersize))) {
+                output.write(buffer, 0, n);
+                count += n;
+            }
+            return count;
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads from the given stream until the buffer is full or the end of the stream is reached.
+     * 
+     * @param input the stream to read from
+     * @param buffer the buffer to fill
+     * @return the amount of bytes read, which is less than the buffer length only at the end of the stream
+     * @throws IOException if an error occurs
+     */
+    static int readFully(InputStream input, byte[] buffer) throws IOException {
+        return readFully(input, buffer, 0, buffer.length);
+    }
+
+    /**
+     * Reads from the given stream until the given amount of bytes was read or the end of the stream is reached.
+     * 
+     * @param input the stream to read from
+     * @param buffer the buffer to read into
+     * @param offset the offset in the buffer
+     * @param length the amount of bytes to read
+     * @return the amount of bytes read, which is less than the length only at the end of the stream
+     * @throws IOException if an error occurs
+     */
+    static int readFully(InputStream input, byte[] buffer, int offset, int length) throws IOException {
+        int count = 0;
+        while (count < length) {
+            int n = input.read(buffer, offset + count, length - count);
+            if (n == -1) {
+                break;
+            }
             count += n;
         }
         return count;
     }
 
+    /**
+     * Skips the given amount of bytes of the stream. Unlike {@link InputStream#skip(long)}, this reads the data if the
+     * stream does not skip it.
+     * 
+     * @param input the stream to skip
+     * @param count the amount of bytes to skip
+     * @return the amount of bytes skipped, which is less than the count only at the end of the stream
+     * @throws IOException if an error occurs
+     */
+    static long skip(InputStream input, long count) throws IOException {
+        long remaining = count;
+        byte[] buffer = null;
+        while (remaining > 0) {
+            long n = input.skip(remaining);
+            if (n == 0) {
+                if (buffer == null) {
+                    buffer = new byte[(int) Math.min(remaining, 8192)];
+                }
+                n = input.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                if (n == -1) {
+                    break;
+                }
+            }
+            remaining -= n;
+        }
+        return count - remaining;
+    }
+
+    /**
+     * Transfers a range of the given source channel into the target channel. Between two file channels, the operating
+     * system may do this without copying the data into user space.
+     * 
+     * @param source the channel to read from
+     * @param position the position of the range in the source
+     * @param count the size of the range
+     * @param target the channel to write to
+     * @throws IOException if an error occurs, or the source ends before the range
+     */
+    public static void transfer(FileChannel source, long position, long count, FileChannel target)
+        throws IOException {
+        while (count > 0) {
+            long n = source.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of file at position " + position);
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
     /**
      * Computes the path name of a file node relative to a given root node.
      * <br>
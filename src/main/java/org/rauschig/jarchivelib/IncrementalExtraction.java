@@ -0,0 +1,232 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+
+/**
+ * Compares the entries of an extraction session with the files that already exist in the destination directory, as
+ * requested by {@link ExtractOptions#setSkipUnchanged(boolean)} and {@link ExtractOptions#setDeleteRemoved(boolean)}.
+ * <br>
+ * A file is unchanged if it has the size and modification time of its entry, and, if checksums are compared, the
+ * CRC32 that ZIP and 7z archives record for the entry. The data of unchanged entries is not extracted. Extracted
+ * files get the modification time of their entry in {@link #finish()}, s.t. they are recognized as unchanged by the
+ * next extraction. Files the archive does not contain are deleted in {@link #finish()} as well. Entries that are not
+ * extracted, e.g. because the filter of the extraction rejects them, are recorded with {@link #retain(ArchiveEntry)},
+ * s.t. their files are kept.
+ * <br>
+ * An IncrementalExtraction is used by the thread that reads the entries, and is not thread-safe.
+ */
+class IncrementalExtraction {
+
+    private final File destination;
+    private final Path root;
+    private final ExtractOptions options;
+    private final ExtractStatistics statistics;
+
+    /**
+     * Names of the entries of the archive, if files that are not in the archive are deleted.
+     */
+    private final Set<String> names;
+
+    private final List<File> extractedFiles = new ArrayList<>();
+    private final List<Long> extractedTimes = new ArrayList<>();
+
+    /**
+     * Creates an IncrementalExtraction for the given options, or returns null if the options extract all entries
+     * regardless of the existing files.
+     * 
+     * @param destination the directory to which the entries are extracted
+     * @param options the extraction options
+     * @return a new IncrementalExtraction, or null
+     */
+    static IncrementalExtraction of(File destination, ExtractOptions options) {
+        if (!options.isSkipUnchanged() && !options.isDeleteRemoved()) {
+            return null;
+        }
+        return new IncrementalExtraction(destination, options);
+    }
+
+    private IncrementalExtraction(File destination, ExtractOptions options) {
+        this.destination = destination;
+        this.root = destination.toPath().toAbsolutePath().normalize();
+        this.options = options;
+        this.statistics = CommonsArchiver.statisticsOf(options);
+        this.names = options.isDeleteRemoved() ? new HashSet<String>() : null;
+    }
+
+    /**
+     * Returns true if files that are not entries of the archive are deleted, which requires that every entry of the
+     * archive is either passed to {@link #skip(ArchiveEntry)} or to {@link #retain(ArchiveEntry)}.
+     * 
+     * @return true if removed files are deleted
+     */
+    boolean isDeletingRemoved() {
+        return names != null;
+    }
+
+    /**
+     * Records an entry of the archive that is not extracted, s.t. its file is not deleted as removed.
+     * 
+     * @param entry the entry that is not extracted
+     */
+    void retain(ArchiveEntry entry) {
+        if (names != null) {
+            names.add(root.resolve(entry.getName()).normalize().toString());
+        }
+    }
+
+    /**
+     * Decides whether the given entry needs to be extracted, and counts it as skipped, updated or created file.
+     * 
+     * @param entry the entry that is about to be extracted
+     * @return true if the file of the entry is unchanged and the entry need not be extracted
+     * @throws IOException if the checksum of the existing file could not be computed
+     */
+    boolean skip(ArchiveEntry entry) throws IOException {
+        retain(entry);
+        if (entry.isDirectory()) {
+            return false;
+        }
+
+        File file = new File(destination, entry.getName());
+        if (!file.isFile()) {
+            statistics.addCreatedFile();
+        } else if (options.isSkipUnchanged() && isUnchanged(entry, file)) {
+            statistics.addSkippedFile();
+            return true;
+        } else {
+            statistics.addUpdatedFile();
+        }
+
+        Date lastModified = ArchiveEntryInfo.of(entry).getLastModifiedDate();
+        if (options.isSkipUnchanged() && lastModified != null) {
+            extractedFiles.add(file);
+            extractedTimes.add(lastModified.getTime());
+        }
+        return false;
+    }
+
+    /**
+     * Applies the modification times of the extracted entries to their files, and deletes the files that are not in
+     * the archive. Has to be called once all files are written.
+     * 
+     * @throws IOException if a file could not be deleted
+     */
+    void finish() throws IOException {
+        for (int i = 0; i < extractedFiles.size(); i++) {
+            extractedFiles.get(i).setLastModified(extractedTimes.get(i));
+        }
+
+        if (names != null) {
+            deleteRemoved();
+        }
+    }
+
+    private boolean isUnchanged(ArchiveEntry entry, File file) throws IOException {
+        Date lastModified = ArchiveEntryInfo.of(entry).getLastModifiedDate();
+        if (entry.getSize() != file.length() || lastModified == null || lastModified.getTime() != file.lastModified()) {
+            return false;
+        }
+
+        if (options.isCompareChecksums()) {
+            long crc = crcOf(entry);
+            return crc == -1 || crc == crc32(file);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the CRC32 the archive records for the given entry, or -1 if it records none.
+     */
+    private static long crcOf(ArchiveEntry entry) {
+        if (entry instanceof ZipArchiveEntry) {
+            return ((ZipArchiveEntry) entry).getCrc();
+        } else if (entry instanceof SevenZArchiveEntry && ((SevenZArchiveEntry) entry).getHasCrc()) {
+            return ((SevenZArchiveEntry) entry).getCrcValue();
+        }
+        return -1;
+    }
+
+    private static long crc32(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+
+        InputStream in = new FileInputStream(file);
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Deletes the files in the destination directory that are not entries of the archive, along with the directories
+     * that are neither entries nor contain any. Symbolic links are deleted, but not followed.
+     */
+    private void deleteRemoved() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (!names.contains(file.toString())) {
+                    Files.delete(file);
+                    statistics.addDeletedFile();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                if (!directory.equals(root) && !names.contains(directory.toString()) && isEmpty(directory)) {
+                    Files.delete(directory);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            return !children.iterator().hasNext();
+        }
+    }
+}
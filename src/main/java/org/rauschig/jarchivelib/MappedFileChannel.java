@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only SeekableByteChannel over a memory-mapped file. Reads are served from the mappings, i.e. from the page
+ * cache, without a system call each.
+ * <br>
+ * A single mapping can not exceed 2 GiB, so the file is mapped in segments of 1 GiB. Reads that cross a segment
+ * boundary are split transparently. The mappings stay valid after the file channel they were created from is closed,
+ * and are released by the garbage collector once this channel is no longer referenced.
+ */
+class MappedFileChannel implements SeekableByteChannel {
+
+    /**
+     * Size of the segments the file is mapped in.
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    private final MappedByteBuffer[] segments;
+    private final long segmentSize;
+    private final long size;
+
+    private long position;
+    private boolean open = true;
+
+    private MappedFileChannel(MappedByteBuffer[] segments, long segmentSize, long size) {
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.size = size;
+    }
+
+    /**
+     * Maps the given file into memory.
+     * 
+     * @param file the file to map
+     * @return a channel reading from the mapped file
+     * @throws IOException if the file can not be mapped
+     */
+    static MappedFileChannel open(File file) throws IOException {
+        return open(file, SEGMENT_SIZE);
+    }
+
+    static MappedFileChannel open(File file, long segmentSize) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+
+            for (int i = 0; i < segments.length; i++) {
+                long offset = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(segmentSize, size - offset));
+            }
+
+            return new MappedFileChannel(segments, segmentSize, size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        assertOpen();
+        if (position >= size) {
+            return -1;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            MappedByteBuffer segment = segments[(int) (position / segmentSize)];
+            int offset = (int) (position % segmentSize);
+            int n = Math.min(dst.remaining(), segment.limit() - offset);
+
+            ByteBuffer slice = segment.duplicate();
+            slice.position(offset);
+            slice.limit(offset + n);
+            dst.put(slice);
+
+            position += n;
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        assertOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        assertOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must not be negative, was " + newPosition);
+        }
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        assertOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long newSize) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+    }
+
+    private void assertOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+/**
+ * A bzip2 CompressorInputStream that decompresses blocks in parallel.
+ * <br>
+ * A scanner thread reads the compressed input and searches it for the 48 bit magic numbers that start each block and
+ * the end of stream marker. Each block found this way is decoded speculatively on a pool of worker threads. Since the
+ * magic numbers can also occur by chance within compressed data, a block that fails to decode is merged with its
+ * successor and decoded again. The decoded blocks are read in order, and the combined CRC of each stream is verified.
+ * Like the bzip2 command line tool, all concatenated streams of the input are decompressed.
+ */
+class ParallelBZip2CompressorInputStream extends CompressorInputStream {
+
+    private static final long MAGIC_MASK = (1L << BZip2Blocks.MAGIC_BITS) - 1;
+
+    private static final int READ_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final BlockingQueue<Future<Segment>> segments;
+    private final Thread scanner;
+
+    private byte[] current = new byte[0];
+    private int position;
+
+    private int combinedCrc;
+    private boolean eof;
+    private boolean closed;
+
+    ParallelBZip2CompressorInputStream(InputStream in, CompressionOptions options) {
+        this(in, options.getThreads());
+    }
+
+    ParallelBZip2CompressorInputStream(InputStream in, int threads) {
+        this.in = in;
+        this.executor = ThreadPools.newFixedThreadPool(threads, "bunzip2");
+        this.segments = new ArrayBlockingQueue<>(threads * 2);
+        this.scanner = new Thread(new Scanner(), "jarchivelib-bunzip2-scanner");
+        this.scanner.setDaemon(true);
+        this.scanner.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return (n == -1) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        while (position == current.length) {
+            if (eof || !nextBlock()) {
+                eof = true;
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        count(n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // the scanner has to stop reading before the input is closed underneath it
+        scanner.interrupt();
+        try {
+            scanner.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        in.close();
+    }
+
+    /**
+     * Takes the next segment from the queue and makes its decoded data the current block.
+     *
+     * @return false if the end of the input was reached
+     */
+    private boolean nextBlock() throws IOException {
+        Segment segment = take();
+
+        while (true) {
+            switch (segment.type) {
+                case END:
+                    return false;
+                case STREAM_END:
+                    if (segment.crc != combinedCrc) {
+                        throw new IOException("BZip2 stream CRC error");
+                    }
+                    combinedCrc = 0;
+                    return true;
+                default:
+                    break;
+            }
+
+            if (segment.decoded != null) {
+                combinedCrc = BZip2Blocks.combineCrc(combinedCrc, segment.crc);
+                current = segment.decoded;
+                position = 0;
+                return true;
+            }
+
+            // a magic number within compressed data split a block; merge it with the next segment and retry
+            Segment next = take();
+            if (next.type != SegmentType.BLOCK) {
+                throw new IOException("Corrupt bzip2 block", segment.error);
+            }
+            segment = new DecodeTask(segment.merge(next)).call();
+        }
+    }
+
+    private Segment take() throws IOException {
+        try {
+            return ThreadPools.await(segments.take());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bzip2 block");
+        }
+    }
+
+    private enum SegmentType {
+        BLOCK, STREAM_END, END
+    }
+
+    /**
+     * A section of the compressed input, and the result of decoding it.
+     */
+    private static class Segment {
+        final SegmentType type;
+        final byte[] bits;
+        final long bitLength;
+        final int crc;
+
+        byte[] decoded;
+        IOException error;
+
+        Segment(SegmentType type, byte[] bits, long bitLength, int crc) {
+            this.type = type;
+            this.bits = bits;
+            this.bitLength = bitLength;
+            this.crc = crc;
+        }
+
+        Segment merge(Segment next) throws IOException {
+            ByteArrayOutputStream merged = new ByteArrayOutputStream(bits.length + next.bits.length);
+            BitWriter writer = new BitWriter(merged);
+            writer.writeBits(bits, 0, bitLength);
+            writer.writeBits(next.bits, 0, next.bitLength);
+            writer.flush();
+            return new Segment(SegmentType.BLOCK, merged.toByteArray(), bitLength + next.bitLength, crc);
+        }
+    }
+
+    /**
+     * Decodes a block segment. Decoding errors are recorded in the segment rather than thrown, s.t. the reader can
+     * retry.
+     */
+    private static class DecodeTask implements Callable<Segment> {
+        private final Segment segment;
+
+        DecodeTask(Segment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public Segment call() {
+            try {
+                segment.decoded = BZip2Blocks.decode(segment.bits, segment.bitLength);
+            } catch (IOException e) {
+                segment.error = e;
+            } catch (RuntimeException e) {
+                // corrupt data may also surface as e.g. an ArrayIndexOutOfBoundsException in the decoder
+                segment.error = new IOException(e);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Reads the compressed input, locates blocks and stream ends, and submits them in order.
+     */
+    private class Scanner implements Runnable {
+
+        /**
+         * Compressed data, where data[0] is the byte at offset {@code base} of the input.
+         */
+        private byte[] data = new byte[READ_SIZE * 2];
+        private int length;
+        private long base;
+
+        /**
+         * Bit offset of the block currently being scanned, or -1.
+         */
+        private long blockStart = -1;
+
+        /**
+         * Bit offset of the combined CRC following an end of stream marker, or -1.
+         */
+        private long streamCrcStart = -1;
+
+        /**
+         * Bit offset before which no magic number can start.
+         */
+        private long scanFrom;
+
+        @Override
+        public void run() {
+            try {
+                scan();
+                put(completed(new Segment(SegmentType.END, null, 0, 0)));
+            } catch (InterruptedException e) {
+                // closed
+            } catch (IOException e) {
+                try {
+                    put(failed(e));
+                } catch (InterruptedException interrupted) {
+                    // closed
+                }
+            }
+        }
+
+        private void scan() throws IOException, InterruptedException {
+            if (!fill(4) || !BZip2Blocks.isHeader(data, 0)) {
+                throw new IOException("Stream is not in the BZip2 format");
+            }
+            scanFrom = BZip2Blocks.HEADER_BITS;
+
+            long register = 0;
+            long scanned = 0; // absolute index of the next byte to shift into the register
+
+            while (true) {
+                if (scanned - base >= length) {
+                    compact();
+                    if (!fill(length + 1)) {
+                        break;
+                    }
+                }
+
+                register = (register << 8) | (data[(int) (scanned - base)] & 0xff);
+                scanned++;
+
+                if (streamCrcStart >= 0 && scanned * 8 >= streamCrcStart + BZip2Blocks.CRC_BITS) {
+                    int crc = (int) BitWriter.readBits(data, streamCrcStart - base * 8, BZip2Blocks.CRC_BITS);
+                    put(completed(new Segment(SegmentType.STREAM_END, null, 0, crc)));
+
+                    // the next stream (if any) starts at the next byte boundary with its header
+                    scanFrom = (streamCrcStart + BZip2Blocks.CRC_BITS + 7) / 8 * 8 + BZip2Blocks.HEADER_BITS;
+                    streamCrcStart = -1;
+                }
+
+                if (scanned < 7) {
+                    continue;
+                }
+
+                // test all 48 bit windows ending within the byte just shifted in, in order of their position
+                for (int shift = 7; shift >= 0; shift--) {
+                    long candidate = scanned * 8 - BZip2Blocks.MAGIC_BITS - shift;
+                    if (candidate < scanFrom) {
+                        continue;
+                    }
+
+                    long magic = (register >>> shift) & MAGIC_MASK;
+                    if (magic == BZip2Blocks.BLOCK_MAGIC) {
+                        endBlock(candidate);
+                        blockStart = candidate;
+                        scanFrom = candidate + BZip2Blocks.MAGIC_BITS;
+                    } else if (magic == BZip2Blocks.EOS_MAGIC) {
+                        endBlock(candidate);
+                        blockStart = -1;
+                        streamCrcStart = candidate + BZip2Blocks.MAGIC_BITS;
+                        scanFrom = streamCrcStart + BZip2Blocks.CRC_BITS;
+                    }
+                }
+            }
+
+            if (blockStart >= 0 || streamCrcStart >= 0) {
+                throw new IOException("Unexpected end of bzip2 stream");
+            }
+        }
+
+        private void endBlock(long end) throws IOException, InterruptedException {
+            if (blockStart < 0) {
+                return;
+            }
+
+            long bitLength = end - blockStart;
+            byte[] bits = BZip2Blocks.copyBits(data, blockStart - base * 8, bitLength);
+            Segment segment = new Segment(SegmentType.BLOCK, bits, bitLength, BZip2Blocks.blockCrc(bits));
+
+            FutureTask<Segment> task = new FutureTask<>(new DecodeTask(segment));
+            put(task);
+            executor.execute(task);
+        }
+
+        /**
+         * Drops the data that is no longer needed by the current block or stream CRC.
+         */
+        private void compact() {
+            long keepFrom = base + length;
+            if (blockStart >= 0) {
+                keepFrom = Math.min(keepFrom, blockStart / 8);
+            }
+            if (streamCrcStart >= 0) {
+                keepFrom = Math.min(keepFrom, streamCrcStart / 8);
+            }
+            // keep the bytes of magic numbers that may still be completed
+            keepFrom = Math.min(keepFrom, base + length - 8);
+            keepFrom = Math.max(keepFrom, base);
+
+            int drop = (int) (keepFrom - base);
+            if (drop > 0) {
+                System.arraycopy(data, drop, data, 0, length - drop);
+                length -= drop;
+                base += drop;
+            }
+        }
+
+        /**
+         * Reads input until at least the given amount of bytes are buffered.
+         *
+         * @return false if the end of the input was reached before
+         */
+        private boolean fill(int required) throws IOException {
+            while (length < required) {
+                if (data.length - length < READ_SIZE) {
+                    data = Arrays.copyOf(data, Math.max(data.length * 2, length + READ_SIZE));
+                }
+                int n = in.read(data, length, READ_SIZE);
+                if (n == -1) {
+                    return false;
+                }
+                length += n;
+            }
+            return true;
+        }
+
+        private void put(Future<Segment> future) throws InterruptedException {
+            segments.put(future);
+        }
+
+        /**
+         * Returns an already completed future of a marker segment, which carries no data to decode.
+         */
+        private Future<Segment> completed(final Segment segment) {
+            FutureTask<Segment> task = new FutureTask<>(new Callable<Segment>() {
+                @Override
+                public Segment call() {
+                    return segment;
+                }
+            });
+            task.run();
+            return task;
+        }
+
+        private Future<Segment> failed(final IOException e) {
+            FutureTask<Segment> task = new FutureTask<>(new Callable<Segment>() {
+                @Override
+                public Segment call() throws IOException {
+                    throw e;
+                }
+            });
+            task.run();
+            return task;
+        }
+    }
+}
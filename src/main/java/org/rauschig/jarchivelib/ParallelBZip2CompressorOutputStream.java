@@ -0,0 +1,233 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.CompressorOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * A bzip2 CompressorOutputStream that compresses in parallel.
+ * <br>
+ * The input is split into chunks that are small enough to be encoded as exactly one bzip2 block. Each chunk is encoded
+ * on a worker thread as a complete bzip2 stream, from which the block is cut out at bit level. The blocks are then
+ * written in order into a single bzip2 stream, whose combined CRC is computed from the block CRCs. The output is a
+ * regular single-stream bzip2 file, as opposed to the concatenated streams written by tools like pbzip2.
+ */
+class ParallelBZip2CompressorOutputStream extends CompressorOutputStream {
+
+    private static final int BASE_BLOCK_SIZE = 100000;
+
+    private final OutputStream out;
+    private final BitWriter writer;
+    private final int blockSize100k;
+    private final int chunkSize;
+    private final int maxPendingBlocks;
+
+    private final ExecutorService executor;
+    private final Deque<Future<Block>> pending = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count;
+
+    private int combinedCrc;
+
+    private boolean headerWritten;
+    private boolean finished;
+    private boolean closed;
+
+    ParallelBZip2CompressorOutputStream(OutputStream out, CompressionOptions options) {
+        this(out, options.getBZip2BlockSize(), options.getBlockSize(), options.getThreads());
+    }
+
+    ParallelBZip2CompressorOutputStream(OutputStream out, int blockSize100k, int chunkSize, int threads) {
+        // the run-length encoding applied before the block sorting inflates input by at most 5/4, and the encoder
+        // closes a block 20 bytes before it is full
+        int maxChunkSize = (blockSize100k * BASE_BLOCK_SIZE - 20) * 4 / 5 - 5;
+
+        this.out = out;
+        this.writer = new BitWriter(out);
+        this.blockSize100k = blockSize100k;
+        this.chunkSize = (chunkSize > 0) ? Math.min(chunkSize, maxChunkSize) : maxChunkSize;
+        this.maxPendingBlocks = threads * 2;
+        this.executor = ThreadPools.newFixedThreadPool(threads, "bzip2");
+        this.buffer = new byte[this.chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed || finished) {
+            throw new IOException("Stream has already been finished");
+        }
+
+        while (len > 0) {
+            int n = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+
+            if (count == chunkSize) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Finishes writing compressed data to the underlying stream without closing it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        try {
+            if (count > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            if (!headerWritten) {
+                writeHeader();
+            }
+            writer.writeBits(BZip2Blocks.MAGIC_BITS, BZip2Blocks.EOS_MAGIC);
+            writer.writeBits(BZip2Blocks.CRC_BITS, combinedCrc & 0xffffffffL);
+            writer.flush();
+            finished = true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        if (pending.size() >= maxPendingBlocks) {
+            writeNextBlock();
+        }
+
+        pending.add(executor.submit(new EncodeTask(buffer, count, blockSize100k)));
+
+        buffer = new byte[chunkSize];
+        count = 0;
+    }
+
+    private void writeNextBlock() throws IOException {
+        Block block = ThreadPools.await(pending.poll());
+
+        if (!headerWritten) {
+            writeHeader();
+        }
+
+        writer.writeBits(block.stream, BZip2Blocks.HEADER_BITS, block.bitLength);
+        combinedCrc = BZip2Blocks.combineCrc(combinedCrc, block.crc);
+    }
+
+    private void writeHeader() throws IOException {
+        writer.writeBits(BZip2Blocks.HEADER_BITS, BZip2Blocks.header(blockSize100k));
+        headerWritten = true;
+    }
+
+    /**
+     * An encoded block within a single-block bzip2 stream.
+     */
+    private static class Block {
+        final byte[] stream;
+        final long bitLength;
+        final int crc;
+
+        Block(byte[] stream, long bitLength, int crc) {
+            this.stream = stream;
+            this.bitLength = bitLength;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * Encodes a chunk of data as a single-block bzip2 stream, and locates the block within it.
+     */
+    private static class EncodeTask implements Callable<Block> {
+        private final byte[] data;
+        private final int length;
+        private final int blockSize100k;
+
+        EncodeTask(byte[] data, int length, int blockSize100k) {
+            this.data = data;
+            this.length = length;
+            this.blockSize100k = blockSize100k;
+        }
+
+        @Override
+        public Block call() throws IOException {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 3 + 64);
+            BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(encoded, blockSize100k);
+            bzip2.write(data, 0, length);
+            bzip2.close();
+
+            byte[] stream = encoded.toByteArray();
+
+            // the stream ends with the end of stream marker, the combined CRC and up to 7 bits of padding
+            long totalBits = stream.length * 8L;
+            for (int padding = 0; padding < 8; padding++) {
+                long eos = totalBits - padding - BZip2Blocks.MAGIC_BITS - BZip2Blocks.CRC_BITS;
+
+                if (BitWriter.readBits(stream, eos, BZip2Blocks.MAGIC_BITS) == BZip2Blocks.EOS_MAGIC) {
+                    int blockCrc = (int) BitWriter.readBits(stream,
+                            BZip2Blocks.HEADER_BITS + BZip2Blocks.MAGIC_BITS, BZip2Blocks.CRC_BITS);
+                    int streamCrc = (int) BitWriter.readBits(stream, eos + BZip2Blocks.MAGIC_BITS,
+                            BZip2Blocks.CRC_BITS);
+
+                    // the combined CRC of a single block stream equals the block CRC
+                    if (streamCrc != blockCrc) {
+                        throw new IOException("Expected a single bzip2 block, but encoder produced several");
+                    }
+
+                    return new Block(stream, eos - BZip2Blocks.HEADER_BITS, blockCrc);
+                }
+            }
+
+            throw new IOException("Could not locate end of bzip2 stream");
+        }
+    }
+}
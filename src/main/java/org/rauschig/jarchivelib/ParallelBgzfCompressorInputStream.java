@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+/**
+ * A CompressorInputStream for BGZF files (see {@link BgzfBlocks}) that decompresses blocks in parallel.
+ * <br>
+ * The size in the header of each block tells where the next block starts, so the reading thread splits the input into
+ * blocks without decompressing them, and hands them to a pool of worker threads. The decompressed blocks are read in
+ * order, with at most twice as many blocks in flight as there are workers. The checksum of each block is verified by
+ * the worker that decompressed it.
+ */
+class ParallelBgzfCompressorInputStream extends CompressorInputStream {
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final int maxPendingBlocks;
+
+    private byte[] current = new byte[0];
+    private int position;
+
+    private boolean endOfInput;
+    private boolean closed;
+
+    ParallelBgzfCompressorInputStream(InputStream in, CompressionOptions options) {
+        this(in, options.getThreads());
+    }
+
+    ParallelBgzfCompressorInputStream(InputStream in, int threads) {
+        this.in = in;
+        this.executor = ThreadPools.newFixedThreadPool(threads, "bgzf-inflate");
+        this.maxPendingBlocks = threads * 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return (n == -1) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        count(n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        in.close();
+    }
+
+    /**
+     * Makes the next decompressed block the current one, after submitting the following blocks of the input.
+     *
+     * @return false if the end of the input was reached
+     */
+    private boolean nextBlock() throws IOException {
+        while (!endOfInput && pending.size() < maxPendingBlocks) {
+            byte[] block = readBlock();
+            if (block == null) {
+                endOfInput = true;
+            } else {
+                pending.add(executor.submit(new InflateTask(block)));
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return false;
+        }
+
+        current = ThreadPools.await(pending.poll());
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Reads the next complete block from the input.
+     *
+     * @return the block, or null at the end of the input
+     */
+    private byte[] readBlock() throws IOException {
+        byte[] header = new byte[BgzfBlocks.HEADER_SIZE];
+        int n = IOUtils.readFully(in, header);
+        if (n == 0) {
+            return null;
+        } else if (n < header.length) {
+            throw new IOException("Truncated BGZF block header");
+        }
+
+        int blockSize = BgzfBlocks.blockSize(header, 0);
+        if (blockSize < BgzfBlocks.HEADER_SIZE + BgzfBlocks.TRAILER_SIZE) {
+            throw new IOException("Input is not in the BGZF format");
+        }
+
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, header.length);
+        n = IOUtils.readFully(in, block, header.length, blockSize - header.length);
+        if (n < blockSize - header.length) {
+            throw new IOException("Truncated BGZF block");
+        }
+        return block;
+    }
+
+    /**
+     * Decompresses a single block.
+     */
+    private static class InflateTask implements Callable<byte[]> {
+        private final byte[] block;
+
+        InflateTask(byte[] block) {
+            this.block = block;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            return BgzfBlocks.inflate(block, block.length);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+/**
+ * A gzip CompressorInputStream that decompresses a single gzip member in parallel, in the spirit of rapidgzip.
+ * <br>
+ * The compressed data is read in chunks (of 1 MiB by default), each of which is decoded speculatively on a pool of
+ * worker threads by a {@link ChunkInflater}: starting at the first block boundary it finds, with markers for the
+ * unknown data preceding the chunk. The chunks are put together in order, where the markers of each chunk are
+ * resolved with the last 32 KiB of output of the chunks before. A chunk whose start does not match the end of the
+ * preceding chunk, because the block boundary it found was a false positive, is decoded again from the actual end on
+ * the reading thread. The CRC32 and size in the gzip trailer are verified.
+ * <br>
+ * The decoded output of the chunks in flight is bounded by {@link CompressionOptions#getMemoryLimit()}: the limit
+ * determines how many chunks are decoded ahead, and how much output a chunk decodes before it leaves the rest of its
+ * data to the reading thread.
+ * <br>
+ * The pure Java decoding of a chunk is slower than {@link java.util.zip.Inflater}, so this stream only pays off with
+ * several threads. Like the gzip stream of the {@link org.apache.commons.compress.compressors.CompressorStreamFactory},
+ * it decompresses only the first member of the input.
+ */
+class ParallelGzipCompressorInputStream extends CompressorInputStream {
+
+    /**
+     * Amount of compressed data per chunk used if none is specified.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Bounds of the amount of output after which a chunk stops decoding at the next block boundary, s.t. highly
+     * compressed data does not need excessive memory. The rest of the chunk is decoded on the reading thread.
+     */
+    private static final int MIN_OUTPUT_LIMIT = 1024 * 1024;
+    private static final int MAX_OUTPUT_LIMIT = 32 * 1024 * 1024;
+
+    /**
+     * Bytes of memory per byte of speculatively decoded output, which is held as characters to mark unknown data.
+     */
+    private static final int BYTES_PER_OUTPUT = 2;
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    private final InputStream in;
+    private final int chunkSize;
+    private final int maxPendingChunks;
+    private final int outputLimit;
+    private final ExecutorService executor;
+
+    /**
+     * The compressed chunks that have been read, where those before the current chunk are dropped.
+     */
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final Deque<Future<ChunkInflater.Chunk>> pending = new ArrayDeque<>();
+    private int submitted;
+    private int taken;
+    private boolean endOfInput;
+
+    /**
+     * Bit position of the next block in the deflate data.
+     */
+    private long position;
+    private byte[] window = new byte[0];
+    private boolean lastBlock;
+
+    private final CRC32 crc = new CRC32();
+    private long size;
+
+    private byte[] current = new byte[0];
+    private int currentPosition;
+    private int currentLimit;
+    private byte[] next;
+    private int nextOffset;
+    private int nextLength;
+
+    private boolean started;
+    private boolean eof;
+    private boolean closed;
+
+    ParallelGzipCompressorInputStream(InputStream in, CompressionOptions options) {
+        this(in, options.getThreads(), DEFAULT_CHUNK_SIZE, options.getMemoryLimit());
+    }
+
+    ParallelGzipCompressorInputStream(InputStream in, int threads, int chunkSize) {
+        this(in, threads, chunkSize, CompressionOptions.DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Creates a stream that keeps the decoded output of the chunks in flight (and of the chunk decoded on the reading
+     * thread) within the given memory limit, by limiting the amount of chunks in flight and the output of each chunk.
+     * A chunk always decodes at least 1 MiB of output, and at least one chunk is in flight.
+     */
+    ParallelGzipCompressorInputStream(InputStream in, int threads, int chunkSize, long memoryLimit) {
+        long minChunkMemory = (long) BYTES_PER_OUTPUT * MIN_OUTPUT_LIMIT;
+        this.in = in;
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = (int) Math.max(1, Math.min(threads * 2L, memoryLimit / minChunkMemory - 1));
+        this.outputLimit = (int) Math.max(MIN_OUTPUT_LIMIT,
+                Math.min(MAX_OUTPUT_LIMIT, memoryLimit / BYTES_PER_OUTPUT / (maxPendingChunks + 1)));
+        this.executor = ThreadPools.newFixedThreadPool(threads, "gunzip");
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return (n == -1) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        while (currentPosition == currentLimit) {
+            if (next != null) {
+                current = next;
+                currentPosition = nextOffset;
+                currentLimit = nextOffset + nextLength;
+                next = null;
+            } else if (eof) {
+                return -1;
+            } else {
+                advance();
+            }
+        }
+
+        int n = Math.min(len, currentLimit - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, n);
+        currentPosition += n;
+        crc.update(b, off, n);
+        size += n;
+        count(n);
+        return n;
+    }
+
+    /**
+     * Returns the amount of memory the decoded output of the chunks in flight may take up at most.
+     * 
+     * @return the bound in bytes
+     */
+    long getMaxBufferedSize() {
+        return (long) BYTES_PER_OUTPUT * outputLimit * (maxPendingChunks + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+        in.close();
+    }
+
+    /**
+     * Decodes the next part of the deflate data, which is either the speculatively decoded chunk the current position
+     * lies in, or the data from the current position to the end of that chunk.
+     */
+    private void advance() throws IOException {
+        if (!started) {
+            readHeader();
+            started = true;
+        }
+        if (lastBlock) {
+            executor.shutdownNow();
+            readTrailer();
+            eof = true;
+            return;
+        }
+
+        // chunks the position has skipped over, as a block extended beyond them, are of no use anymore
+        int index = chunkOf(position);
+        while (taken < index && !pending.isEmpty()) {
+            pending.poll().cancel(true);
+            taken++;
+        }
+        if (taken < index) {
+            taken = index;
+            submitted = index;
+        }
+        dropChunksBefore(index);
+        submit();
+
+        ChunkInflater.Chunk chunk = null;
+        if (taken == index) {
+            chunk = ThreadPools.await(pending.poll());
+            taken++;
+            if (chunk != null && !chunk.startsAt(position)) {
+                chunk = null;
+            }
+        }
+        if (chunk == null) {
+            chunk = inflate(index);
+        }
+
+        byte[] resolved = chunk.resolve(window);
+        window = chunk.nextWindow(window, resolved);
+        position = chunk.endBit;
+        lastBlock = chunk.last;
+
+        current = resolved;
+        currentPosition = 0;
+        currentLimit = resolved.length;
+        if (chunk.getBytesLength() > 0) {
+            next = chunk.getBytes();
+            nextOffset = chunk.getBytesOffset();
+            nextLength = chunk.getBytesLength();
+        }
+    }
+
+    /**
+     * Decodes from the current position with the known window up to the end of the given chunk, on the reading
+     * thread.
+     */
+    private ChunkInflater.Chunk inflate(int index) throws IOException {
+        long base = (long) index * chunkSize * 8;
+        long endBit = (long) chunkSize * 8;
+
+        // a block may span many chunks, so the amount of chunks is doubled until the first block fits
+        for (int count = 2;; count *= 2) {
+            load(index + count - 1);
+            byte[] data = concat(index, count);
+            try {
+                return ChunkInflater.inflate(data, data.length, base, position - base, window, endBit, outputLimit);
+            } catch (EOFException e) {
+                if (endOfInput && index + count >= chunks.size()) {
+                    throw new EOFException("Unexpected end of gzip stream");
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits the speculative decoding of the chunks that follow, as far as the limit of pending chunks allows.
+     */
+    private void submit() throws IOException {
+        while (pending.size() < maxPendingChunks && load(submitted)) {
+            int index = submitted++;
+            load(index + 1);
+            pending.add(executor.submit(new InflateTask(index, concat(index, 2))));
+        }
+    }
+
+    /**
+     * Makes sure the chunk with the given index has been read.
+     *
+     * @return false if the input ends before
+     */
+    private boolean load(int index) throws IOException {
+        while (chunks.size() <= index && !endOfInput) {
+            byte[] chunk = new byte[chunkSize];
+            int n = IOUtils.readFully(in, chunk);
+            if (n < chunkSize) {
+                endOfInput = true;
+                if (n == 0) {
+                    break;
+                }
+                chunk = Arrays.copyOf(chunk, n);
+            }
+            chunks.add(chunk);
+        }
+        return index < chunks.size();
+    }
+
+    private void dropChunksBefore(int index) {
+        for (int i = Math.min(index, chunks.size()) - 1; i >= 0 && chunks.get(i) != null; i--) {
+            chunks.set(i, null);
+        }
+    }
+
+    /**
+     * Concatenates the given amount of chunks from the given index on, as far as they have been read.
+     */
+    private byte[] concat(int index, int count) {
+        int end = Math.min(chunks.size(), index + count);
+        int length = 0;
+        for (int i = index; i < end; i++) {
+            length += chunks.get(i).length;
+        }
+
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (int i = index; i < end; i++) {
+            byte[] chunk = chunks.get(i);
+            System.arraycopy(chunk, 0, data, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return data;
+    }
+
+    private int chunkOf(long bitPosition) {
+        return (int) ((bitPosition >>> 3) / chunkSize);
+    }
+
+    /**
+     * Reads the gzip header from the input, s.t. the chunks start with the deflate data.
+     */
+    private void readHeader() throws IOException {
+        if (readByte() != 0x1F || readByte() != 0x8B) {
+            throw new IOException("Input is not in the .gz format");
+        }
+        if (readByte() != 8) {
+            throw new IOException("Unsupported compression method");
+        }
+
+        int flags = readByte();
+        skip(6); // modification time, extra flags and operating system
+
+        if ((flags & FEXTRA) != 0) {
+            skip(readByte() | (readByte() << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+    }
+
+    private void readTrailer() throws IOException {
+        long offset = (position + 7) >>> 3;
+        long expectedCrc = 0;
+        long expectedSize = 0;
+        for (int i = 0; i < 4; i++) {
+            expectedCrc |= (long) trailerByte(offset + i) << (8 * i);
+            expectedSize |= (long) trailerByte(offset + 4 + i) << (8 * i);
+        }
+
+        if (expectedCrc != crc.getValue()) {
+            throw new IOException("Gzip-compressed data is corrupt (CRC32 error)");
+        }
+        if (expectedSize != (size & 0xFFFFFFFFL)) {
+            throw new IOException("Gzip-compressed data is corrupt (uncompressed size mismatch)");
+        }
+    }
+
+    private int trailerByte(long offset) throws IOException {
+        int index = (int) (offset / chunkSize);
+        if (!load(index) || offset % chunkSize >= chunks.get(index).length) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+        return chunks.get(index)[(int) (offset % chunkSize)] & 0xFF;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of gzip header");
+        }
+        return b;
+    }
+
+    private void skip(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte();
+        }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (readByte() != 0) {
+            // skip
+        }
+    }
+
+    /**
+     * Decodes a chunk: the first one from its start, all others speculatively.
+     */
+    private class InflateTask implements Callable<ChunkInflater.Chunk> {
+        private final int index;
+        private final byte[] data;
+
+        InflateTask(int index, byte[] data) {
+            this.index = index;
+            this.data = data;
+        }
+
+        @Override
+        public ChunkInflater.Chunk call() throws IOException {
+            long base = (long) index * chunkSize * 8;
+            long endBit = (long) chunkSize * 8;
+
+            if (index == 0) {
+                try {
+                    return ChunkInflater.inflate(data, data.length, base, 0, new byte[0], endBit, outputLimit);
+                } catch (IOException e) {
+                    // reported when the reading thread decodes the chunk again
+                    return null;
+                }
+            }
+            return ChunkInflater.inflateSpeculatively(data, data.length, base, 0, endBit, endBit, outputLimit);
+        }
+    }
+}
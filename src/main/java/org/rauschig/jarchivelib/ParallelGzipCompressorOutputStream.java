@@ -0,0 +1,310 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.compressors.CompressorOutputStream;
+
+/**
+ * A gzip CompressorOutputStream that compresses in parallel, in the spirit of pigz.
+ * <br>
+ * The input is split into blocks (of 128 KiB by default) that are deflated independently on a pool of worker
+ * threads. Each block is primed with the last 32 KiB of the preceding input as dictionary, so the compression ratio
+ * stays close to the one of a single deflate stream. All but the last block are terminated with a
+ * sync flush, which aligns them to a byte boundary, s.t. the blocks can be concatenated into a single deflate stream.
+ * The CRC32 of each block is computed by the workers as well, and combined into the checksum of the gzip trailer.
+ */
+class ParallelGzipCompressorOutputStream extends CompressorOutputStream {
+
+    /**
+     * Size of the deflate window, and thereby the maximum useful dictionary size.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Block size used if none is specified.
+     */
+    private static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+
+    private final ExecutorService executor;
+    private final Deque<Future<Block>> pending = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count;
+    private byte[] dictionary = EMPTY;
+
+    private long crc;
+    private long size;
+
+    private boolean headerWritten;
+    private boolean finished;
+    private boolean closed;
+
+    ParallelGzipCompressorOutputStream(OutputStream out, CompressionOptions options) {
+        this(out, options.getLevel(), options.getBlockSize(), options.getThreads());
+    }
+
+    ParallelGzipCompressorOutputStream(OutputStream out, int level, int blockSize, int threads) {
+        this.out = out;
+        this.level = level;
+        this.blockSize = (blockSize > 0) ? blockSize : DEFAULT_BLOCK_SIZE;
+        this.maxPendingBlocks = threads * 2;
+        this.executor = ThreadPools.newFixedThreadPool(threads, "gzip");
+        this.buffer = new byte[this.blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        assertOpen();
+
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+
+            if (count == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Compresses the buffered data as a non-final block, and writes all pending blocks to the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        assertOpen();
+
+        if (count > 0) {
+            submit(false);
+        }
+        while (!pending.isEmpty()) {
+            writeNextBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Finishes writing compressed data to the underlying stream without closing it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        assertOpen();
+
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer();
+            finished = true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        if (pending.size() >= maxPendingBlocks) {
+            writeNextBlock();
+        }
+
+        byte[] data = buffer;
+        int length = count;
+
+        pending.add(executor.submit(new DeflateTask(data, length, dictionary, last, level)));
+
+        dictionary = nextDictionary(dictionary, data, length);
+        buffer = new byte[blockSize];
+        count = 0;
+    }
+
+    private void writeNextBlock() throws IOException {
+        Block block = ThreadPools.await(pending.poll());
+
+        if (!headerWritten) {
+            writeHeader();
+        }
+
+        out.write(block.compressed, 0, block.compressed.length);
+        crc = Checksums.crc32Combine(crc, block.crc, block.length);
+        size += block.length;
+    }
+
+    private void writeHeader() throws IOException {
+        int extraFlags = 0;
+        if (level == Deflater.BEST_COMPRESSION) {
+            extraFlags = 2;
+        } else if (level == Deflater.BEST_SPEED) {
+            extraFlags = 4;
+        }
+
+        out.write(new byte[]{
+            0x1f, (byte) 0x8b, // magic
+            Deflater.DEFLATED, // compression method
+            0, // flags
+            0, 0, 0, 0, // modification time
+            (byte) extraFlags,
+            (byte) 255 // unknown operating system
+        });
+        headerWritten = true;
+    }
+
+    private void writeTrailer() throws IOException {
+        writeIntLE(crc);
+        writeIntLE(size);
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+
+    private void assertOpen() throws IOException {
+        if (closed || finished) {
+            throw new IOException("Stream has already been finished");
+        }
+    }
+
+    /**
+     * Computes the dictionary for the block following the given data, which are the last 32 KiB of input preceding
+     * that block.
+     */
+    private static byte[] nextDictionary(byte[] dictionary, byte[] data, int length) {
+        if (length >= DICTIONARY_SIZE) {
+            return Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+        }
+
+        int keep = Math.min(dictionary.length, DICTIONARY_SIZE - length);
+        byte[] next = new byte[keep + length];
+        System.arraycopy(dictionary, dictionary.length - keep, next, 0, keep);
+        System.arraycopy(data, 0, next, keep, length);
+        return next;
+    }
+
+    /**
+     * The result of a {@link DeflateTask}.
+     */
+    private static class Block {
+        final byte[] compressed;
+        final long crc;
+        final int length;
+
+        Block(byte[] compressed, long crc, int length) {
+            this.compressed = compressed;
+            this.crc = crc;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Deflates a single block of data into a raw deflate segment.
+     */
+    private static class DeflateTask implements Callable<Block> {
+        private final byte[] data;
+        private final int length;
+        private final byte[] dictionary;
+        private final boolean last;
+        private final int level;
+
+        DeflateTask(byte[] data, int length, byte[] dictionary, boolean last, int level) {
+            this.data = data;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.last = last;
+            this.level = level;
+        }
+
+        @Override
+        public Block call() {
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (dictionary.length > 0) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(data, 0, length);
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] chunk = new byte[Math.max(512, Math.min(length, 64 * 1024))];
+                int n;
+
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        n = deflater.deflate(chunk, 0, chunk.length);
+                        compressed.write(chunk, 0, n);
+                    }
+                } else {
+                    do {
+                        n = deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                        compressed.write(chunk, 0, n);
+                    } while (n == chunk.length || !deflater.needsInput());
+                }
+
+                return new Block(compressed.toByteArray(), crc.getValue(), length);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.CompressorInputStream;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+/**
+ * An XZ CompressorInputStream that decompresses the blocks of a multi-block .xz file in parallel.
+ * <br>
+ * The index at the end of an .xz file records the size of every block, so {@link SeekableXZInputStream} can start
+ * decoding at any block. Each block is decoded on a pool of worker threads by its own SeekableXZInputStream, which
+ * verifies the check of the block. The decoded blocks are read in order, with at most twice as many blocks in flight
+ * as there are workers, and at most {@link #MAX_BUFFERED_SIZE} bytes unless a single block is larger.
+ * <br>
+ * A file with a single block can not be decoded in parallel, so {@link #open(File, CompressionOptions)} returns null
+ * for it and the file is streamed as before.
+ */
+class ParallelXZCompressorInputStream extends CompressorInputStream {
+
+    /**
+     * Amount of decoded data that is held by the blocks in flight, s.t. files with large blocks (e.g. from
+     * {@code xz -9 -T0}) do not exhaust the memory.
+     */
+    static final long MAX_BUFFERED_SIZE = 256L * 1024 * 1024;
+
+    private final File file;
+    private final long[] blockSizes;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final int maxPendingBlocks;
+
+    /**
+     * Decoders that are not used by a worker, where each worker takes one or opens a new one.
+     */
+    private final Deque<SeekableXZInputStream> decoders = new ArrayDeque<>();
+
+    private int nextBlock;
+    private long pendingSize;
+
+    private byte[] current = new byte[0];
+    private int position;
+
+    private boolean closed;
+
+    private ParallelXZCompressorInputStream(File file, SeekableXZInputStream index, int threads) {
+        this.file = file;
+        this.blockSizes = new long[index.getBlockCount()];
+        for (int i = 0; i < blockSizes.length; i++) {
+            blockSizes[i] = index.getBlockSize(i);
+        }
+        this.executor = ThreadPools.newFixedThreadPool(threads, "unxz");
+        this.maxPendingBlocks = threads * 2;
+        // the decoder that read the index is used by the first worker
+        this.decoders.add(index);
+    }
+
+    /**
+     * Opens the given .xz file for parallel decompression of its blocks, if the compression options specify more than
+     * one thread and the file has more than one block.
+     * 
+     * @param file the .xz file to decompress
+     * @param options the compression options
+     * @return the stream, or null if the file has to be decompressed as a stream
+     * @throws IOException if the file could not be opened or is not an .xz file
+     */
+    static ParallelXZCompressorInputStream open(File file, CompressionOptions options) throws IOException {
+        if (options.getThreads() <= 1) {
+            return null;
+        }
+
+        SeekableXZInputStream index = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        if (index.getBlockCount() < 2 || index.getLargestBlockSize() > Integer.MAX_VALUE - 8) {
+            index.close();
+            return null;
+        }
+        return new ParallelXZCompressorInputStream(file, index, options.getThreads());
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return (n == -1) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        count(n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdownNow();
+
+        synchronized (decoders) {
+            for (SeekableXZInputStream decoder : decoders) {
+                IOUtils.closeQuietly(decoder);
+            }
+            decoders.clear();
+        }
+    }
+
+    /**
+     * Makes the next decoded block the current one, after submitting the following blocks of the file.
+     *
+     * @return false if all blocks have been read
+     */
+    private boolean nextBlock() throws IOException {
+        while (nextBlock < blockSizes.length && pending.size() < maxPendingBlocks) {
+            long size = blockSizes[nextBlock];
+            if (!pending.isEmpty() && pendingSize + size > MAX_BUFFERED_SIZE) {
+                break;
+            }
+            pending.add(executor.submit(new DecodeTask(nextBlock, (int) size)));
+            pendingSize += size;
+            nextBlock++;
+        }
+
+        if (pending.isEmpty()) {
+            return false;
+        }
+
+        current = ThreadPools.await(pending.poll());
+        pendingSize -= current.length;
+        position = 0;
+        return true;
+    }
+
+    private SeekableXZInputStream takeDecoder() throws IOException {
+        synchronized (decoders) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (!decoders.isEmpty()) {
+                return decoders.poll();
+            }
+        }
+        return new SeekableXZInputStream(new SeekableFileInputStream(file));
+    }
+
+    private void returnDecoder(SeekableXZInputStream decoder) {
+        synchronized (decoders) {
+            if (!closed) {
+                decoders.add(decoder);
+                return;
+            }
+        }
+        IOUtils.closeQuietly(decoder);
+    }
+
+    /**
+     * Decodes a single block of the file.
+     */
+    private class DecodeTask implements Callable<byte[]> {
+        private final int block;
+        private final int size;
+
+        DecodeTask(int block, int size) {
+            this.block = block;
+            this.size = size;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            SeekableXZInputStream decoder = takeDecoder();
+            try {
+                decoder.seekToBlock(block);
+
+                byte[] data = new byte[size];
+                int n = IOUtils.readFully(decoder, data);
+                if (n < size) {
+                    throw new IOException("Truncated .xz block " + block);
+                }
+                return data;
+            } catch (IOException e) {
+                // the position of the decoder is undefined after an error
+                IOUtils.closeQuietly(decoder);
+                decoder = null;
+                throw e;
+            } finally {
+                if (decoder != null) {
+                    returnDecoder(decoder);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.CompressorOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * An XZ CompressorOutputStream that compresses in parallel.
+ * <br>
+ * The input is split into blocks that are LZMA2 encoded independently on a pool of worker threads. Each worker encodes
+ * its block as a complete single-block .xz stream, from which the block is cut out. The blocks are then written in
+ * order into one multi-block .xz stream, followed by an index that records the size of every block. Because of the
+ * index, the output can be read with random access by {@code SeekableXZInputStream}.
+ */
+class ParallelXZCompressorOutputStream extends CompressorOutputStream {
+
+    /**
+     * The block size is this multiple of the dictionary size if not specified otherwise (as in {@code xz -T}).
+     */
+    private static final int DEFAULT_BLOCK_SIZE_FACTOR = 3;
+
+    private static final int CHECK_TYPE = XZ.CHECK_CRC64;
+
+    private static final int STREAM_HEADER_SIZE = 12;
+    private static final int STREAM_FOOTER_SIZE = 12;
+
+    private final OutputStream out;
+    private final LZMA2Options lzma2Options;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+
+    private final ExecutorService executor;
+    private final Deque<Future<Block>> pending = new ArrayDeque<>();
+    private final List<Block> written = new ArrayList<>();
+
+    private byte[] buffer;
+    private int count;
+
+    private boolean headerWritten;
+    private boolean finished;
+    private boolean closed;
+
+    ParallelXZCompressorOutputStream(OutputStream out, CompressionOptions options) throws IOException {
+        this(out, options.createLZMA2Options(), options.getBlockSize(), options.getThreads());
+    }
+
+    ParallelXZCompressorOutputStream(OutputStream out, LZMA2Options lzma2Options, int blockSize, int threads)
+        throws IOException {
+        if (blockSize <= 0) {
+            blockSize = lzma2Options.getDictSize() * DEFAULT_BLOCK_SIZE_FACTOR;
+        }
+
+        // a dictionary larger than a block only costs memory
+        if (lzma2Options.getDictSize() > blockSize) {
+            lzma2Options = (LZMA2Options) lzma2Options.clone();
+            lzma2Options.setDictSize(Math.max(LZMA2Options.DICT_SIZE_MIN, blockSize));
+        }
+
+        this.out = out;
+        this.lzma2Options = lzma2Options;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = threads * 2;
+        this.executor = ThreadPools.newFixedThreadPool(threads, "xz");
+        this.buffer = new byte[Math.min(blockSize, 1024 * 1024)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed || finished) {
+            throw new IOException("Stream has already been finished");
+        }
+
+        while (len > 0) {
+            if (count == buffer.length) {
+                // grow the buffer up to the block size lazily, s.t. small inputs do not allocate entire blocks
+                byte[] grown = new byte[(int) Math.min(blockSize, buffer.length * 2L)];
+                System.arraycopy(buffer, 0, grown, 0, count);
+                buffer = grown;
+            }
+
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+
+            if (count == blockSize) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Finishes writing compressed data to the underlying stream without closing it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        try {
+            if (count > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            if (!headerWritten) {
+                writeStreamHeader();
+            }
+            writeIndexAndFooter();
+            finished = true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        if (pending.size() >= maxPendingBlocks) {
+            writeNextBlock();
+        }
+
+        pending.add(executor.submit(new EncodeTask(buffer, count, lzma2Options)));
+
+        buffer = new byte[buffer.length];
+        count = 0;
+    }
+
+    private void writeNextBlock() throws IOException {
+        Block block = ThreadPools.await(pending.poll());
+
+        if (!headerWritten) {
+            writeStreamHeader();
+        }
+
+        out.write(block.data, block.offset, block.length);
+        written.add(block.withoutData());
+    }
+
+    private void writeStreamHeader() throws IOException {
+        byte[] header = new byte[STREAM_HEADER_SIZE];
+        System.arraycopy(XZ.HEADER_MAGIC, 0, header, 0, XZ.HEADER_MAGIC.length);
+        header[6] = 0;
+        header[7] = CHECK_TYPE;
+        writeIntLE(crc32(header, 6, 2), header, 8);
+
+        out.write(header);
+        headerWritten = true;
+    }
+
+    private void writeIndexAndFooter() throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(0x00); // index indicator
+        writeVarInt(index, written.size());
+        for (Block block : written) {
+            writeVarInt(index, block.unpaddedSize);
+            writeVarInt(index, block.uncompressedSize);
+        }
+        while (index.size() % 4 != 0) {
+            index.write(0x00);
+        }
+
+        byte[] indexBytes = index.toByteArray();
+        byte[] indexCrc = new byte[4];
+        writeIntLE(crc32(indexBytes, 0, indexBytes.length), indexCrc, 0);
+
+        out.write(indexBytes);
+        out.write(indexCrc);
+
+        byte[] footer = new byte[STREAM_FOOTER_SIZE];
+        writeIntLE((indexBytes.length + 4) / 4 - 1, footer, 4); // backward size
+        footer[8] = 0;
+        footer[9] = CHECK_TYPE;
+        writeIntLE(crc32(footer, 4, 6), footer, 0);
+        System.arraycopy(XZ.FOOTER_MAGIC, 0, footer, 10, XZ.FOOTER_MAGIC.length);
+
+        out.write(footer);
+    }
+
+    private static long crc32(byte[] data, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        return crc.getValue();
+    }
+
+    private static void writeIntLE(long value, byte[] b, int off) {
+        for (int i = 0; i < 4; i++) {
+            b[off + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, long value) throws IOException {
+        while (value >= 0x80) {
+            out.write((int) (value | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads a variable length integer as used in the .xz index, and returns it along with the position after it.
+     */
+    private static long[] readVarInt(byte[] b, int off) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 9; i++) {
+            int next = b[off + i] & 0xff;
+            value |= (long) (next & 0x7f) << (7 * i);
+            if ((next & 0x80) == 0) {
+                return new long[]{ value, off + i + 1 };
+            }
+        }
+        throw new IOException("Corrupt .xz index");
+    }
+
+    /**
+     * A compressed .xz block including its padding and check, and the sizes recorded for it in the index.
+     */
+    private static class Block {
+        final byte[] data;
+        final int offset;
+        final int length;
+        final long unpaddedSize;
+        final long uncompressedSize;
+
+        Block(byte[] data, int offset, int length, long unpaddedSize, long uncompressedSize) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.unpaddedSize = unpaddedSize;
+            this.uncompressedSize = uncompressedSize;
+        }
+
+        Block withoutData() {
+            return new Block(null, 0, 0, unpaddedSize, uncompressedSize);
+        }
+    }
+
+    /**
+     * Encodes a block of data as single-block .xz stream and cuts the block out of it.
+     */
+    private static class EncodeTask implements Callable<Block> {
+        private final byte[] data;
+        private final int length;
+        private final LZMA2Options options;
+
+        EncodeTask(byte[] data, int length, LZMA2Options options) {
+            this.data = data;
+            this.length = length;
+            this.options = options;
+        }
+
+        @Override
+        public Block call() throws IOException {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 2 + 1024);
+            XZOutputStream xz = new XZOutputStream(encoded, options, CHECK_TYPE);
+            xz.write(data, 0, length);
+            xz.close();
+
+            byte[] stream = encoded.toByteArray();
+
+            // the backward size in the stream footer points to the start of the index
+            int footer = stream.length - STREAM_FOOTER_SIZE;
+            long backwardSize = ((stream[footer + 4] & 0xffL) | (stream[footer + 5] & 0xffL) << 8
+                    | (stream[footer + 6] & 0xffL) << 16 | (stream[footer + 7] & 0xffL) << 24);
+            int index = (int) (footer - (backwardSize + 1) * 4);
+
+            // index indicator, record count (always 1), then the record of the single block
+            long[] records = readVarInt(stream, index + 1);
+            if (records[0] != 1) {
+                throw new IOException("Expected a single block, but encoder produced " + records[0]);
+            }
+            long[] unpaddedSize = readVarInt(stream, (int) records[1]);
+            long[] uncompressedSize = readVarInt(stream, (int) unpaddedSize[1]);
+
+            return new Block(stream, STREAM_HEADER_SIZE, index - STREAM_HEADER_SIZE, unpaddedSize[0],
+                    uncompressedSize[0]);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.jar.JarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.JarMarker;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * An ArchiveOutputStream that creates ZIP archives by compressing entries concurrently, in the spirit of the
+ * commons-compress {@code ParallelScatterZipCreator}.
+ * <br>
+ * Entries written via {@link #putArchiveEntry(ArchiveEntry)}, {@link #write(byte[], int, int)} and
+ * {@link #closeArchiveEntry()} are buffered uncompressed, and deflated on a pool of worker threads once they are
+ * closed. Files added via {@link #addEntry(File, String)} are read by the worker threads directly, which saves the
+ * intermediate copy. The compressed entries are kept in {@link SpillBuffer}s, which are kept in memory up to
+ * {@link CompressionOptions#getMemoryLimit()} and spill to temporary files beyond that, and are then written into the
+ * wrapped ZipArchiveOutputStream as raw entries, in the order they were added.
+ */
+class ParallelZipArchiveOutputStream extends ArchiveOutputStream {
+
+    private final ZipArchiveOutputStream target;
+    private final int level;
+    private final int maxPendingEntries;
+    private final AtomicLong memoryBudget;
+
+    private final ExecutorService executor;
+    private final Deque<CompressTask> pending = new ArrayDeque<>();
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private ZipArchiveEntry currentEntry;
+    private SpillBuffer currentData;
+
+    private boolean firstEntry = true;
+    private boolean finished;
+
+    ParallelZipArchiveOutputStream(ZipArchiveOutputStream target, CompressionOptions options) {
+        this.target = target;
+        this.level = options.getLevel();
+        this.maxPendingEntries = options.getThreads() * 16;
+        this.memoryBudget = new AtomicLong(options.getMemoryLimit());
+        this.executor = ThreadPools.newFixedThreadPool(options.getThreads(), "zip");
+    }
+
+    /**
+     * Adds the given file to the archive. Its contents are compressed asynchronously.
+     *
+     * @param file the file to add
+     * @param entryName the name of the entry in the archive
+     * @throws IOException if an error occurred while writing previously added entries
+     */
+    public void addEntry(File file, String entryName) throws IOException {
+        ZipArchiveEntry entry = (ZipArchiveEntry) target.createArchiveEntry(file, entryName);
+        beginEntry(entry);
+        submit(new CompressTask(entry, entry.isDirectory() ? null : file, null));
+    }
+
+    @Override
+    public ArchiveEntry createArchiveEntry(File inputFile, String entryName) throws IOException {
+        return target.createArchiveEntry(inputFile, entryName);
+    }
+
+    @Override
+    public void putArchiveEntry(ArchiveEntry entry) throws IOException {
+        if (!(entry instanceof ZipArchiveEntry)) {
+            throw new IllegalArgumentException("Entry is not a ZipArchiveEntry: " + entry);
+        }
+        beginEntry((ZipArchiveEntry) entry);
+
+        currentEntry = (ZipArchiveEntry) entry;
+        currentData = new SpillBuffer(memoryBudget);
+    }
+
+    @Override
+    public void closeArchiveEntry() throws IOException {
+        if (currentEntry == null) {
+            throw new IOException("No current entry to close");
+        }
+
+        CompressTask task = new CompressTask(currentEntry, null, currentData);
+        currentEntry = null;
+        currentData = null;
+        submit(task);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (currentEntry == null) {
+            throw new IOException("No current entry");
+        }
+        if (currentEntry.isDirectory()) {
+            throw new IOException("Can not write data to a directory entry");
+        }
+        currentData.write(b, off, len);
+        count(len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (currentEntry != null) {
+            throw new IOException("This archive contains unclosed entries");
+        }
+
+        try {
+            while (!pending.isEmpty()) {
+                writeNextEntry();
+            }
+            target.finish();
+            finished = true;
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            shutdown();
+            target.close();
+        }
+    }
+
+    /**
+     * Checks that a new entry can be started, and marks the first entry of a JAR archive.
+     */
+    private void beginEntry(ZipArchiveEntry entry) throws IOException {
+        if (finished) {
+            throw new IOException("Stream has already been finished");
+        }
+        if (currentEntry != null) {
+            throw new IOException("The current entry has not been closed");
+        }
+
+        if (firstEntry && target instanceof JarArchiveOutputStream) {
+            entry.addAsFirstExtraField(JarMarker.getInstance());
+        }
+        firstEntry = false;
+    }
+
+    private void submit(CompressTask task) throws IOException {
+        if (pending.size() >= maxPendingEntries) {
+            try {
+                writeNextEntry();
+            } catch (IOException | RuntimeException e) {
+                task.release();
+                throw e;
+            }
+        }
+        task.future = executor.submit(task);
+        pending.add(task);
+    }
+
+    private void writeNextEntry() throws IOException {
+        CompressedEntry compressed = ThreadPools.await(pending.poll().future);
+
+        InputStream data = null;
+        try {
+            data = compressed.data.getInputStream();
+            target.addRawArchiveEntry(compressed.entry, data);
+        } finally {
+            IOUtils.closeQuietly(data);
+            compressed.data.close();
+        }
+    }
+
+    private void shutdown() {
+        executor.shutdownNow();
+
+        // release the buffers of entries that were compressed but not written
+        for (CompressTask task : pending) {
+            if (task.future.isDone() && !task.future.isCancelled()) {
+                try {
+                    task.future.get().data.close();
+                } catch (Exception e) {
+                    // nothing to release
+                }
+            }
+            task.release();
+        }
+        pending.clear();
+
+        if (currentData != null) {
+            currentData.close();
+            currentData = null;
+            currentEntry = null;
+        }
+
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        return deflater;
+    }
+
+    /**
+     * A fully compressed entry whose metadata is set, s.t. it can be added as raw entry.
+     */
+    private static class CompressedEntry {
+        final ZipArchiveEntry entry;
+        final SpillBuffer data;
+
+        CompressedEntry(ZipArchiveEntry entry, SpillBuffer data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Deflates a file or the buffered data of an entry into a SpillBuffer, and computes the CRC32 and sizes of the
+     * entry.
+     */
+    private class CompressTask implements Callable<CompressedEntry> {
+        private final ZipArchiveEntry entry;
+        private final File file;
+        private final SpillBuffer source;
+        private boolean released;
+
+        Future<CompressedEntry> future;
+
+        CompressTask(ZipArchiveEntry entry, File file, SpillBuffer source) {
+            this.entry = entry;
+            this.file = file;
+            this.source = source;
+        }
+
+        @Override
+        public CompressedEntry call() throws IOException {
+            try {
+                return compress();
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Releases the buffered data of the entry. Tasks that never ran are released when the stream shuts down.
+         */
+        synchronized void release() {
+            if (source != null && !released) {
+                released = true;
+                source.close();
+            }
+        }
+
+        private CompressedEntry compress() throws IOException {
+            SpillBuffer data = new SpillBuffer(memoryBudget);
+
+            if (entry.isDirectory()) {
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(0);
+                entry.setCompressedSize(0);
+                entry.setCrc(0);
+                return new CompressedEntry(entry, data);
+            }
+
+            Deflater deflater = acquireDeflater();
+            InputStream input = null;
+            try {
+                input = (file != null) ? new FileInputStream(file) : source.getInputStream();
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[64 * 1024];
+                byte[] output = new byte[64 * 1024];
+                long size = 0;
+                int n;
+
+                while ((n = input.read(buffer)) != -1) {
+                    crc.update(buffer, 0, n);
+                    size += n;
+                    deflater.setInput(buffer, 0, n);
+                    while (!deflater.needsInput()) {
+                        int written = deflater.deflate(output, 0, output.length);
+                        data.write(output, 0, written);
+                    }
+                }
+
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int written = deflater.deflate(output, 0, output.length);
+                    data.write(output, 0, written);
+                }
+
+                entry.setMethod(ZipEntry.DEFLATED);
+                entry.setSize(size);
+                entry.setCompressedSize(data.size());
+                entry.setCrc(crc.getValue());
+
+                return new CompressedEntry(entry, data);
+            } catch (IOException e) {
+                data.close();
+                throw e;
+            } finally {
+                IOUtils.closeQuietly(input);
+                deflater.reset();
+                deflaters.add(deflater);
+            }
+        }
+    }
+}
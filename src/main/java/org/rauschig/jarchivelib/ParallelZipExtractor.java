@@ -0,0 +1,131 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Extracts the entries of a ZipFile concurrently.
+ * <br>
+ * ZipFile reads entry data with positional reads, s.t. the streams of several entries can be read at the same time.
+ * All directories are created up front, s.t. each worker can inflate and write its files independently. File
+ * permissions are applied by the worker after it wrote the data. Directory permissions are applied last, children
+ * before parents, s.t. restrictive directory permissions do not prevent writing their contents.
+ */
+class ParallelZipExtractor {
+
+    private final ZipFileArchiver archiver;
+    private final ZipFile file;
+    private final FileChannel channel;
+    private final File destination;
+    private final int threads;
+
+    ParallelZipExtractor(ZipFileArchiver archiver, ZipFile file, FileChannel channel, File destination, int threads) {
+        this.archiver = archiver;
+        this.file = file;
+        this.channel = channel;
+        this.destination = destination;
+        this.threads = threads;
+    }
+
+    /**
+     * Extracts the given entries of the ZipFile into the destination directory.
+     * 
+     * @param entries the entries to extract
+     * @param incremental the incremental extraction to finish once all files are written, or null
+     * @throws IOException if an entry could not be extracted
+     */
+    void extract(List<ZipArchiveEntry> entries, IncrementalExtraction incremental) throws IOException {
+        DirectoryCache directories = new DirectoryCache();
+
+        for (ZipArchiveEntry entry : entries) {
+            File target = new File(destination, entry.getName());
+            if (entry.isDirectory()) {
+                directories.add(entry, target);
+            } else {
+                directories.mkdirsFor(target);
+            }
+        }
+
+        extractFiles(entries, directories);
+
+        if (incremental != null) {
+            incremental.finish();
+        }
+        directories.applyModes();
+    }
+
+    private void extractFiles(List<ZipArchiveEntry> entries, DirectoryCache directories) throws IOException {
+        ExecutorService executor = ThreadPools.newFixedThreadPool(threads, "unzip");
+        Deque<Future<Void>> pending = new ArrayDeque<>();
+        int maxPending = threads * 4;
+
+        try {
+            for (ZipArchiveEntry entry : entries) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (pending.size() >= maxPending) {
+                    ThreadPools.await(pending.poll());
+                }
+                pending.add(executor.submit(new ExtractTask(entry, directories)));
+            }
+
+            while (!pending.isEmpty()) {
+                ThreadPools.await(pending.poll());
+            }
+        } finally {
+            // workers are not interrupted, as an interrupt during a read closes the channel of the ZipFile, which may
+            // be shared through an ArchiveHandleCache. Tasks that have not started yet are dropped, running tasks are
+            // waited for, s.t. no worker still writes into the destination or reads the archive after extract returns.
+            for (Future<Void> future : pending) {
+                future.cancel(false);
+            }
+            ThreadPools.shutdownAndAwait(executor);
+        }
+    }
+
+    /**
+     * Inflates a single file entry and applies its permissions.
+     */
+    private class ExtractTask implements Callable<Void> {
+        private final ZipArchiveEntry entry;
+        private final DirectoryCache directories;
+
+        ExtractTask(ZipArchiveEntry entry, DirectoryCache directories) {
+            this.entry = entry;
+            this.directories = directories;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            // all directories exist at this point, so the workers only read the cache
+            archiver.extractEntry(file, channel, entry, destination, directories);
+            return null;
+        }
+    }
+}
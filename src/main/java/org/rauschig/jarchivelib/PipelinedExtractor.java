@@ -0,0 +1,272 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+
+/**
+ * The parse and write stages of a pipelined extraction.
+ * <br>
+ * The thread that reads the archive entries stays sequential, and copies the data of each file entry into pooled
+ * chunks. Every file is written by a task on a pool of writer threads, which receives the chunks of its entry through
+ * a queue, creates the file, writes it and applies its permissions. An entry that fits into a single chunk is
+ * buffered completely before its task starts, s.t. many small files are materialized concurrently while the archive
+ * is read ahead (write-behind). The amount of buffered chunks is bounded by the memory limit of the
+ * {@link ExtractOptions}.
+ * <br>
+ * Directories are created by the reading thread through the {@link DirectoryCache} of the extraction, s.t. they exist
+ * before any writer needs them. The first error of a writer is rethrown to the caller.
+ */
+class PipelinedExtractor {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final File destination;
+    private final StageStatistics parse;
+    private final StageStatistics write;
+
+    private final ExecutorService executor;
+    private final Semaphore chunks;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final Deque<Future<Void>> pending = new ArrayDeque<>();
+    private final DirectoryCache directories;
+
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    PipelinedExtractor(File destination, ExtractOptions options, ExtractStatistics statistics,
+        DirectoryCache directories) {
+        this.destination = destination;
+        this.directories = directories;
+        this.parse = statistics.getParseStage();
+        this.write = statistics.getWriteStage();
+        this.executor = ThreadPools.newFixedThreadPool(options.getThreads(), "extract-writer");
+        this.chunks = new Semaphore((int) Math.max(1, Math.min(Integer.MAX_VALUE, options.getMemoryLimit()
+                / CHUNK_SIZE)));
+    }
+
+    /**
+     * Reads the data of the given entry from the archive stream and hands it to a writer.
+     * 
+     * @param entry the entry to extract
+     * @param data the data of the entry
+     * @throws IOException if reading the entry failed, or a writer failed earlier
+     */
+    void extractEntry(ArchiveEntry entry, InputStream data) throws IOException {
+        collectCompleted();
+
+        File file = new File(destination, entry.getName());
+
+        if (entry.isDirectory()) {
+            directories.add(entry, file);
+            return;
+        }
+        directories.mkdirsFor(file);
+
+        BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+        Chunk chunk = read(data);
+        queue.add(chunk);
+        pending.add(executor.submit(new WriteTask(entry, file, queue)));
+
+        while (!chunk.last) {
+            chunk = read(data);
+            queue.add(chunk);
+        }
+    }
+
+    /**
+     * Waits for the writers to write all pending files.
+     * 
+     * @throws IOException if a writer failed
+     */
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            ThreadPools.await(pending.poll());
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops the writers and waits for them to terminate, s.t. no writer still creates or writes files once the
+     * extraction returns. Tasks that have not started yet are dropped. Running writers are interrupted, as a writer
+     * may wait for chunks of an entry that the reading thread will no longer read. Files that were not completely
+     * written by then remain incomplete.
+     */
+    void close() {
+        for (Future<Void> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+
+        executor.shutdownNow();
+        ThreadPools.shutdownAndAwait(executor);
+    }
+
+    /**
+     * Removes the tasks that are done, and rethrows the first error of a writer.
+     */
+    private void collectCompleted() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            ThreadPools.await(pending.poll());
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next chunk of entry data into a pooled buffer, waiting for the writers if the memory limit is reached.
+     */
+    private Chunk read(InputStream data) throws IOException {
+        if (!chunks.tryAcquire()) {
+            long start = System.nanoTime();
+            try {
+                chunks.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for writer");
+            } finally {
+                parse.addBlocked(System.nanoTime() - start);
+            }
+        }
+
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new byte[CHUNK_SIZE];
+        }
+
+        try {
+            int length = 0;
+            int n = 0;
+            while (length < buffer.length && (n = data.read(buffer, length, buffer.length - length)) != -1) {
+                length += n;
+            }
+
+            parse.addBytes(length);
+            return new Chunk(buffer, length, n == -1);
+        } catch (IOException e) {
+            recycle(buffer);
+            throw e;
+        }
+    }
+
+    private void recycle(byte[] buffer) {
+        buffers.offer(buffer);
+        chunks.release();
+    }
+
+    /**
+     * A chunk of the data of a file entry.
+     */
+    private static class Chunk {
+        final byte[] data;
+        final int length;
+        final boolean last;
+
+        Chunk(byte[] data, int length, boolean last) {
+            this.data = data;
+            this.length = length;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Writes the chunks of an entry into its file and applies the permissions of the entry. After a failure, the
+     * remaining chunks are still taken and recycled, s.t. the reading thread is not blocked until it notices the
+     * failure.
+     */
+    private class WriteTask implements Callable<Void> {
+        private final ArchiveEntry entry;
+        private final File file;
+        private final BlockingQueue<Chunk> queue;
+
+        WriteTask(ArchiveEntry entry, File file, BlockingQueue<Chunk> queue) {
+            this.entry = entry;
+            this.file = file;
+            this.queue = queue;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            OutputStream out = null;
+            try {
+                Chunk chunk;
+                do {
+                    chunk = take();
+                    try {
+                        if (failure.get() == null) {
+                            if (out == null) {
+                                out = FileModeMapper.newOutputStream(entry, file);
+                            }
+                            out.write(chunk.data, 0, chunk.length);
+                            write.addBytes(chunk.length);
+                        }
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        recycle(chunk.data);
+                    }
+                } while (!chunk.last);
+
+                if (failure.get() == null) {
+                    OutputStream closing = out;
+                    out = null;
+                    closing.close();
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+            return null;
+        }
+
+        private Chunk take() throws InterruptedException {
+            Chunk chunk = queue.poll();
+            if (chunk != null) {
+                return chunk;
+            }
+
+            long start = System.nanoTime();
+            try {
+                return queue.take();
+            } finally {
+                write.addStarved(System.nanoTime() - start);
+            }
+        }
+    }
+}
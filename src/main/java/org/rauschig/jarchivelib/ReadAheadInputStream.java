@@ -0,0 +1,216 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An InputStream that reads its source ahead on a separate thread, and hands the data over in chunks through a bounded
+ * queue. Used to decouple the stages of a pipelined extraction.
+ */
+class ReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int QUEUE_DEPTH = 8;
+
+    private static final Chunk END = new Chunk(new byte[0], 0, null);
+
+    private final InputStream source;
+    private final StageStatistics producer;
+    private final StageStatistics consumer;
+
+    private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+    private final Thread thread;
+
+    private Chunk current;
+    private int position;
+    private boolean closed;
+
+    /**
+     * Starts reading the given source ahead.
+     * 
+     * @param source the stream to read
+     * @param name the name of the reading thread
+     * @param producer the statistics of the stage that reads the source
+     * @param consumer the statistics of the stage that reads from this stream
+     */
+    ReadAheadInputStream(InputStream source, String name, StageStatistics producer, StageStatistics consumer) {
+        this.source = source;
+        this.producer = producer;
+        this.consumer = consumer;
+        this.thread = new Thread(new Producer(), "jarchivelib-" + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (current != null) ? current.length - position : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes sure the current chunk has data left.
+     * 
+     * @return false if the end of the source was reached
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (current == null || position == current.length) {
+            if (current == END) {
+                return false;
+            }
+            current = take();
+            position = 0;
+
+            if (current.error != null) {
+                IOException error = current.error;
+                current = END;
+                throw error;
+            }
+        }
+        return true;
+    }
+
+    private Chunk take() throws IOException {
+        Chunk chunk = chunks.poll();
+        if (chunk != null) {
+            return chunk;
+        }
+
+        long start = System.nanoTime();
+        try {
+            return chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data");
+        } finally {
+            consumer.addStarved(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * A chunk of data read from the source, or the error that occurred while reading it.
+     */
+    private static class Chunk {
+        final byte[] data;
+        final int length;
+        final IOException error;
+
+        Chunk(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reads the source into chunks until its end is reached or the stream is closed.
+     */
+    private class Producer implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] data = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    int n = 0;
+                    while (length < data.length && (n = source.read(data, length, data.length - length)) != -1) {
+                        length += n;
+                    }
+
+                    if (length > 0) {
+                        producer.addBytes(length);
+                        put(new Chunk(data, length, null));
+                    }
+                    if (n == -1) {
+                        put(END);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                try {
+                    put(new Chunk(null, 0, e));
+                } catch (InterruptedException interrupted) {
+                    // closed
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } finally {
+                IOUtils.closeQuietly(source);
+            }
+        }
+
+        private void put(Chunk chunk) throws InterruptedException {
+            if (chunks.offer(chunk)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                chunks.put(chunk);
+            } finally {
+                producer.addBlocked(System.nanoTime() - start);
+            }
+        }
+    }
+}
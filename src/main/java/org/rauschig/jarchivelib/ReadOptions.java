@@ -0,0 +1,75 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+/**
+ * Options for how an {@link Archiver} reads archives with random access (ZIP, JAR and 7z). Can be passed to the
+ * {@link ArchiverFactory}, and apply to listing, streaming and extracting archives.
+ * <br>
+ * The default options open archives on every access and read them through positional reads of the file, just like an
+ * Archiver created without options.
+ */
+public final class ReadOptions {
+
+    private boolean memoryMapped;
+
+    private ArchiveHandleCache handleCache;
+
+    /**
+     * Returns whether archives are read through memory mappings.
+     * 
+     * @return true if archives are memory-mapped
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets whether archives are read through memory mappings instead of positional reads of the file. This serves the
+     * parsing of the central directory and the reading of entries from the page cache, which pays off for archives
+     * that are opened and read repeatedly. The mappings take up address space (not heap) until they are garbage
+     * collected.
+     * 
+     * @param memoryMapped whether to memory-map archives
+     * @return this options object
+     */
+    public ReadOptions setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        return this;
+    }
+
+    /**
+     * Returns the cache of opened archives, or null if archives are opened on every access.
+     * 
+     * @return the archive handle cache
+     */
+    public ArchiveHandleCache getHandleCache() {
+        return handleCache;
+    }
+
+    /**
+     * Sets a cache of opened archives. Listing, streaming and extracting a cached archive does not parse its central
+     * directory or header database again. The same cache can be shared by several archivers.
+     * 
+     * @param handleCache the archive handle cache, or null to open archives on every access
+     * @return this options object
+     */
+    public ReadOptions setHandleCache(ArchiveHandleCache handleCache) {
+        this.handleCache = handleCache;
+        return this;
+    }
+
+}
@@ -15,11 +15,17 @@
  */
 package org.rauschig.jarchivelib;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
 import org.apache.commons.compress.archivers.sevenz.SevenZFile;
 import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
 
@@ -36,6 +42,14 @@ class SevenZArchiver extends CommonsArchiver {
         super(ArchiveFormat.SEVEN_Z);
     }
 
+    SevenZArchiver(CompressionOptions options) {
+        this(options, new ReadOptions());
+    }
+
+    SevenZArchiver(CompressionOptions options, ReadOptions readOptions) {
+        super(ArchiveFormat.SEVEN_Z, options, readOptions);
+    }
+
     @Override
     protected ArchiveOutputStream createArchiveOutputStream(File archive) throws IOException {
         return new SevenZOutputStream(new SevenZOutputFile(archive));
@@ -43,33 +57,138 @@ class SevenZArchiver extends CommonsArchiver {
 
     @Override
     protected ArchiveInputStream createArchiveInputStream(File archive) throws IOException {
-        return new SevenZInputStream(new SevenZFile(archive));
+        ArchiveHandleCache.Lease<SevenZFile> lease = leaseSevenZFile(archive);
+        return new SevenZInputStream(lease.get(), lease, lease.isCached());
+    }
+
+    /**
+     * The entries of a 7z archive are listed by its header database, which holds each name once.
+     */
+    @Override
+    protected boolean hasUniqueEntryNames() {
+        return true;
+    }
+
+    /**
+     * A 7z archive can not be read as a stream, so only the writing of its entries is pipelined.
+     */
+    @Override
+    protected ArchiveInputStream createReadAheadArchiveInputStream(File archive, ExtractStatistics statistics)
+        throws IOException {
+        return createArchiveInputStream(archive);
+    }
+
+    /**
+     * Leases the given archive from the handle cache of the read options, or opens it if there is none. A SevenZFile
+     * keeps the position of the entry that is read, so a cached SevenZFile is only used by one user at a time.
+     */
+    private ArchiveHandleCache.Lease<SevenZFile> leaseSevenZFile(File archive) throws IOException {
+        ArchiveHandleCache cache = getReadOptions().getHandleCache();
+        if (cache == null) {
+            return ArchiveHandleCache.Lease.of(openSevenZFile(archive));
+        }
+
+        return cache.lease(archive, SevenZFile.class, false, new ArchiveHandleCache.Opener<SevenZFile>() {
+            @Override
+            public SevenZFile open(File file) throws IOException {
+                return openSevenZFile(file);
+            }
+        });
+    }
+
+    /**
+     * Opens the given archive as SevenZFile, which reads it through a memory mapping if the read options say so.
+     */
+    private SevenZFile openSevenZFile(File archive) throws IOException {
+        if (!getReadOptions().isMemoryMapped()) {
+            return new SevenZFile(archive);
+        }
+
+        MappedFileChannel channel = MappedFileChannel.open(archive);
+        try {
+            return new SevenZFile(channel, archive.getAbsolutePath());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the entries from the header database of the archive, without decompressing any entry data.
+     */
+    @Override
+    public List<ArchiveEntryInfo> list(File archive) throws IOException {
+        assertExtractSource(archive);
+
+        ArchiveHandleCache.Lease<SevenZFile> lease = leaseSevenZFile(archive);
+        try {
+            List<ArchiveEntryInfo> entries = new ArrayList<>();
+            for (SevenZArchiveEntry entry : lease.get().getEntries()) {
+                entries.add(ArchiveEntryInfo.of(entry));
+            }
+            return entries;
+        } finally {
+            lease.close();
+        }
     }
 
     /**
      * Wraps a SevenZFile to make it usable as an ArchiveInputStream.
+     * <br>
+     * A SevenZFile that is reused (i.e. cached) can not be read with {@link SevenZFile#getNextEntry()}, as it can not
+     * be rewound. Its entries are read by random access instead, which starts over at the first entry.
      */
     static class SevenZInputStream extends ArchiveInputStream {
 
         private SevenZFile file;
+        private Closeable lease;
+
+        private Iterator<SevenZArchiveEntry> entries;
+        private InputStream currentEntryStream;
 
         public SevenZInputStream(SevenZFile file) {
+            this(file, file, false);
+        }
+
+        /**
+         * Creates a stream over the given SevenZFile, which releases the given lease instead of closing the file.
+         * 
+         * @param file the 7z file to read
+         * @param lease the lease of the 7z file
+         * @param reused whether the file may have been read before
+         */
+        SevenZInputStream(SevenZFile file, Closeable lease, boolean reused) {
             this.file = file;
+            this.lease = lease;
+            this.entries = reused ? file.getEntries().iterator() : null;
         }
 
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
-            return file.read(b, off, len);
+            if (entries == null) {
+                return file.read(b, off, len);
+            }
+            return (currentEntryStream != null) ? currentEntryStream.read(b, off, len) : -1;
         }
 
         @Override
         public org.apache.commons.compress.archivers.ArchiveEntry getNextEntry() throws IOException {
-            return file.getNextEntry();
+            if (entries == null) {
+                return file.getNextEntry();
+            }
+            if (!entries.hasNext()) {
+                currentEntryStream = null;
+                return null;
+            }
+
+            SevenZArchiveEntry entry = entries.next();
+            currentEntryStream = entry.hasStream() ? file.getInputStream(entry) : null;
+            return entry;
         }
 
         @Override
         public void close() throws IOException {
-            file.close();
+            lease.close();
         }
     }
 
@@ -0,0 +1,154 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-once buffer for intermediate data of parallel compressors. The data is kept in memory as long as the shared
+ * memory budget allows it, and is spilled to a temporary file otherwise.
+ */
+class SpillBuffer implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final AtomicLong memoryBudget;
+
+    private byte[] memory = new byte[0];
+    private long reserved;
+
+    private File file;
+    private OutputStream fileOutput;
+
+    private long size;
+
+    /**
+     * Creates a new SpillBuffer that reserves the memory it uses from the given budget.
+     * 
+     * @param memoryBudget the amount of bytes that are still available, shared among buffers
+     */
+    SpillBuffer(AtomicLong memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (file == null) {
+            if (reserve(size + len)) {
+                System.arraycopy(b, off, memory, (int) size, len);
+                size += len;
+                return;
+            }
+            spill();
+        }
+
+        fileOutput.write(b, off, len);
+        size += len;
+    }
+
+    /**
+     * Returns the amount of bytes written into this buffer.
+     * 
+     * @return the size of the buffer
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the buffer exceeded the memory budget and its data was moved to a temporary file.
+     * 
+     * @return true if the data is kept in a temporary file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Finishes writing and returns a stream that reads the buffered data.
+     * 
+     * @return a new InputStream
+     * @throws IOException if the temporary file can not be read
+     */
+    public InputStream getInputStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(memory, 0, (int) size);
+        }
+
+        fileOutput.close();
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    @Override
+    public void close() {
+        release();
+        IOUtils.closeQuietly(fileOutput);
+
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Grows the memory array to the required capacity, if the budget allows it.
+     */
+    private boolean reserve(long required) {
+        if (required <= memory.length) {
+            return true;
+        }
+        if (required > Integer.MAX_VALUE - 8) {
+            return false;
+        }
+
+        long capacity = Math.min(Math.max(required, Math.max(INITIAL_CAPACITY, memory.length * 2L)),
+                Integer.MAX_VALUE - 8);
+        long additional = capacity - memory.length;
+
+        if (memoryBudget.addAndGet(-additional) < 0) {
+            memoryBudget.addAndGet(additional);
+            return false;
+        }
+
+        reserved += additional;
+        memory = Arrays.copyOf(memory, (int) capacity);
+        return true;
+    }
+
+    private void release() {
+        memoryBudget.addAndGet(reserved);
+        reserved = 0;
+        memory = new byte[0];
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("jarchivelib-", ".spill");
+        fileOutput = new BufferedOutputStream(new FileOutputStream(file));
+        fileOutput.write(memory, 0, (int) size);
+
+        release();
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of one stage of a pipelined extraction (see {@link ExtractStatistics}).
+ * <br>
+ * A stage is starved while it waits for input from the preceding stage, and blocked while it waits for the following
+ * stage to accept its output. The stage with the least stalled time is the bottleneck of the pipeline.
+ */
+public final class StageStatistics {
+
+    private final String name;
+
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong starved = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+
+    StageStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the stage.
+     * 
+     * @return the name of the stage
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the amount of bytes the stage has produced.
+     * 
+     * @return the amount of bytes
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Returns the time the stage spent waiting for input.
+     * 
+     * @param unit the time unit of the returned value
+     * @return the starved time
+     */
+    public long getStarvedTime(TimeUnit unit) {
+        return unit.convert(starved.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time the stage spent waiting to hand over its output.
+     * 
+     * @param unit the time unit of the returned value
+     * @return the blocked time
+     */
+    public long getBlockedTime(TimeUnit unit) {
+        return unit.convert(blocked.get(), TimeUnit.NANOSECONDS);
+    }
+
+    void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    void addStarved(long nanos) {
+        starved.addAndGet(nanos);
+    }
+
+    void addBlocked(long nanos) {
+        blocked.addAndGet(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getBytes() + " bytes, starved " + getStarvedTime(TimeUnit.MILLISECONDS) + " ms, blocked "
+            + getBlockedTime(TimeUnit.MILLISECONDS) + " ms";
+    }
+}
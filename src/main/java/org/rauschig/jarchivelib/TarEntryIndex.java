@@ -0,0 +1,246 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * The location and metadata of the entries of a tar archive, by entry name. Offsets refer to the uncompressed tar
+ * data, so the index can be used for compressed tar archives as well, given a way to seek into the decompressed data.
+ * <br>
+ * Sparse entries are not indexed, as their data is not stored contiguously.
+ */
+final class TarEntryIndex {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Reads the given tar data to its end and indexes all entries.
+     * 
+     * @param tar the uncompressed tar data
+     * @return the index of the entries
+     * @throws IOException propagated I/O errors
+     */
+    static TarEntryIndex scan(InputStream tar) throws IOException {
+        TarEntryIndex index = new TarEntryIndex();
+        index.scan(tar, 0);
+        return index;
+    }
+
+    /**
+     * Reads the given tar data to its end and adds its entries to the index. Entries replace indexed entries of the
+     * same name, just like when they are extracted.
+     * 
+     * @param tar the uncompressed tar data
+     * @param offset the offset of the data within the archive
+     * @return the offset at which the header of an appended entry would start
+     * @throws IOException propagated I/O errors
+     */
+    long scan(InputStream tar, long offset) throws IOException {
+        TarArchiveInputStream input = new TarArchiveInputStream(tar);
+
+        long headerOffset = offset;
+        TarArchiveEntry entry;
+        while ((entry = input.getNextTarEntry()) != null) {
+            // right after the headers are parsed, the amount of bytes read is the offset of the entry data
+            long dataOffset = offset + input.getBytesRead();
+
+            if (!entry.isSparse()) {
+                add(new Entry(entry.getName(), headerOffset, dataOffset, entry.getSize(), entry.getMode(),
+                        entry.getModTime().getTime(), entry.isDirectory()));
+            }
+
+            headerOffset = blockEnd(dataOffset + entry.getSize());
+        }
+
+        return headerOffset;
+    }
+
+    private static long blockEnd(long offset) {
+        return (offset + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    void add(Entry entry) {
+        // re-insert, s.t. the entries stay in the order of the archive
+        entries.remove(entry.name);
+        entries.put(entry.name, entry);
+    }
+
+    /**
+     * Returns the entry with the given name, or null if there is none.
+     * 
+     * @param name the entry name
+     * @return the entry
+     */
+    Entry get(String name) {
+        return entries.get(name);
+    }
+
+    Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    List<ArchiveEntryInfo> list() {
+        List<ArchiveEntryInfo> list = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            list.add(new ArchiveEntryInfo(entry.name, entry.size, new Date(entry.lastModified), entry.directory));
+        }
+        return list;
+    }
+
+    /**
+     * Writes the index in a compact form. Names are stored as the suffix that differs from the preceding name, and
+     * offsets and modification times as the difference to what is expected from the preceding entry, all as variable
+     * length integers. Consecutive entries of an archive thereby take little more than the distinct parts of their
+     * names.
+     * 
+     * @param out the output to write to
+     * @throws IOException propagated I/O errors
+     */
+    void write(DataOutput out) throws IOException {
+        writeVarLong(out, entries.size());
+
+        byte[] previousName = new byte[0];
+        long previousEnd = 0;
+        long previousModified = 0;
+        for (Entry entry : entries.values()) {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            int prefix = commonPrefix(previousName, name);
+            writeVarLong(out, prefix);
+            writeVarLong(out, name.length - prefix);
+            out.write(name, prefix, name.length - prefix);
+
+            writeVarLong(out, zigZag((entry.headerOffset - previousEnd) / BLOCK_SIZE));
+            writeVarLong(out, (entry.dataOffset - entry.headerOffset) / BLOCK_SIZE);
+            writeVarLong(out, entry.size);
+            writeVarLong(out, ((long) entry.mode << 1) | (entry.directory ? 1 : 0));
+            writeVarLong(out, zigZag(entry.lastModified - previousModified));
+
+            previousName = name;
+            previousEnd = blockEnd(entry.dataOffset + entry.size);
+            previousModified = entry.lastModified;
+        }
+    }
+
+    static TarEntryIndex read(DataInput in) throws IOException {
+        TarEntryIndex index = new TarEntryIndex();
+        long count = readVarLong(in);
+
+        byte[] previousName = new byte[0];
+        long previousEnd = 0;
+        long previousModified = 0;
+        for (long i = 0; i < count; i++) {
+            int prefix = (int) readVarLong(in);
+            byte[] name = Arrays.copyOf(previousName, prefix + (int) readVarLong(in));
+            in.readFully(name, prefix, name.length - prefix);
+
+            long headerOffset = previousEnd + unZigZag(readVarLong(in)) * BLOCK_SIZE;
+            long dataOffset = headerOffset + readVarLong(in) * BLOCK_SIZE;
+            long size = readVarLong(in);
+            long mode = readVarLong(in);
+            long lastModified = previousModified + unZigZag(readVarLong(in));
+
+            index.add(new Entry(new String(name, StandardCharsets.UTF_8), headerOffset, dataOffset, size,
+                    (int) (mode >>> 1), lastModified, (mode & 1) != 0));
+
+            previousName = name;
+            previousEnd = blockEnd(dataOffset + size);
+            previousModified = lastModified;
+        }
+        return index;
+    }
+
+    private static int commonPrefix(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < length && a[i] == b[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * A single entry of a tar archive.
+     */
+    static final class Entry {
+        final String name;
+        /**
+         * Offset of the first header record of the entry, including the records of long names and PAX headers.
+         */
+        final long headerOffset;
+        final long dataOffset;
+        final long size;
+        final int mode;
+        final long lastModified;
+        final boolean directory;
+
+        Entry(String name, long headerOffset, long dataOffset, long size, int mode, long lastModified,
+                boolean directory) {
+            this.name = name;
+            this.headerOffset = headerOffset;
+            this.dataOffset = dataOffset;
+            this.size = size;
+            this.mode = mode;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+    }
+}
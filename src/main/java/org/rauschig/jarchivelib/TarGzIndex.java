@@ -0,0 +1,396 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+/**
+ * A random access index for tar.gz archives, in the spirit of zlib's zran example.
+ * <br>
+ * Building the index decompresses the archive once, and records a checkpoint about every {@link #DEFAULT_SPACING}
+ * bytes of uncompressed data: the position of a deflate block in the archive together with the 32 KiB of uncompressed
+ * data preceding it, which is all it takes to resume decompression at that block. It also records the uncompressed
+ * offset of every tar entry. Opening an entry then resumes decompression at the closest checkpoint before the entry,
+ * s.t. at most the spacing of uncompressed data has to be decompressed and skipped to get to the entry data.
+ * <br>
+ * For BGZF archives (see {@link CompressionOptions#setBgzf(boolean)}) the checkpoints are the starts of gzip members,
+ * which need no preceding data. They are taken from the .gzi index next to the archive if there is one, and the
+ * archive is decompressed with the native inflater only to find the tar entries.
+ * <br>
+ * The index can be written to a sidecar file and read back. It remembers the size and modification time of the
+ * archive it was built from, and refuses to open entries of an archive that has changed since.
+ */
+public final class TarGzIndex {
+
+    /**
+     * Default amount of uncompressed data between two checkpoints.
+     */
+    public static final long DEFAULT_SPACING = 4 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A544749; // JTGI
+    private static final int VERSION = 3;
+
+    private final long archiveLength;
+    private final long archiveLastModified;
+    private final List<Checkpoint> checkpoints;
+    private final TarEntryIndex entries;
+
+    private TarGzIndex(long archiveLength, long archiveLastModified, List<Checkpoint> checkpoints,
+            TarEntryIndex entries) {
+        this.archiveLength = archiveLength;
+        this.archiveLastModified = archiveLastModified;
+        this.checkpoints = checkpoints;
+        this.entries = entries;
+    }
+
+    /**
+     * Builds the index of the given tar.gz archive with the default spacing of checkpoints.
+     * 
+     * @param archive the tar.gz archive
+     * @return the index of the archive
+     * @throws IOException if the archive could not be read or is not a valid tar.gz archive
+     */
+    public static TarGzIndex build(File archive) throws IOException {
+        return build(archive, DEFAULT_SPACING);
+    }
+
+    /**
+     * Builds the index of the given tar.gz archive. A smaller spacing makes opening entries faster, at the cost of a
+     * larger index, as each checkpoint holds up to 32 KiB of (compressed) data.
+     * 
+     * @param archive the tar.gz archive
+     * @param spacing the amount of uncompressed data between two checkpoints
+     * @return the index of the archive
+     * @throws IOException if the archive could not be read or is not a valid tar.gz archive
+     * @throws IllegalArgumentException if spacing is smaller than one
+     */
+    public static TarGzIndex build(File archive, final long spacing) throws IOException, IllegalArgumentException {
+        if (spacing < 1) {
+            throw new IllegalArgumentException("Spacing must be at least 1, was " + spacing);
+        }
+
+        long length = archive.length();
+        long lastModified = archive.lastModified();
+        final List<Checkpoint> checkpoints = new ArrayList<>();
+
+        if (isBgzf(archive)) {
+            BgzfIndex blocks = readBgzfIndex(archive);
+            for (int i = 0; i < blocks.size(); i++) {
+                long output = blocks.getUncompressedOffset(i);
+                if (checkpoints.isEmpty() || output - checkpoints.get(checkpoints.size() - 1).output >= spacing) {
+                    checkpoints.add(new Checkpoint(blocks.getCompressedOffset(i) << 3, output, null));
+                }
+            }
+
+            InputStream gzip = new GzipCompressorInputStream(new BufferedInputStream(new FileInputStream(archive)),
+                    true);
+            try {
+                return new TarGzIndex(length, lastModified, checkpoints, scanEntries(gzip));
+            } finally {
+                gzip.close();
+            }
+        }
+
+        BlockGzipInputStream gzip = new BlockGzipInputStream(new FileInputStream(archive));
+        try {
+            gzip.setBlockListener(new BlockInflater.BlockListener() {
+                @Override
+                public void blockStart(long bitPosition, long output, BlockInflater inflater) {
+                    if (checkpoints.isEmpty() || output - checkpoints.get(checkpoints.size() - 1).output >= spacing) {
+                        checkpoints.add(new Checkpoint(bitPosition, output, compress(inflater.getWindow())));
+                    }
+                }
+            });
+
+            return new TarGzIndex(length, lastModified, checkpoints, scanEntries(gzip));
+        } finally {
+            gzip.close();
+        }
+    }
+
+    private static TarEntryIndex scanEntries(InputStream gzip) throws IOException {
+        TarEntryIndex entries = TarEntryIndex.scan(gzip);
+
+        // read the remaining data, which verifies the checksums of the gzip trailers
+        byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+        while (gzip.read(buffer) != -1) {
+            // discard
+        }
+        return entries;
+    }
+
+    private static boolean isBgzf(File archive) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(archive), BgzfBlocks.HEADER_SIZE);
+        try {
+            return BgzfBlocks.isBgzf(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the .gzi index next to the given BGZF archive if it is up to date, or scans the archive for its blocks.
+     */
+    private static BgzfIndex readBgzfIndex(File archive) throws IOException {
+        File sidecar = BgzfIndex.sidecarOf(archive);
+        if (sidecar.isFile() && sidecar.lastModified() >= archive.lastModified()) {
+            try {
+                return BgzfIndex.read(sidecar);
+            } catch (IOException e) {
+                // fall back to scanning the archive
+            }
+        }
+        return BgzfIndex.scan(archive);
+    }
+
+    /**
+     * Reads an index that was written with {@link #write(File)}.
+     * 
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file could not be read or is not an index
+     */
+    public static TarGzIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != MAGIC || version < 2 || version > VERSION) {
+                throw new IOException(file + " is not a tar.gz index");
+            }
+
+            long length = in.readLong();
+            long lastModified = in.readLong();
+
+            int count = in.readInt();
+            List<Checkpoint> checkpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long bitPosition = in.readLong();
+                long output = in.readLong();
+                int windowLength = in.readInt();
+                byte[] window = (windowLength < 0) ? null : new byte[windowLength];
+                if (window != null) {
+                    in.readFully(window);
+                }
+                checkpoints.add(new Checkpoint(bitPosition, output, window));
+            }
+
+            return new TarGzIndex(length, lastModified, checkpoints, TarEntryIndex.read(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index into the given file.
+     * 
+     * @param file the index file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(archiveLength);
+            out.writeLong(archiveLastModified);
+
+            out.writeInt(checkpoints.size());
+            for (Checkpoint checkpoint : checkpoints) {
+                out.writeLong(checkpoint.bitPosition);
+                out.writeLong(checkpoint.output);
+                if (checkpoint.window == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(checkpoint.window.length);
+                    out.write(checkpoint.window);
+                }
+            }
+
+            entries.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns whether the index matches the given archive, i.e. whether the size and modification time of the archive
+     * are the same as when the index was built.
+     * 
+     * @param archive the tar.gz archive
+     * @return true if the index can be used for the archive
+     */
+    public boolean isValidFor(File archive) {
+        return archive.length() == archiveLength && archive.lastModified() == archiveLastModified;
+    }
+
+    /**
+     * Returns the entries of the indexed archive.
+     * 
+     * @return the entries in the order of the archive
+     */
+    public List<ArchiveEntryInfo> list() {
+        return entries.list();
+    }
+
+    /**
+     * Opens the data of the entry with the given name, decompressing only the archive data from the closest checkpoint
+     * on.
+     * 
+     * @param archive the tar.gz archive the index was built from
+     * @param name the name of the entry
+     * @return a stream of the entry data, or null if the archive contains no such entry
+     * @throws IOException if the archive could not be read or has changed since the index was built
+     */
+    public InputStream open(File archive, String name) throws IOException {
+        if (!isValidFor(archive)) {
+            throw new IOException("Index is out of date for " + archive);
+        }
+
+        TarEntryIndex.Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        Checkpoint checkpoint = checkpointBefore(entry.dataOffset);
+
+        FileInputStream source = new FileInputStream(archive);
+        try {
+            source.getChannel().position(checkpoint.bitPosition >>> 3);
+            InputStream gzip;
+            if (checkpoint.window == null) {
+                gzip = new GzipCompressorInputStream(new BufferedInputStream(source), true);
+            } else {
+                gzip = BlockGzipInputStream.resume(source, checkpoint.bitPosition, checkpoint.output,
+                        decompress(checkpoint.window));
+            }
+
+            long skip = entry.dataOffset - checkpoint.output;
+            if (IOUtils.skip(gzip, skip) != skip) {
+                throw new IOException("Unexpected end of " + archive);
+            }
+
+            return new LimitedInputStream(gzip, entry.size);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(source);
+            throw e;
+        }
+    }
+
+    int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    private Checkpoint checkpointBefore(long offset) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints.get(mid).output <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return checkpoints.get(low);
+    }
+
+    private static byte[] compress(byte[] window) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(window);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(window.length / 2);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+
+            byte[] window = new byte[BlockInflater.WINDOW_SIZE];
+            int length = 0;
+            while (!inflater.finished() && length < window.length) {
+                int n = inflater.inflate(window, length, window.length - length);
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt checkpoint in tar.gz index");
+                }
+                length += n;
+            }
+            return (length == window.length) ? window : Arrays.copyOf(window, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt checkpoint in tar.gz index", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * A point at which decompression can be resumed.
+     */
+    private static final class Checkpoint {
+        /**
+         * Position of the deflate block or gzip member in the archive, in bits.
+         */
+        private final long bitPosition;
+        /**
+         * Offset of the block in the uncompressed data.
+         */
+        private final long output;
+        /**
+         * The deflated 32 KiB of uncompressed data preceding the block, or null if the checkpoint is the start of a
+         * gzip member.
+         */
+        private final byte[] window;
+
+        Checkpoint(long bitPosition, long output, byte[] window) {
+            this.bitPosition = bitPosition;
+            this.output = output;
+            this.window = window;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TarGzIndex[entries=%d, checkpoints=%d]", entries.entries().size(), checkpoints.size());
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Random access to the entries of an uncompressed tar archive, backed by an index of the entry locations.
+ * <br>
+ * Tar archives have no central directory, so finding an entry otherwise means reading all headers before it. The
+ * index records the name, header and data offset, size, mode and modification time of each entry, and is kept in a
+ * compact sidecar file next to the archive (the archive path plus {@link #SIDECAR_SUFFIX}). Entries are then looked up
+ * in the index, and their data is read by seeking straight to it.
+ * <br>
+ * Before each lookup, the size and modification time of the archive are compared to the indexed ones. If entries
+ * were appended to the archive (e.g. with {@code tar -r}), only the appended entries are indexed, otherwise a changed
+ * archive is indexed anew. An archive counts as appended to if its first header, the header of its last indexed entry
+ * and the block before the indexed end are unchanged.
+ * <br>
+ * The index is a separate API rather than part of {@link Archiver}, since it keeps a sidecar file next to the archive,
+ * which an Archiver never writes. It complements {@link TarGzIndex} and {@link TarXzIndex} for compressed tar archives. The sidecar is updated accordingly. If the sidecar can not be written, the index is only
+ * kept in memory.
+ */
+public final class TarIndex {
+
+    /**
+     * Suffix appended to the archive path to name its sidecar file.
+     */
+    public static final String SIDECAR_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4A544149; // JTAI
+    private static final int VERSION = 2;
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final File archive;
+    private final File sidecar;
+
+    private long length;
+    private long lastModified;
+    /**
+     * Offset at which the header of an appended entry starts.
+     */
+    private long end;
+    /**
+     * CRC32 of the block preceding the end, which identifies the indexed part of the archive when it was appended to.
+     */
+    private long endChecksum;
+    /**
+     * CRC32 of the first block of the archive.
+     */
+    private long startChecksum;
+    /**
+     * Offset and CRC32 of the header of the last indexed entry.
+     */
+    private long lastHeaderOffset;
+    private long lastHeaderChecksum;
+    private TarEntryIndex entries;
+
+    private TarIndex(File archive, File sidecar) {
+        this.archive = archive;
+        this.sidecar = sidecar;
+    }
+
+    /**
+     * Opens the index of the given tar archive, reading it from the sidecar file of the archive if it is up to date,
+     * and creating or updating it otherwise.
+     * 
+     * @param archive the tar archive
+     * @return the index of the archive
+     * @throws FileNotFoundException if the archive does not exist
+     * @throws IOException if the archive could not be read
+     */
+    public static TarIndex open(File archive) throws IOException {
+        return open(archive, new File(archive.getPath() + SIDECAR_SUFFIX));
+    }
+
+    /**
+     * Opens the index of the given tar archive, using the given sidecar file.
+     * 
+     * @param archive the tar archive
+     * @param sidecar the file to keep the index in
+     * @return the index of the archive
+     * @throws FileNotFoundException if the archive does not exist
+     * @throws IOException if the archive could not be read
+     */
+    public static TarIndex open(File archive, File sidecar) throws IOException {
+        if (!archive.isFile()) {
+            throw new FileNotFoundException(archive.getPath());
+        }
+
+        TarIndex index = new TarIndex(archive, sidecar);
+        if (index.readSidecar()) {
+            index.refresh();
+        } else {
+            index.rebuild();
+            index.writeSidecar();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the entries of the archive.
+     * 
+     * @return the entries in the order of the archive
+     * @throws IOException if the archive could not be re-indexed
+     */
+    public synchronized List<ArchiveEntryInfo> list() throws IOException {
+        refresh();
+        return entries.list();
+    }
+
+    /**
+     * Returns the entry with the given name.
+     * 
+     * @param name the name of the entry
+     * @return the entry, or null if the archive contains no such entry
+     * @throws IOException if the archive could not be re-indexed
+     */
+    public synchronized ArchiveEntryInfo getEntry(String name) throws IOException {
+        TarEntryIndex.Entry entry = lookup(name);
+        if (entry == null) {
+            return null;
+        }
+        return new ArchiveEntryInfo(entry.name, entry.size, new Date(entry.lastModified), entry.directory);
+    }
+
+    /**
+     * Opens the data of the entry with the given name.
+     * 
+     * @param name the name of the entry
+     * @return a stream of the entry data, or null if the archive contains no such entry
+     * @throws IOException if the archive could not be read
+     */
+    public InputStream stream(String name) throws IOException {
+        TarEntryIndex.Entry entry;
+        synchronized (this) {
+            entry = lookup(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            channel.position(entry.dataOffset);
+            return new LimitedInputStream(Channels.newInputStream(channel), entry.size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Extracts the entry with the given name into the given destination directory, transferring its data straight
+     * from the archive file.
+     * 
+     * @param name the name of the entry
+     * @param destination the directory to extract the entry into
+     * @return the extracted file, or null if the archive contains no such entry
+     * @throws IOException if the archive could not be read, or the file could not be written
+     * @throws IllegalArgumentException if the destination is not a directory
+     */
+    public File extract(String name, File destination) throws IOException, IllegalArgumentException {
+        IOUtils.requireDirectory(destination);
+
+        TarEntryIndex.Entry entry;
+        synchronized (this) {
+            entry = lookup(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        TarArchiveEntry tarEntry = new TarArchiveEntry(entry.name);
+        tarEntry.setMode(entry.mode);
+        tarEntry.setSize(entry.size);
+
+        File file = new File(destination, entry.name);
+        if (entry.directory) {
+            file.mkdirs();
+            FileModeMapper.map(tarEntry, file);
+            return file;
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            FileModeMapper.transfer(tarEntry, channel, entry.dataOffset, entry.size, file);
+        } finally {
+            channel.close();
+        }
+        return file;
+    }
+
+    private TarEntryIndex.Entry lookup(String name) throws IOException {
+        refresh();
+        return entries.get(name);
+    }
+
+    /**
+     * Brings the index up to date with the archive, if the archive has changed since it was indexed.
+     */
+    private void refresh() throws IOException {
+        long currentLength = archive.length();
+        long currentLastModified = archive.lastModified();
+        if (currentLength == length && currentLastModified == lastModified) {
+            return;
+        }
+
+        if (currentLength > length && isPrefixUnchanged()) {
+            // entries were appended, the previous entries are unchanged
+            scan();
+        } else {
+            rebuild();
+        }
+
+        writeSidecar();
+    }
+
+    /**
+     * Checks whether the indexed part of the archive is still in place. A single block is not enough, e.g. the last
+     * data block of an entry is often all zeros, just like the blocks of a different archive at the same offset.
+     */
+    private boolean isPrefixUnchanged() throws IOException {
+        return checksumAt(end - BLOCK_SIZE) == endChecksum && checksumAt(0) == startChecksum
+            && checksumAt(lastHeaderOffset) == lastHeaderChecksum;
+    }
+
+    private void rebuild() throws IOException {
+        entries = new TarEntryIndex();
+        end = 0;
+        scan();
+    }
+
+    private void scan() throws IOException {
+        length = archive.length();
+        lastModified = archive.lastModified();
+
+        FileInputStream in = new FileInputStream(archive);
+        try {
+            in.getChannel().position(end);
+            end = entries.scan(new BufferedInputStream(in), end);
+        } finally {
+            in.close();
+        }
+
+        lastHeaderOffset = 0;
+        for (TarEntryIndex.Entry entry : entries.entries()) {
+            lastHeaderOffset = Math.max(lastHeaderOffset, entry.headerOffset);
+        }
+
+        endChecksum = checksumAt(end - BLOCK_SIZE);
+        startChecksum = checksumAt(0);
+        lastHeaderChecksum = checksumAt(lastHeaderOffset);
+    }
+
+    /**
+     * Returns the CRC32 of the block at the given offset, or 0 if the offset is negative.
+     */
+    private long checksumAt(long offset) throws IOException {
+        if (offset < 0) {
+            return 0;
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            while (block.hasRemaining() && channel.read(block, offset + block.position()) > 0) {
+                // read the whole block
+            }
+        } finally {
+            channel.close();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), 0, block.position());
+        return crc.getValue();
+    }
+
+    private boolean readSidecar() throws IOException {
+        if (!sidecar.isFile()) {
+            return false;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            length = in.readLong();
+            lastModified = in.readLong();
+            end = in.readLong();
+            endChecksum = in.readLong();
+            startChecksum = in.readLong();
+            lastHeaderOffset = in.readLong();
+            lastHeaderChecksum = in.readLong();
+            entries = TarEntryIndex.read(in);
+            return true;
+        } catch (IOException e) {
+            // a corrupt sidecar is replaced
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeSidecar() {
+        File temp = new File(sidecar.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeLong(end);
+                out.writeLong(endChecksum);
+                out.writeLong(startChecksum);
+                out.writeLong(lastHeaderOffset);
+                out.writeLong(lastHeaderChecksum);
+                entries.write(out);
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // the index remains usable in memory
+            temp.delete();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TarIndex[archive=%s, entries=%d]", archive, entries.entries().size());
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+/**
+ * A random access index for tar.xz archives.
+ * <br>
+ * The index at the end of an .xz file records the size of every block, which lets {@link SeekableXZInputStream} seek
+ * to any offset of the uncompressed data by decoding only the block that contains it. Building this index
+ * decompresses the archive once and records the uncompressed offset of every tar entry. Opening an entry then seeks
+ * straight to its data, s.t. only the blocks holding the entry are decoded. Archives that consist of a single block
+ * (e.g. from single-threaded {@code xz}) are still decoded from the start; archives created with more than one thread
+ * (see {@link CompressionOptions#setThreads(int)}) or with {@code xz -T} consist of several blocks.
+ * <br>
+ * The index can be written to a sidecar file and read back. It remembers the size and modification time of the
+ * archive it was built from, and refuses to open entries of an archive that has changed since.
+ */
+public final class TarXzIndex {
+
+    private static final int MAGIC = 0x4A545849; // JTXI
+    private static final int VERSION = 1;
+
+    private final long archiveLength;
+    private final long archiveLastModified;
+    private final TarEntryIndex entries;
+
+    private TarXzIndex(long archiveLength, long archiveLastModified, TarEntryIndex entries) {
+        this.archiveLength = archiveLength;
+        this.archiveLastModified = archiveLastModified;
+        this.entries = entries;
+    }
+
+    /**
+     * Builds the index of the given tar.xz archive.
+     * 
+     * @param archive the tar.xz archive
+     * @return the index of the archive
+     * @throws IOException if the archive could not be read or is not a valid tar.xz archive
+     */
+    public static TarXzIndex build(File archive) throws IOException {
+        long length = archive.length();
+        long lastModified = archive.lastModified();
+
+        InputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(archive));
+        try {
+            InputStream tar = new BufferedInputStream(xz);
+            TarEntryIndex entries = TarEntryIndex.scan(tar);
+
+            // read the remaining data, which verifies the checks of the blocks
+            byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+            while (tar.read(buffer) != -1) {
+                // discard
+            }
+            return new TarXzIndex(length, lastModified, entries);
+        } finally {
+            xz.close();
+        }
+    }
+
+    /**
+     * Reads an index that was written with {@link #write(File)}.
+     * 
+     * @param file the index file
+     * @return the index
+     * @throws IOException if the file could not be read or is not an index
+     */
+    public static TarXzIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a tar.xz index");
+            }
+
+            long length = in.readLong();
+            long lastModified = in.readLong();
+
+            return new TarXzIndex(length, lastModified, TarEntryIndex.read(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the index into the given file.
+     * 
+     * @param file the index file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(archiveLength);
+            out.writeLong(archiveLastModified);
+
+            entries.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns whether the index matches the given archive, i.e. whether the size and modification time of the archive
+     * are the same as when the index was built.
+     * 
+     * @param archive the tar.xz archive
+     * @return true if the index can be used for the archive
+     */
+    public boolean isValidFor(File archive) {
+        return archive.length() == archiveLength && archive.lastModified() == archiveLastModified;
+    }
+
+    /**
+     * Returns the entries of the indexed archive.
+     * 
+     * @return the entries in the order of the archive
+     */
+    public List<ArchiveEntryInfo> list() {
+        return entries.list();
+    }
+
+    /**
+     * Opens the data of the entry with the given name, decompressing only the blocks of the archive that hold it.
+     * 
+     * @param archive the tar.xz archive the index was built from
+     * @param name the name of the entry
+     * @return a stream of the entry data, or null if the archive contains no such entry
+     * @throws IOException if the archive could not be read or has changed since the index was built
+     */
+    public InputStream open(File archive, String name) throws IOException {
+        if (!isValidFor(archive)) {
+            throw new IOException("Index is out of date for " + archive);
+        }
+
+        TarEntryIndex.Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(archive));
+        try {
+            xz.seek(entry.dataOffset);
+            return new LimitedInputStream(xz, entry.size);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(xz);
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TarXzIndex[entries=%d]", entries.entries().size());
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class for creating and using the worker pools of the parallel stream implementations.
+ */
+final class ThreadPools {
+
+    private ThreadPools() {
+
+    }
+
+    /**
+     * Creates a new fixed size thread pool of daemon threads, s.t. a pool that was not shut down properly does not
+     * keep the JVM alive.
+     * 
+     * @param threads the amount of threads
+     * @param name the name prefix of the threads
+     * @return a new ExecutorService
+     */
+    static ExecutorService newFixedThreadPool(int threads, final String name) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "jarchivelib-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Waits for the given future and returns its result. Exceptions thrown by the task are unwrapped and rethrown as
+     * IOExceptions.
+     * 
+     * @param future the future to wait for
+     * @param <T> the result type
+     * @return the result of the task
+     * @throws IOException if the task failed, or the calling thread was interrupted
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for worker");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Shuts down the given pool and waits until all of its tasks have completed, s.t. no worker outlives the operation
+     * that started it. Running tasks are not interrupted, and an interrupt of the calling thread is only restored once
+     * the pool has terminated.
+     * 
+     * @param executor the pool to shut down
+     */
+    static void shutdownAndAwait(ExecutorService executor) {
+        executor.shutdown();
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
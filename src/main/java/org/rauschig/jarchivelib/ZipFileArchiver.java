@@ -15,29 +15,260 @@
  */
 package org.rauschig.jarchivelib;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 
 /**
  * Archiver that overwrites the extraction of Zip archives. It provides a wrapper for ZipFile as an ArchiveInputStream
  * to retrieve file attributes properly.
+ * <br>
+ * Entries are deflated with the level of the {@link CompressionOptions}. If the options specify more than one thread,
+ * archives are created with a {@link ParallelZipArchiveOutputStream}.
  */
 class ZipFileArchiver extends CommonsArchiver {
 
     ZipFileArchiver() {
-        super(ArchiveFormat.ZIP);
+        this(ArchiveFormat.ZIP, new CompressionOptions());
+    }
+
+    /**
+     * Creates a ZipFileArchiver for the given zip based archive format (ZIP or JAR).
+     *
+     * @param archiveFormat the archive format
+     * @param options the compression options
+     */
+    ZipFileArchiver(ArchiveFormat archiveFormat, CompressionOptions options) {
+        this(archiveFormat, options, new ReadOptions());
+    }
+
+    /**
+     * Creates a ZipFileArchiver for the given zip based archive format (ZIP or JAR).
+     *
+     * @param archiveFormat the archive format
+     * @param options the compression options
+     * @param readOptions the options for reading archives
+     */
+    ZipFileArchiver(ArchiveFormat archiveFormat, CompressionOptions options, ReadOptions readOptions) {
+        super(archiveFormat, options, readOptions);
     }
 
     @Override
     protected ArchiveInputStream createArchiveInputStream(File archive) throws IOException {
-        return new ZipFileArchiveInputStream(new ZipFile(archive));
+        ArchiveHandleCache.Lease<ZipFile> lease = leaseZipFile(archive);
+        return new ZipFileArchiveInputStream(lease.get(), lease);
+    }
+
+    /**
+     * Extracts the accepted entries using the central directory. Entries selected by name are looked up directly, all
+     * other entries are not read at all. If the options specify more than one thread, the entries are extracted by a
+     * {@link ParallelZipExtractor}.
+     */
+    @Override
+    public void extract(File archive, File destination, ExtractOptions options) throws IOException {
+        assertExtractSource(archive);
+
+        IOUtils.requireDirectory(destination);
+
+        ArchiveHandleCache.Lease<ZipFile> lease = leaseZipFile(archive);
+        ZipFile file = lease.get();
+        FileChannel channel = null;
+        try {
+            List<ZipArchiveEntry> entries = acceptedEntries(file, options.getFilter());
+
+            // unchanged entries are dropped before any of their data is read
+            IncrementalExtraction incremental = IncrementalExtraction.of(destination, options);
+            if (incremental != null && incremental.isDeletingRemoved()) {
+                // the files of entries that are not extracted are kept
+                Enumeration<ZipArchiveEntry> all = file.getEntries();
+                while (all.hasMoreElements()) {
+                    incremental.retain(all.nextElement());
+                }
+            }
+            if (incremental != null) {
+                List<ZipArchiveEntry> changed = new ArrayList<>(entries.size());
+                for (ZipArchiveEntry entry : entries) {
+                    if (!incremental.skip(entry)) {
+                        changed.add(entry);
+                    }
+                }
+                entries = changed;
+            }
+
+            // STORED entries are transferred straight from the archive file
+            channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+
+            if (options.getThreads() > 1) {
+                new ParallelZipExtractor(this, file, channel, destination, options.getThreads()).extract(entries,
+                        incremental);
+            } else {
+                DirectoryCache directories = new DirectoryCache();
+                for (ZipArchiveEntry entry : entries) {
+                    extractEntry(file, channel, entry, destination, directories);
+                }
+                if (incremental != null) {
+                    incremental.finish();
+                }
+                directories.applyModes();
+            }
+        } finally {
+            IOUtils.closeQuietly(channel);
+            lease.close();
+        }
+    }
+
+    /**
+     * Leases the given archive from the handle cache of the read options, or opens it if there is none. A ZipFile
+     * reads entries with positional reads, so a cached ZipFile is shared by all concurrent users.
+     */
+    private ArchiveHandleCache.Lease<ZipFile> leaseZipFile(File archive) throws IOException {
+        return leaseZipFile(archive, false);
+    }
+
+    /**
+     * Leases the given archive like {@link #leaseZipFile(File)}. If only the central directory is read, the local
+     * file headers are not read, which leaves the data offsets of the entries unknown. Such a ZipFile is cached
+     * separately from one that has read all local file headers.
+     */
+    private ArchiveHandleCache.Lease<ZipFile> leaseZipFile(File archive, final boolean centralDirectoryOnly)
+        throws IOException {
+        ArchiveHandleCache cache = getReadOptions().getHandleCache();
+        if (cache == null) {
+            return ArchiveHandleCache.Lease.of(openZipFile(archive, centralDirectoryOnly));
+        }
+
+        String variant = centralDirectoryOnly ? "central-directory" : "";
+        return cache.lease(archive, ZipFile.class, variant, true, new ArchiveHandleCache.Opener<ZipFile>() {
+            @Override
+            public ZipFile open(File file) throws IOException {
+                return openZipFile(file, centralDirectoryOnly);
+            }
+        });
+    }
+
+    /**
+     * Opens the given archive as ZipFile, which reads it through a memory mapping if the read options say so.
+     * Unless only the central directory is read, the local file header of every entry is read as well, which
+     * extraction needs for the data offsets of the entries.
+     */
+    private ZipFile openZipFile(File archive, boolean centralDirectoryOnly) throws IOException {
+        if (!getReadOptions().isMemoryMapped()) {
+            return new ZipFile(archive, "UTF8", true, centralDirectoryOnly);
+        }
+
+        MappedFileChannel channel = MappedFileChannel.open(archive);
+        try {
+            return new ZipFile(channel, archive.getPath(), "UTF8", true, centralDirectoryOnly);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static List<ZipArchiveEntry> acceptedEntries(ZipFile file, EntryFilter filter) {
+        List<ZipArchiveEntry> accepted = new ArrayList<>();
+
+        if (filter instanceof EntryFilters.NameFilter) {
+            for (String name : ((EntryFilters.NameFilter) filter).getNames()) {
+                ZipArchiveEntry entry = file.getEntry(name);
+                if (entry == null) {
+                    entry = file.getEntry(name + "/");
+                }
+                if (entry != null) {
+                    accepted.add(entry);
+                }
+            }
+        } else {
+            Enumeration<ZipArchiveEntry> entries = file.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                if (filter == EntryFilters.all() || filter.accept(ArchiveEntryInfo.of(entry))) {
+                    accepted.add(entry);
+                }
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Extracts a single entry of the ZipFile. The data of STORED entries is transferred from the given channel of the
+     * archive file, all other entries are inflated by the ZipFile.
+     */
+    void extractEntry(ZipFile file, FileChannel channel, ZipArchiveEntry entry, File destination,
+        DirectoryCache directories) throws IOException {
+        if (!entry.isDirectory() && entry.getMethod() == ZipEntry.STORED && entry.getDataOffset() >= 0
+            && entry.getSize() > 0 && file.canReadEntryData(entry)) {
+            transferEntry(entry, channel, entry.getDataOffset(), destination, directories);
+            return;
+        }
+
+        InputStream data = file.getInputStream(entry);
+        try {
+            extractEntry(entry, data, destination, directories);
+        } finally {
+            IOUtils.closeQuietly(data);
+        }
+    }
+
+    /**
+     * Lists the entries from the central directory, without reading any local file headers or entry data.
+     */
+    @Override
+    public List<ArchiveEntryInfo> list(File archive) throws IOException {
+        assertExtractSource(archive);
+
+        ArchiveHandleCache.Lease<ZipFile> lease = leaseZipFile(archive, true);
+        try {
+            List<ArchiveEntryInfo> entries = new ArrayList<>();
+            Enumeration<ZipArchiveEntry> enumeration = lease.get().getEntriesInPhysicalOrder();
+            while (enumeration.hasMoreElements()) {
+                entries.add(ArchiveEntryInfo.of(enumeration.nextElement()));
+            }
+            return entries;
+        } finally {
+            lease.close();
+        }
+    }
+
+    @Override
+    protected ArchiveOutputStream createArchiveOutputStream(OutputStream out) throws IOException {
+        ArchiveOutputStream archiveOutputStream = super.createArchiveOutputStream(out);
+        CompressionOptions options = getCompressionOptions();
+        ((ZipArchiveOutputStream) archiveOutputStream).setLevel(options.getLevel());
+
+        if (options.getThreads() > 1) {
+            return new ParallelZipArchiveOutputStream((ZipArchiveOutputStream) archiveOutputStream, options);
+        }
+        return archiveOutputStream;
+    }
+
+    /**
+     * Files added to a {@link ParallelZipArchiveOutputStream} are read by its worker threads, instead of being copied
+     * into an intermediate buffer first.
+     */
+    @Override
+    protected void createArchiveEntry(File file, String entryName, ArchiveOutputStream archive) throws IOException {
+        if (archive instanceof ParallelZipArchiveOutputStream) {
+            ((ParallelZipArchiveOutputStream) archive).addEntry(file, entryName);
+        } else {
+            super.createArchiveEntry(file, entryName, archive);
+        }
     }
 
     /**
@@ -46,13 +277,25 @@ class ZipFileArchiver extends CommonsArchiver {
     static class ZipFileArchiveInputStream extends ArchiveInputStream {
 
         private ZipFile file;
+        private Closeable lease;
 
         private Enumeration<ZipArchiveEntry> entries;
         private ZipArchiveEntry currentEntry;
         private InputStream currentEntryStream;
 
         public ZipFileArchiveInputStream(ZipFile file) {
+            this(file, file);
+        }
+
+        /**
+         * Creates a stream over the given ZipFile, which releases the given lease instead of closing the file.
+         * 
+         * @param file the zip file to read
+         * @param lease the lease of the zip file
+         */
+        ZipFileArchiveInputStream(ZipFile file, Closeable lease) {
             this.file = file;
+            this.lease = lease;
         }
 
         @Override
@@ -109,7 +352,7 @@ class ZipFileArchiver extends CommonsArchiver {
 
         private void closeFile() {
             try {
-                file.close();
+                lease.close();
             } catch (IOException e) {
                 // close quietly
             }
@@ -21,15 +21,20 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -115,6 +120,47 @@ public abstract class AbstractArchiverTest extends AbstractResourceTest {
         assertExtractionWasSuccessful();
     }
 
+    @Test
+    public void create_intoOutputStream_properlyCreatesArchive() throws Exception {
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+
+        archiver.create(output, ARCHIVE_DIR);
+
+        assertFalse("destination stream should not be closed", closed[0]);
+
+        File createdArchive = new File(ARCHIVE_CREATE_DIR, archive.getName());
+        CompressorGzipParallelTest.write(output.toByteArray(), createdArchive);
+
+        archiver.extract(createdArchive, ARCHIVE_EXTRACT_DIR);
+        assertExtractionWasSuccessful();
+    }
+
+    @Test
+    public void create_intoChannel_properlyCreatesArchive() throws Exception {
+        File createdArchive = new File(ARCHIVE_CREATE_DIR, archive.getName());
+
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(createdArchive);
+            FileChannel channel = output.getChannel();
+
+            archiver.create(channel, ARCHIVE_DIR.listFiles());
+
+            assertTrue("destination channel should not be closed", channel.isOpen());
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+
+        archiver.extract(createdArchive, ARCHIVE_EXTRACT_DIR);
+        assertDirectoryStructureEquals(ARCHIVE_DIR, ARCHIVE_EXTRACT_DIR);
+    }
+
     @Test(expected = FileNotFoundException.class)
     public void create_withNonExistingSource_fails() throws Exception {
         archiver.create("archive", ARCHIVE_CREATE_DIR, NON_EXISTING_FILE);
@@ -135,6 +181,132 @@ public abstract class AbstractArchiverTest extends AbstractResourceTest {
         archiver.create("archive", NON_WRITABLE_DIR, ARCHIVE_DIR);
     }
 
+    @Test
+    public void extract_withNameFilter_extractsOnlyNamedEntries() throws Exception {
+        ExtractOptions options = new ExtractOptions()
+                .setFilter(EntryFilters.names("file.txt", "folder/subfolder/subfolder_file.txt", "nonexisting"));
+
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, options);
+
+        assertFileContentEquals(new File(ARCHIVE_DIR, "file.txt"), new File(ARCHIVE_EXTRACT_DIR, "file.txt"));
+        assertFileContentEquals(new File(ARCHIVE_DIR, "folder/subfolder/subfolder_file.txt"),
+                new File(ARCHIVE_EXTRACT_DIR, "folder/subfolder/subfolder_file.txt"));
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "folder/folder_file.txt").exists());
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "permissions").exists());
+    }
+
+    @Test
+    public void extract_withGlobFilter_extractsOnlyMatchingEntries() throws Exception {
+        ExtractOptions options = new ExtractOptions().setFilter(EntryFilters.glob("folder/**"));
+
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, options);
+
+        assertDirectoryStructureEquals(new File(ARCHIVE_DIR, "folder"), new File(ARCHIVE_EXTRACT_DIR, "folder"));
+        assertFilesEquals(new File(ARCHIVE_DIR, "folder"), new File(ARCHIVE_EXTRACT_DIR, "folder"));
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "file.txt").exists());
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "permissions").exists());
+    }
+
+    @Test
+    public void extract_withThreads_properlyExtractsArchive() throws Exception {
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setThreads(3));
+
+        assertExtractionWasSuccessful();
+    }
+
+    @Test
+    public void extract_withThreads_recordsStageStatistics() throws Exception {
+        // archives with random access are extracted by reading entries directly, not through a pipeline
+        assumeFalse(archiver instanceof ZipFileArchiver || archiver instanceof SevenZArchiver);
+
+        ExtractStatistics statistics = new ExtractStatistics();
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setThreads(3).setStatistics(statistics));
+
+        assertExtractionWasSuccessful();
+        assertTrue(statistics.getReadStage().getBytes() > 0);
+        assertTrue(statistics.getWriteStage().getBytes() > 0);
+        for (StageStatistics stage : new StageStatistics[] { statistics.getReadStage(), statistics.getParseStage(),
+                statistics.getWriteStage() }) {
+            assertTrue(stage.getName(), stage.getStarvedTime(TimeUnit.NANOSECONDS) >= 0);
+            assertTrue(stage.getName(), stage.getBlockedTime(TimeUnit.NANOSECONDS) >= 0);
+        }
+    }
+
+    @Test
+    public void extract_withThreadsAndNameFilter_extractsOnlyNamedEntries() throws Exception {
+        ExtractOptions options = new ExtractOptions().setThreads(3).setFilter(EntryFilters.names("file.txt"));
+
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, options);
+
+        assertFileContentEquals(new File(ARCHIVE_DIR, "file.txt"), new File(ARCHIVE_EXTRACT_DIR, "file.txt"));
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "folder").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void extract_withThreadsAndUnwritableFile_fails() throws Exception {
+        // a directory in place of a file makes the writer fail
+        new File(ARCHIVE_EXTRACT_DIR, "file.txt").mkdirs();
+
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setThreads(3).setMemoryLimit(0));
+    }
+
+    @Test
+    public void extract_twiceWithSkipUnchanged_skipsUnchangedFiles() throws Exception {
+        ExtractStatistics first = new ExtractStatistics();
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setSkipUnchanged(true)
+                .setStatistics(first));
+
+        assertExtractionWasSuccessful();
+        assertEquals(8, first.getCreatedFiles());
+
+        File changed = new File(ARCHIVE_EXTRACT_DIR, "file.txt");
+        try (FileOutputStream out = new FileOutputStream(changed)) {
+            out.write("changed".getBytes());
+        }
+
+        ExtractStatistics second = new ExtractStatistics();
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setSkipUnchanged(true)
+                .setStatistics(second));
+
+        assertExtractionWasSuccessful();
+        assertEquals(0, second.getCreatedFiles());
+        assertEquals(1, second.getUpdatedFiles());
+        assertEquals(7, second.getSkippedFiles());
+    }
+
+    @Test
+    public void extract_withDeleteRemoved_deletesFilesNotInArchive() throws Exception {
+        File stale = new File(ARCHIVE_EXTRACT_DIR, "stale/folder/stale_file.txt");
+        assertTrue(stale.getParentFile().mkdirs());
+        assertTrue(stale.createNewFile());
+        assertTrue(new File(ARCHIVE_EXTRACT_DIR, "folder").mkdir());
+        assertTrue(new File(ARCHIVE_EXTRACT_DIR, "folder/stale_file.txt").createNewFile());
+
+        ExtractStatistics statistics = new ExtractStatistics();
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setDeleteRemoved(true)
+                .setStatistics(statistics));
+
+        assertExtractionWasSuccessful();
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "stale").exists());
+        assertFalse(new File(ARCHIVE_EXTRACT_DIR, "folder/stale_file.txt").exists());
+        assertEquals(2, statistics.getDeletedFiles());
+    }
+
+    @Test
+    public void extract_withDeleteRemovedAndFilter_keepsFilesOfFilteredEntries() throws Exception {
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR);
+        File stale = new File(ARCHIVE_EXTRACT_DIR, "stale_file.txt");
+        assertTrue(stale.createNewFile());
+
+        ExtractStatistics statistics = new ExtractStatistics();
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR, new ExtractOptions().setDeleteRemoved(true)
+                .setFilter(EntryFilters.names("file.txt")).setStatistics(statistics));
+
+        assertExtractionWasSuccessful();
+        assertFalse(stale.exists());
+        assertEquals(1, statistics.getDeletedFiles());
+    }
+
     @Test(expected = FileNotFoundException.class)
     public void extract_withNonExistingSource_fails() throws Exception {
         archiver.extract(NON_EXISTING_FILE, ARCHIVE_EXTRACT_DIR);
@@ -185,6 +357,37 @@ public abstract class AbstractArchiverTest extends AbstractResourceTest {
         }
     }
 
+    @Test
+    public void list_returnsCorrectEntries() throws Exception {
+        List<ArchiveEntryInfo> entries = archiver.list(archive);
+        List<String> names = new ArrayList<String>();
+
+        for (ArchiveEntryInfo entry : entries) {
+            String name = entry.getName().replaceAll("/$", ""); // remove trailing slashes for test compatibility
+            names.add(name);
+
+            if (name.endsWith("folder") || name.endsWith("subfolder") || name.endsWith("permissions")
+                    || name.endsWith("private_folder")) {
+                assertTrue(entry.getName() + " is a directory", entry.isDirectory());
+            } else {
+                assertFalse(entry.getName() + " is not a directory", entry.isDirectory());
+                assertEquals(new File(ARCHIVE_DIR, name).length(), entry.getSize());
+            }
+        }
+
+        assertEquals(12, names.size());
+        assertTrue(names.contains("file.txt"));
+        assertTrue(names.contains("folder"));
+        assertTrue(names.contains("folder/folder_file.txt"));
+        assertTrue(names.contains("folder/subfolder/subfolder_file.txt"));
+        assertTrue(names.contains("permissions/private_folder/private_file.txt"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void list_withNonExistingSource_fails() throws Exception {
+        archiver.list(NON_EXISTING_FILE);
+    }
+
     @Test
     public void entry_isDirectory_behavesCorrectly() throws Exception {
         ArchiveStream stream = null;
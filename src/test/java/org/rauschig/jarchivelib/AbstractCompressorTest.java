@@ -19,7 +19,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -81,6 +85,22 @@ public abstract class AbstractCompressorTest extends AbstractResourceTest {
         assertCompressionWasSuccessful();
     }
 
+    @Test
+    public void compressingStream_compressesStreamCorrectly() throws Exception {
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            input = new FileInputStream(original);
+            output = compressor.compressingStream(new FileOutputStream(compressDestinationFile));
+            IOUtils.copy(input, output);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+
+        assertCompressionWasSuccessful();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void compress_nonReadableFile_throwsException() throws Exception {
         try {
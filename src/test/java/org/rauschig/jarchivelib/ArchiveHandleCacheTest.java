@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class ArchiveHandleCacheTest extends AbstractResourceTest {
+
+    private final ArchiveHandleCache cache = new ArchiveHandleCache(1);
+
+    @Test
+    public void lease_sameArchive_isServedFromCache() throws Exception {
+        File archive = new File(RESOURCES_DIR, "archive.zip");
+
+        ArchiveHandleCache.Lease<Handle> first = lease(archive, true);
+        first.close();
+        ArchiveHandleCache.Lease<Handle> second = lease(archive, true);
+        second.close();
+
+        assertSame(first.get(), second.get());
+        assertFalse(second.get().closed);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void lease_exclusiveArchiveInUse_opensUncachedArchive() throws Exception {
+        File archive = new File(RESOURCES_DIR, "archive.zip");
+
+        ArchiveHandleCache.Lease<Handle> first = lease(archive, false);
+        ArchiveHandleCache.Lease<Handle> second = lease(archive, false);
+
+        assertNotSame(first.get(), second.get());
+        assertFalse(second.isCached());
+
+        second.close();
+        assertTrue(second.get().closed);
+        first.close();
+        assertFalse(first.get().closed);
+    }
+
+    @Test
+    public void lease_beyondMaximumSize_closesEvictedArchiveWhenReleased() throws Exception {
+        ArchiveHandleCache.Lease<Handle> first = lease(new File(RESOURCES_DIR, "archive.zip"), true);
+        lease(new File(RESOURCES_DIR, "archive.7z"), true).close();
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.size());
+        assertFalse(first.get().closed);
+
+        first.close();
+        assertTrue(first.get().closed);
+    }
+
+    @Test
+    public void lease_modifiedArchive_opensArchiveAgain() throws Exception {
+        File archive = new File(ARCHIVE_CREATE_DIR, "cached");
+        Files.copy(new File(RESOURCES_DIR, "archive.zip").toPath(), archive.toPath());
+
+        ArchiveHandleCache.Lease<Handle> first = lease(archive, true);
+        first.close();
+        assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+        ArchiveHandleCache.Lease<Handle> second = lease(archive, true);
+        second.close();
+
+        assertNotSame(first.get(), second.get());
+        assertTrue(first.get().closed);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void invalidateAll_closesUnusedArchives() throws Exception {
+        ArchiveHandleCache.Lease<Handle> lease = lease(new File(RESOURCES_DIR, "archive.zip"), true);
+        lease.close();
+
+        cache.invalidateAll();
+
+        assertEquals(0, cache.size());
+        assertTrue(lease.get().closed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_withZeroSize_throwsException() throws Exception {
+        new ArchiveHandleCache(0);
+    }
+
+    private ArchiveHandleCache.Lease<Handle> lease(File archive, boolean shared) throws IOException {
+        return cache.lease(archive, Handle.class, shared, new ArchiveHandleCache.Opener<Handle>() {
+            @Override
+            public Handle open(File file) {
+                return new Handle();
+            }
+        });
+    }
+
+    private static class Handle implements Closeable {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
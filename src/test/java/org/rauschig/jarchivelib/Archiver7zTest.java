@@ -46,4 +46,18 @@ public class Archiver7zTest extends AbstractArchiverTest {
         expectedException.expectCause(CoreMatchers.<Throwable>instanceOf(StreamingNotSupportedException.class));
         super.extract_properlyExtractsArchiveStream();
     }
+
+    @Test
+    public void create_intoOutputStream_properlyCreatesArchive() throws Exception {
+        // 7z does not allow streaming
+        expectedException.expectCause(CoreMatchers.<Throwable>instanceOf(StreamingNotSupportedException.class));
+        super.create_intoOutputStream_properlyCreatesArchive();
+    }
+
+    @Test
+    public void create_intoChannel_properlyCreatesArchive() throws Exception {
+        // 7z does not allow streaming
+        expectedException.expectCause(CoreMatchers.<Throwable>instanceOf(StreamingNotSupportedException.class));
+        super.create_intoChannel_properlyCreatesArchive();
+    }
 }
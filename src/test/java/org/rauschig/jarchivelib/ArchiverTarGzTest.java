@@ -16,6 +16,7 @@
 package org.rauschig.jarchivelib;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
@@ -38,4 +39,18 @@ public class ArchiverTarGzTest extends AbstractArchiverTest {
         assertEquals(".tar.gz", getArchiver().getFilenameExtension());
     }
 
+    @Test
+    public void extract_withThreads_recordsStatistics() throws Exception {
+        ExtractStatistics statistics = new ExtractStatistics();
+
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR,
+                new ExtractOptions().setThreads(2).setStatistics(statistics));
+
+        assertExtractionWasSuccessful();
+        assertEquals(getArchive().length(), statistics.getReadStage().getBytes());
+        assertTrue(statistics.getDecompressStage().getBytes() > getArchive().length());
+        assertEquals(statistics.getParseStage().getBytes(), statistics.getWriteStage().getBytes());
+        assertTrue(statistics.getWriteStage().getBytes() > 0);
+    }
+
 }
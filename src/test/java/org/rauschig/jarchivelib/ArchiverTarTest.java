@@ -18,7 +18,12 @@ package org.rauschig.jarchivelib;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.junit.Test;
 
 public class ArchiverTarTest extends AbstractArchiverTest {
@@ -38,4 +43,25 @@ public class ArchiverTarTest extends AbstractArchiverTest {
         assertEquals(".tar", getArchiver().getFilenameExtension());
     }
 
+    @Test
+    public void extract_withNameFilterAndAppendedEntry_extractsLastEntryOfName() throws Exception {
+        File archive = new File(ARCHIVE_CREATE_DIR, "appended.tar");
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new FileOutputStream(archive))) {
+            for (String content : new String[] { "first", "second" }) {
+                byte[] data = content.getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry("file.txt");
+                entry.setSize(data.length);
+                out.putArchiveEntry(entry);
+                out.write(data);
+                out.closeArchiveEntry();
+            }
+        }
+
+        getArchiver().extract(archive, ARCHIVE_EXTRACT_DIR,
+                new ExtractOptions().setFilter(EntryFilters.names("file.txt")));
+
+        File file = new File(ARCHIVE_EXTRACT_DIR, "file.txt");
+        assertEquals("second", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
 }
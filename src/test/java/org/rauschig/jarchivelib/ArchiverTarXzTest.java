@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class ArchiverTarXzTest extends AbstractArchiverTest {
+
+    @Override
+    protected Archiver getArchiver() {
+        return ArchiverFactory.createArchiver(ArchiveFormat.TAR, CompressionType.XZ);
+    }
+
+    @Override
+    protected File getArchive() {
+        return new File(RESOURCES_DIR, "archive.tar.xz");
+    }
+
+    @Test
+    public void getFilenameExtension_tarxz_returnsCorrectFilenameExtension() throws Exception {
+        assertEquals(".tar.xz", getArchiver().getFilenameExtension());
+    }
+
+    @Test
+    public void extract_multipleBlocksWithThreads_properlyExtractsArchive() throws Exception {
+        // small blocks s.t. the archive is split into several blocks, which are decompressed in parallel
+        CompressionOptions options = new CompressionOptions().setThreads(4).setBlockSize(1024);
+        Archiver archiver = ArchiverFactory.createArchiver(ArchiveFormat.TAR, CompressionType.XZ, options);
+
+        File archive = archiver.create("archive.tar.xz", ARCHIVE_CREATE_DIR, ARCHIVE_DIR);
+        ParallelXZCompressorInputStream blocks = ParallelXZCompressorInputStream.open(archive, options);
+        assertNotNull(blocks);
+        blocks.close();
+
+        archiver.extract(archive, ARCHIVE_EXTRACT_DIR);
+        assertExtractionWasSuccessful();
+    }
+
+}
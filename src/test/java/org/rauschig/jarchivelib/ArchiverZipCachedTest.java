@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class ArchiverZipCachedTest extends AbstractArchiverTest {
+
+    // shared by all tests, s.t. archives are served from the cache after the first test
+    private static final ArchiveHandleCache CACHE = new ArchiveHandleCache(2);
+
+    @Override
+    protected Archiver getArchiver() {
+        return ArchiverFactory.createArchiver(ArchiveFormat.ZIP, new ReadOptions().setHandleCache(CACHE));
+    }
+
+    @Override
+    protected File getArchive() {
+        return new File(RESOURCES_DIR, "archive.zip");
+    }
+
+    @Test
+    public void listAndExtract_useSeparateHandles() throws Exception {
+        ArchiveHandleCache cache = new ArchiveHandleCache(4);
+        Archiver archiver = ArchiverFactory.createArchiver(ArchiveFormat.ZIP,
+                new ReadOptions().setHandleCache(cache));
+
+        archiver.list(getArchive());
+        archiver.list(getArchive());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHits());
+
+        archiver.extract(getArchive(), ARCHIVE_EXTRACT_DIR);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMisses());
+
+        cache.invalidateAll();
+        assertExtractionWasSuccessful();
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.rauschig.jarchivelib.CompressorGzipParallelTest.readFully;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Test;
+
+public class ArchiverZipParallelTest extends AbstractArchiverTest {
+
+    @Override
+    protected Archiver getArchiver() {
+        // a small memory limit forces some of the compressed entries to be spilled into temporary files
+        return ArchiverFactory.createArchiver(ArchiveFormat.ZIP,
+                new CompressionOptions().setThreads(4).setMemoryLimit(2048));
+    }
+
+    @Override
+    protected File getArchive() {
+        return new File(RESOURCES_DIR, "archive.zip");
+    }
+
+    @Test
+    public void extract_withThreads_properlyExtractsArchive() throws Exception {
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR, new ExtractOptions().setThreads(4));
+
+        assertExtractionWasSuccessful();
+    }
+
+    @Test
+    public void extract_withThreads_terminatesWorkers() throws Exception {
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR, new ExtractOptions().setThreads(4));
+
+        // the pool has terminated once extract returns, but its threads may still be exiting
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("jarchivelib-unzip-")) {
+                thread.join(10000);
+                assertFalse(thread.getName(), thread.isAlive());
+            }
+        }
+    }
+
+    @Test
+    public void extract_withThreadsAndFilter_extractsOnlyMatchingEntries() throws Exception {
+        ExtractOptions options = new ExtractOptions().setThreads(4).setFilter(EntryFilters.glob("folder/**"));
+
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR, options);
+
+        assertDirectoryStructureEquals(new File(ARCHIVE_DIR, "folder"), new File(ARCHIVE_EXTRACT_DIR, "folder"));
+        assertFilesEquals(new File(ARCHIVE_DIR, "folder"), new File(ARCHIVE_EXTRACT_DIR, "folder"));
+    }
+
+    @Test
+    public void putArchiveEntry_writesEntriesInOrder() throws Exception {
+        File archive = new File(ARCHIVE_CREATE_DIR, "entries.zip");
+        byte[] data = new byte[16 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 7);
+        }
+
+        CompressionOptions options = new CompressionOptions().setThreads(4).setMemoryLimit(2048);
+        try (ParallelZipArchiveOutputStream out = new ParallelZipArchiveOutputStream(
+                new ZipArchiveOutputStream(new FileOutputStream(archive)), options)) {
+            out.putArchiveEntry(new ZipArchiveEntry("folder/"));
+            out.closeArchiveEntry();
+
+            for (int i = 0; i < 8; i++) {
+                out.putArchiveEntry(new ZipArchiveEntry("folder/file" + i + ".bin"));
+                out.write(data, 0, data.length - i);
+                out.closeArchiveEntry();
+            }
+        }
+
+        try (ZipFile file = new ZipFile(archive)) {
+            List<ZipArchiveEntry> entries = Collections.list(file.getEntriesInPhysicalOrder());
+            assertEquals(9, entries.size());
+            assertEquals("folder/", entries.get(0).getName());
+
+            for (int i = 0; i < 8; i++) {
+                ZipArchiveEntry entry = entries.get(i + 1);
+                assertEquals("folder/file" + i + ".bin", entry.getName());
+
+                try (InputStream input = file.getInputStream(entry)) {
+                    assertArrayEquals(Arrays.copyOf(data, data.length - i), readFully(input));
+                }
+            }
+        }
+    }
+
+}
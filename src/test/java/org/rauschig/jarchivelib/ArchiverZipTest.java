@@ -15,7 +15,14 @@
  */
 package org.rauschig.jarchivelib;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
 
 public class ArchiverZipTest extends AbstractArchiverTest {
 
@@ -29,4 +36,45 @@ public class ArchiverZipTest extends AbstractArchiverTest {
         return new File(RESOURCES_DIR, "archive.zip");
     }
 
+    @Test
+    public void extract_withCompareChecksums_updatesFilesWithSameSizeAndTime() throws Exception {
+        ExtractOptions options = new ExtractOptions().setSkipUnchanged(true);
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR, options);
+
+        // same size and modification time, but different content
+        File changed = new File(ARCHIVE_EXTRACT_DIR, "file.txt");
+        long lastModified = changed.lastModified();
+        byte[] data = new byte[(int) changed.length()];
+        Arrays.fill(data, (byte) 'x');
+        try (FileOutputStream out = new FileOutputStream(changed)) {
+            out.write(data);
+        }
+        changed.setLastModified(lastModified);
+
+        ExtractStatistics statistics = new ExtractStatistics();
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR, options.setStatistics(statistics));
+        assertEquals(8, statistics.getSkippedFiles());
+
+        statistics = new ExtractStatistics();
+        getArchiver().extract(getArchive(), ARCHIVE_EXTRACT_DIR,
+                options.setCompareChecksums(true).setStatistics(statistics));
+
+        assertExtractionWasSuccessful();
+        assertEquals(1, statistics.getUpdatedFiles());
+        assertEquals(7, statistics.getSkippedFiles());
+    }
+
+    @Test
+    public void list_corruptLocalFileHeader_listsEntriesFromCentralDirectory() throws Exception {
+        byte[] data = Files.readAllBytes(getArchive().toPath());
+        // extra field length of the first local file header, pointing beyond the end of the archive
+        data[28] = (byte) 0xFF;
+        data[29] = (byte) 0xFF;
+
+        File archive = new File(ARCHIVE_CREATE_DIR, "archive.zip");
+        Files.write(archive.toPath(), data);
+
+        assertEquals(12, getArchiver().list(archive).size());
+    }
+
 }
@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BitWriterTest {
+
+    @Test
+    public void writeBits_value_writesMostSignificantBitFirst() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BitWriter writer = new BitWriter(out);
+
+        writer.writeBits(3, 0x5);
+        writer.writeBits(32, 0xFFFFFFFFL);
+        writer.writeBits(5, 0x13);
+        writer.flush();
+
+        assertArrayEquals(new byte[] { (byte) 0xBF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF3 },
+                out.toByteArray());
+        assertEquals(40, writer.getBitsWritten());
+    }
+
+    @Test
+    public void writeBits_rangesAtAllAlignments_writeSameBitsAsSingleBits() throws Exception {
+        Random random = new Random(42);
+        byte[] source = new byte[4096];
+        random.nextBytes(source);
+
+        for (int prefix = 0; prefix < 8; prefix++) {
+            for (int from = 0; from < 8; from++) {
+                long count = 8 * 2000 + random.nextInt(8);
+
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                BitWriter single = new BitWriter(expected);
+                single.writeBits(prefix, 0x55);
+                for (long bit = from; bit < from + count; bit++) {
+                    single.writeBits(1, BitWriter.readBits(source, bit, 1));
+                }
+                single.flush();
+
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                BitWriter ranged = new BitWriter(actual);
+                ranged.writeBits(prefix, 0x55);
+                ranged.writeBits(source, from, count);
+                ranged.flush();
+
+                assertArrayEquals("prefix " + prefix + ", from " + from, expected.toByteArray(), actual.toByteArray());
+                assertEquals(single.getBitsWritten(), ranged.getBitsWritten());
+            }
+        }
+    }
+}
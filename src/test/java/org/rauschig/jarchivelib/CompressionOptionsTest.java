@@ -0,0 +1,190 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.tukaani.xz.XZInputStream;
+
+public class CompressionOptionsTest extends AbstractResourceTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setLevel_outOfRange_throwsException() throws Exception {
+        new CompressionOptions().setLevel(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setDictionarySize_tooSmall_throwsException() throws Exception {
+        new CompressionOptions().setDictionarySize(1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBlockSize_negative_throwsException() throws Exception {
+        new CompressionOptions().setBlockSize(-1);
+    }
+
+    @Test
+    public void setBlockSize_default_resetsBlockSize() throws Exception {
+        CompressionOptions options = new CompressionOptions().setBlockSize(64 * 1024);
+
+        assertEquals(CompressionOptions.DEFAULT_BLOCK_SIZE,
+                options.setBlockSize(CompressionOptions.DEFAULT_BLOCK_SIZE).getBlockSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBufferSize_zero_throwsException() throws Exception {
+        new CompressionOptions().setBufferSize(0);
+    }
+
+    @Test
+    public void compress_withSmallBufferSize_roundTrips() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(64 * 1024 + 17);
+
+        compress(CompressionType.GZIP, new CompressionOptions().setBufferSize(100), data);
+    }
+
+    @Test
+    public void extract_withSmallBufferSize_properlyExtractsArchive() throws Exception {
+        Archiver archiver = ArchiverFactory.createArchiver(ArchiveFormat.TAR, CompressionType.GZIP,
+                new CompressionOptions().setBufferSize(7));
+
+        archiver.extract(new File(RESOURCES_DIR, "archive.tar.gz"), ARCHIVE_EXTRACT_DIR);
+
+        assertDirectoryStructureEquals(ARCHIVE_DIR, ARCHIVE_EXTRACT_DIR);
+        assertFilesEquals(ARCHIVE_DIR, ARCHIVE_EXTRACT_DIR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBufferPool_null_throwsException() throws Exception {
+        new CompressionOptions().setBufferPool(null);
+    }
+
+    @Test
+    public void extract_withBufferPool_takesBuffersFromPool() throws Exception {
+        final AtomicInteger acquired = new AtomicInteger();
+        final AtomicInteger released = new AtomicInteger();
+        BufferPool pool = new BufferPool() {
+            @Override
+            public byte[] acquire(int size) {
+                acquired.incrementAndGet();
+                return new byte[size];
+            }
+
+            @Override
+            public void release(byte[] buffer) {
+                released.incrementAndGet();
+            }
+        };
+        Archiver archiver = ArchiverFactory.createArchiver(ArchiveFormat.TAR, CompressionType.GZIP,
+                new CompressionOptions().setBufferPool(pool));
+
+        archiver.extract(new File(RESOURCES_DIR, "archive.tar.gz"), ARCHIVE_EXTRACT_DIR);
+
+        assertFilesEquals(ARCHIVE_DIR, ARCHIVE_EXTRACT_DIR);
+        assertTrue(acquired.get() > 0);
+        assertEquals(acquired.get(), released.get());
+    }
+
+    @Test
+    public void compress_withUnpooledBuffers_roundTrips() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(64 * 1024 + 17);
+
+        compress(CompressionType.GZIP, new CompressionOptions().setBufferPool(BufferPools.none()), data);
+        compress(CompressionType.GZIP, new CompressionOptions().setBufferPool(BufferPools.threadLocal(0)), data);
+    }
+
+    @Test
+    public void profiles_setLevel() throws Exception {
+        assertEquals(CompressionOptions.DEFAULT_LEVEL, new CompressionOptions().getLevel());
+        assertEquals(CompressionOptions.BEST_SPEED, CompressionOptions.bestSpeed().getLevel());
+        assertEquals(CompressionOptions.BEST_COMPRESSION, CompressionOptions.bestCompression().getLevel());
+    }
+
+    @Test
+    public void compress_gzipWithLevels_tradesSizeForSpeed() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(512 * 1024);
+
+        long stored = compress(CompressionType.GZIP, new CompressionOptions().setLevel(0), data);
+        long fast = compress(CompressionType.GZIP, CompressionOptions.bestSpeed(), data);
+        long best = compress(CompressionType.GZIP, CompressionOptions.bestCompression(), data);
+
+        assertTrue(stored > data.length);
+        assertTrue(fast < stored);
+        assertTrue(best < fast);
+    }
+
+    @Test
+    public void compress_bzip2WithLevels_roundTrips() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(256 * 1024);
+
+        compress(CompressionType.BZIP2, CompressionOptions.bestSpeed(), data);
+        compress(CompressionType.BZIP2, CompressionOptions.bestSpeed().setThreads(2), data);
+    }
+
+    @Test
+    public void compress_xzWithDictionarySize_usesDictionarySize() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(256 * 1024);
+        CompressionOptions options = CompressionOptions.bestSpeed().setDictionarySize(64 * 1024);
+
+        compress(CompressionType.XZ, options, data);
+
+        // the decoder needs memory for the dictionary and a small constant overhead only
+        InputStream input = null;
+        try {
+            input = new XZInputStream(new FileInputStream(new File(ARCHIVE_CREATE_DIR, "data.bin.xz")), 1024);
+            assertArrayEquals(data, CompressorGzipParallelTest.readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void create_zipWithStoreLevel_createsLargerArchive() throws Exception {
+        Archiver stored = ArchiverFactory.createArchiver(ArchiveFormat.ZIP, new CompressionOptions().setLevel(0));
+        Archiver best = ArchiverFactory.createArchiver(ArchiveFormat.ZIP, CompressionOptions.bestCompression());
+
+        File storedArchive = stored.create("stored", ARCHIVE_CREATE_DIR, ARCHIVE_DIR);
+        File bestArchive = best.create("best", ARCHIVE_CREATE_DIR, ARCHIVE_DIR);
+
+        assertTrue(storedArchive.length() > bestArchive.length());
+    }
+
+    /**
+     * Compresses the data with the given options, checks that decompressing restores it, and returns the compressed
+     * size.
+     */
+    private static long compress(CompressionType type, CompressionOptions options, byte[] data) throws Exception {
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin" + type.getDefaultFileExtension());
+        File decompressed = new File(ARCHIVE_EXTRACT_DIR, "data.bin");
+        CompressorGzipParallelTest.write(data, source);
+
+        Compressor compressor = CompressorFactory.createCompressor(type, options);
+        compressor.compress(source, compressed);
+        compressor.decompress(compressed, decompressed);
+
+        assertArrayEquals(data, CompressorGzipParallelTest.readFully(new FileInputStream(decompressed)));
+        return compressed.length();
+    }
+}
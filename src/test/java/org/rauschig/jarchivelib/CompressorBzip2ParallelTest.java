@@ -0,0 +1,88 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+public class CompressorBzip2ParallelTest extends AbstractCompressorTest {
+
+    @Override
+    protected File getCompressedFile() {
+        return new File(RESOURCES_DIR, "compress.txt.bz2");
+    }
+
+    @Override
+    protected Compressor getCompressor() {
+        // small blocks s.t. the test file is split into several blocks
+        return CompressorFactory.createCompressor(CompressionType.BZIP2,
+                new CompressionOptions().setThreads(4).setBlockSize(8));
+    }
+
+    @Test
+    public void compress_multipleBlocks_createsSingleBzip2Stream() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(1024 * 1024);
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.bz2");
+        File decompressed = new File(ARCHIVE_EXTRACT_DIR, "data.bin");
+        CompressorGzipParallelTest.write(data, source);
+
+        Compressor compressor = CompressorFactory.createCompressor(CompressionType.BZIP2,
+                new CompressionOptions().setThreads(3).setBlockSize(100 * 1000));
+        compressor.compress(source, compressed);
+
+        // a sequential decoder that does not read concatenated streams verifies that all blocks are in one stream
+        InputStream input = null;
+        try {
+            input = new BZip2CompressorInputStream(new FileInputStream(compressed), false);
+            assertArrayEquals(data, CompressorGzipParallelTest.readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        compressor.decompress(compressed, decompressed);
+        assertArrayEquals(data, CompressorGzipParallelTest.readFully(new FileInputStream(decompressed)));
+    }
+
+    @Test
+    public void decompress_concatenatedStreams_decompressesAllStreams() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(300 * 1000);
+        ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++) {
+            BZip2CompressorOutputStream stream = new BZip2CompressorOutputStream(concatenated, 1);
+            stream.write(data, i * 100 * 1000, 100 * 1000);
+            stream.finish();
+        }
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.bz2");
+        CompressorGzipParallelTest.write(concatenated.toByteArray(), compressed);
+
+        InputStream input = null;
+        try {
+            input = getCompressor().decompressingStream(new FileInputStream(compressed));
+            assertArrayEquals(data, CompressorGzipParallelTest.readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.rauschig.jarchivelib.CompressorGzipParallelTest.createTestData;
+import static org.rauschig.jarchivelib.CompressorGzipParallelTest.readFully;
+import static org.rauschig.jarchivelib.CompressorGzipParallelTest.write;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Test;
+
+public class CompressorGzipBgzfTest extends AbstractCompressorTest {
+
+    @Override
+    protected File getCompressedFile() {
+        return new File(RESOURCES_DIR, "compress.txt.gz");
+    }
+
+    @Override
+    protected Compressor getCompressor() {
+        // small blocks s.t. the test file is split into several blocks
+        return CompressorFactory.createCompressor(CompressionType.GZIP,
+                new CompressionOptions().setBgzf(true).setBlockSize(8));
+    }
+
+    @Test
+    public void compress_createsBlocksReadableByGzipTools() throws Exception {
+        byte[] data = createTestData(1024 * 1024);
+        File compressed = compress(data, new CompressionOptions().setBgzf(true));
+
+        byte[] bytes = Files.readAllBytes(compressed.toPath());
+        assertTrue(BgzfBlocks.blockSize(bytes, 0) > 0);
+        assertArrayEquals(BgzfBlocks.EOF_BLOCK,
+                Arrays.copyOfRange(bytes, bytes.length - BgzfBlocks.EOF_BLOCK.length, bytes.length));
+
+        InputStream input = null;
+        try {
+            input = new GzipCompressorInputStream(new FileInputStream(compressed), true);
+            assertArrayEquals(data, readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        try {
+            input = new GZIPInputStream(new FileInputStream(compressed));
+            assertArrayEquals(data, readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void compress_incompressibleData_createsBlocksOfAtMost64KiB() throws Exception {
+        byte[] data = new byte[512 * 1024];
+        new Random(42).nextBytes(data);
+        File compressed = compress(data, new CompressionOptions().setBgzf(true).setBgzfIndex(true));
+
+        byte[] bytes = Files.readAllBytes(compressed.toPath());
+        int blocks = 0;
+        for (int offset = 0; offset < bytes.length; blocks++) {
+            int blockSize = BgzfBlocks.blockSize(bytes, offset);
+            assertTrue(blockSize > 0 && blockSize <= BgzfBlocks.MAX_BLOCK_SIZE);
+            offset += blockSize;
+        }
+
+        BgzfIndex index = BgzfIndex.read(BgzfIndex.sidecarOf(compressed));
+        assertEquals(blocks, index.size());
+        assertEquals(data.length, index.getUncompressedOffset(index.size() - 1));
+    }
+
+    @Test
+    public void decompress_withThreads_decompressesBlocksInParallel() throws Exception {
+        byte[] data = createTestData(1024 * 1024 + 17);
+        File compressed = compress(data, new CompressionOptions().setBgzf(true).setThreads(3));
+        File decompressed = new File(ARCHIVE_EXTRACT_DIR, "data.bin");
+
+        CompressorFactory.createCompressor(CompressionType.GZIP, new CompressionOptions().setThreads(4))
+                .decompress(compressed, decompressed);
+
+        assertArrayEquals(data, Files.readAllBytes(decompressed.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void decompress_corruptBlock_throwsException() throws Exception {
+        byte[] data = createTestData(256 * 1024);
+        File compressed = compress(data, new CompressionOptions().setBgzf(true));
+
+        byte[] bytes = Files.readAllBytes(compressed.toPath());
+        int second = BgzfBlocks.blockSize(bytes, 0);
+        bytes[second + BgzfBlocks.blockSize(bytes, second) - BgzfBlocks.TRAILER_SIZE] ^= 1;
+        Files.write(compressed.toPath(), bytes);
+
+        CompressorFactory.createCompressor(CompressionType.GZIP, new CompressionOptions().setThreads(4))
+                .decompress(compressed, new File(ARCHIVE_EXTRACT_DIR, "data.bin"));
+    }
+
+    private static File compress(byte[] data, CompressionOptions options) throws Exception {
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.gz");
+        write(data, source);
+
+        CompressorFactory.createCompressor(CompressionType.GZIP, options).compress(source, compressed);
+        return compressed;
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class CompressorGzipParallelTest extends AbstractCompressorTest {
+
+    @Override
+    protected File getCompressedFile() {
+        return new File(RESOURCES_DIR, "compress.txt.gz");
+    }
+
+    @Override
+    protected Compressor getCompressor() {
+        // small blocks s.t. the test file is split into several blocks
+        return CompressorFactory.createCompressor(CompressionType.GZIP,
+                new CompressionOptions().setThreads(4).setBlockSize(8));
+    }
+
+    @Test
+    public void compress_multipleBlocks_createsStandardGzipStream() throws Exception {
+        byte[] data = createTestData(1024 * 1024);
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.gz");
+        write(data, source);
+
+        Compressor compressor = CompressorFactory.createCompressor(CompressionType.GZIP,
+                new CompressionOptions().setThreads(3).setBlockSize(64 * 1024));
+        compressor.compress(source, compressed);
+
+        InputStream input = null;
+        try {
+            input = new GZIPInputStream(new FileInputStream(compressed));
+            assertArrayEquals(data, readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void decompress_singleMemberInSmallChunks_returnsData() throws Exception {
+        byte[] data = createTestData(1024 * 1024);
+        byte[] compressed = gzip(data, Deflater.DEFAULT_COMPRESSION);
+
+        assertArrayEquals(data, decompress(compressed, 16 * 1024));
+    }
+
+    @Test
+    public void decompress_storedAndCompressedBlocks_returnsData() throws Exception {
+        byte[] data = createTestData(1024 * 1024);
+        byte[] compressed = gzip(data, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION);
+
+        assertArrayEquals(data, decompress(compressed, 4 * 1024));
+    }
+
+    @Test
+    public void decompress_blocksSpanningMoreThanTwoChunks_returnsData() throws Exception {
+        // the deflate blocks span several chunks of 1 KiB, up to the end of the input
+        for (int size : new int[]{ 16 * 1024, 64 * 1024 }) {
+            byte[] data = createTestData(size);
+            assertArrayEquals(data, decompress(gzip(data, Deflater.BEST_SPEED), 1024));
+            assertArrayEquals(data, decompress(gzip(data, Deflater.DEFAULT_COMPRESSION), 1024));
+        }
+    }
+
+    @Test
+    public void decompress_highlyCompressibleWithSmallMemoryLimit_returnsData() throws Exception {
+        // 16 MiB of zeros compress to about 16 KiB, s.t. single chunks exceed the output limit
+        byte[] data = new byte[16 * 1024 * 1024];
+        byte[] compressed = gzip(data, Deflater.DEFAULT_COMPRESSION);
+
+        InputStream input = null;
+        try {
+            input = new ParallelGzipCompressorInputStream(new ByteArrayInputStream(compressed), 4, 4 * 1024, 0);
+            assertArrayEquals(data, readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void open_withThreads_boundsBufferedOutputByMemoryLimit() throws Exception {
+        InputStream empty = new ByteArrayInputStream(new byte[0]);
+        CompressionOptions options = new CompressionOptions().setThreads(8);
+
+        try (ParallelGzipCompressorInputStream input = new ParallelGzipCompressorInputStream(empty, options)) {
+            assertTrue(input.getMaxBufferedSize() <= options.getMemoryLimit());
+        }
+        try (ParallelGzipCompressorInputStream input = new ParallelGzipCompressorInputStream(empty,
+                options.setMemoryLimit(1024L * 1024 * 1024))) {
+            assertTrue(input.getMaxBufferedSize() <= options.getMemoryLimit());
+        }
+    }
+
+    @Test
+    public void decompress_corruptChecksum_throwsException() throws Exception {
+        byte[] compressed = gzip(createTestData(256 * 1024), Deflater.DEFAULT_COMPRESSION);
+        compressed[compressed.length - 8] ^= 1;
+
+        try {
+            decompress(compressed, 16 * 1024);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Decompresses the given gzip data with a ParallelGzipCompressorInputStream.
+     */
+    private static byte[] decompress(byte[] compressed, int chunkSize) throws Exception {
+        InputStream input = null;
+        try {
+            input = new ParallelGzipCompressorInputStream(new ByteArrayInputStream(compressed), 4, chunkSize);
+            return readFully(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Compresses the given data as a single gzip member, where each equally sized part of the data is deflated with
+     * the next of the given levels.
+     */
+    private static byte[] gzip(byte[] data, int... levels) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LevelGzipOutputStream gzip = new LevelGzipOutputStream(output);
+        int part = data.length / levels.length;
+        for (int i = 0; i < levels.length; i++) {
+            int end = (i == levels.length - 1) ? data.length : (i + 1) * part;
+            gzip.setLevel(levels[i]);
+            gzip.write(data, i * part, end - i * part);
+        }
+        gzip.close();
+        return output.toByteArray();
+    }
+
+    private static class LevelGzipOutputStream extends GZIPOutputStream {
+        LevelGzipOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        void setLevel(int level) {
+            def.setLevel(level);
+        }
+    }
+
+    /**
+     * Creates compressible data with repetitions that span block boundaries.
+     */
+    static byte[] createTestData(int size) {
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            if (i > 1000 && random.nextInt(4) > 0) {
+                data[i] = data[i - 1 - random.nextInt(1000)];
+            } else {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+        }
+        return data;
+    }
+
+    static void write(byte[] data, File file) throws Exception {
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(file);
+            output.write(data);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    static byte[] readFully(InputStream input) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        IOUtils.copy(input, output);
+        return output.toByteArray();
+    }
+}
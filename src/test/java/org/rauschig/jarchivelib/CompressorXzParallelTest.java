@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+public class CompressorXzParallelTest extends AbstractCompressorTest {
+
+    @Override
+    protected File getCompressedFile() {
+        return new File(RESOURCES_DIR, "compress.txt.xz");
+    }
+
+    @Override
+    protected Compressor getCompressor() {
+        // small blocks s.t. the test file is split into several blocks
+        return CompressorFactory.createCompressor(CompressionType.XZ,
+                new CompressionOptions().setThreads(4).setBlockSize(8));
+    }
+
+    @Test
+    public void compress_multipleBlocks_createsIndexedXzStream() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(1024 * 1024);
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.xz");
+        CompressorGzipParallelTest.write(data, source);
+
+        Compressor compressor = CompressorFactory.createCompressor(CompressionType.XZ,
+                new CompressionOptions().setThreads(3).setBlockSize(100 * 1000));
+        compressor.compress(source, compressed);
+
+        SeekableXZInputStream input = null;
+        try {
+            input = new SeekableXZInputStream(new SeekableFileInputStream(compressed));
+            assertEquals(11, input.getBlockCount());
+            assertEquals(data.length, input.length());
+            assertArrayEquals(data, CompressorGzipParallelTest.readFully(input));
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Test
+    public void decompress_multipleBlocks_returnsData() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(1024 * 1024);
+        File compressed = compressInBlocks(data);
+        File decompressed = new File(ARCHIVE_EXTRACT_DIR, "data.bin");
+
+        CompressionOptions options = new CompressionOptions().setThreads(4);
+        ParallelXZCompressorInputStream stream = ParallelXZCompressorInputStream.open(compressed, options);
+        assertNotNull(stream);
+        stream.close();
+
+        CompressorFactory.createCompressor(CompressionType.XZ, options).decompress(compressed, decompressed);
+
+        assertArrayEquals(data, Files.readAllBytes(decompressed.toPath()));
+    }
+
+    @Test
+    public void open_singleBlock_returnsNull() throws Exception {
+        byte[] data = CompressorGzipParallelTest.createTestData(64 * 1024);
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.xz");
+        CompressorGzipParallelTest.write(data, source);
+        CompressorFactory.createCompressor(CompressionType.XZ).compress(source, compressed);
+
+        assertNull(ParallelXZCompressorInputStream.open(compressed, new CompressionOptions().setThreads(4)));
+    }
+
+    @Test
+    public void decompress_corruptBlockCheck_throwsException() throws Exception {
+        File compressed = compressInBlocks(CompressorGzipParallelTest.createTestData(1024 * 1024));
+
+        long checkEnd;
+        SeekableXZInputStream index = new SeekableXZInputStream(new SeekableFileInputStream(compressed));
+        try {
+            checkEnd = index.getBlockCompPos(5) + index.getBlockCompSize(5);
+        } finally {
+            index.close();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(compressed, "rw");
+        try {
+            file.seek(checkEnd - 1);
+            int b = file.read();
+            file.seek(checkEnd - 1);
+            file.write(b ^ 1);
+        } finally {
+            file.close();
+        }
+
+        ParallelXZCompressorInputStream input = ParallelXZCompressorInputStream.open(compressed,
+                new CompressionOptions().setThreads(4));
+        try {
+            CompressorGzipParallelTest.readFully(input);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private static File compressInBlocks(byte[] data) throws Exception {
+        File source = new File(ARCHIVE_CREATE_DIR, "data.bin");
+        File compressed = new File(ARCHIVE_CREATE_DIR, "data.bin.xz");
+        CompressorGzipParallelTest.write(data, source);
+
+        CompressorFactory.createCompressor(CompressionType.XZ,
+                new CompressionOptions().setThreads(3).setBlockSize(100 * 1000)).compress(source, compressed);
+        return compressed;
+    }
+}
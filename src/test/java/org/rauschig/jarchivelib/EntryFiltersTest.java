@@ -0,0 +1,102 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EntryFiltersTest {
+
+    @Test
+    public void names_ignoresTrailingSlashes() throws Exception {
+        EntryFilter filter = EntryFilters.names("folder/", "file.txt");
+
+        assertTrue(filter.accept(entry("folder")));
+        assertTrue(filter.accept(entry("folder/")));
+        assertTrue(filter.accept(entry("file.txt")));
+        assertFalse(filter.accept(entry("folder/file.txt")));
+    }
+
+    @Test
+    public void glob_singleStar_doesNotMatchAcrossDirectories() throws Exception {
+        EntryFilter filter = EntryFilters.glob("*.txt");
+
+        assertTrue(filter.accept(entry("file.txt")));
+        assertFalse(filter.accept(entry("folder/file.txt")));
+        assertFalse(filter.accept(entry("file.txt.bak")));
+    }
+
+    @Test
+    public void glob_doubleStar_matchesAcrossDirectories() throws Exception {
+        EntryFilter filter = EntryFilters.glob("folder/**/*.txt");
+
+        assertTrue(filter.accept(entry("folder/file.txt")));
+        assertTrue(filter.accept(entry("folder/sub/sub/file.txt")));
+        assertFalse(filter.accept(entry("other/file.txt")));
+    }
+
+    @Test
+    public void glob_questionMarkAndCharacterSets_matchSingleCharacters() throws Exception {
+        EntryFilter filter = EntryFilters.glob("file?.[ch]", "data[!0-9].bin");
+
+        assertTrue(filter.accept(entry("file1.c")));
+        assertTrue(filter.accept(entry("fileA.h")));
+        assertFalse(filter.accept(entry("file12.c")));
+        assertTrue(filter.accept(entry("datax.bin")));
+        assertFalse(filter.accept(entry("data1.bin")));
+    }
+
+    @Test
+    public void glob_quotesRegexCharacters() throws Exception {
+        EntryFilter filter = EntryFilters.glob("a+b (1).txt");
+
+        assertTrue(filter.accept(entry("a+b (1).txt")));
+        assertFalse(filter.accept(entry("aab (1).txt")));
+    }
+
+    @Test
+    public void glob_characterSetWithIntersection_matchesCharactersLiterally() throws Exception {
+        EntryFilter filter = EntryFilters.glob("file[a&&b]");
+
+        assertTrue(filter.accept(entry("filea")));
+        assertTrue(filter.accept(entry("file&")));
+        assertFalse(filter.accept(entry("filec")));
+    }
+
+    @Test
+    public void glob_characterSetWithBrackets_matchesCharactersLiterally() throws Exception {
+        EntryFilter filter = EntryFilters.glob("file[[:x]", "data[]!]");
+
+        assertTrue(filter.accept(entry("file[")));
+        assertTrue(filter.accept(entry("file:")));
+        assertTrue(filter.accept(entry("filex")));
+        assertFalse(filter.accept(entry("file]")));
+        assertTrue(filter.accept(entry("data]")));
+        assertTrue(filter.accept(entry("data!")));
+        assertFalse(filter.accept(entry("data")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void glob_unclosedCharacterSet_throwsException() throws Exception {
+        EntryFilters.glob("file[.txt");
+    }
+
+    private static ArchiveEntryInfo entry(String name) {
+        return new ArchiveEntryInfo(name, 0, null, name.endsWith("/"));
+    }
+}
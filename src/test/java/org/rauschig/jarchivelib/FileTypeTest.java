@@ -63,6 +63,21 @@ public class FileTypeTest {
         assertEquals(".tar.gz", extension.getSuffix());
     }
 
+    @Test
+    public void get_compressedArchiveXz_returnsCorrectFileType() throws Exception {
+        FileType extension;
+
+        extension = FileType.get("/path/to/file/file.tar.xz");
+        assertEquals(CompressionType.XZ, extension.getCompressionType());
+        assertEquals(ArchiveFormat.TAR, extension.getArchiveFormat());
+        assertEquals(".tar.xz", extension.getSuffix());
+
+        extension = FileType.get("/path/to/file/file.txz");
+        assertEquals(CompressionType.XZ, extension.getCompressionType());
+        assertEquals(ArchiveFormat.TAR, extension.getArchiveFormat());
+        assertEquals(".txz", extension.getSuffix());
+    }
+
     @Test
     public void get_unknownExtension_returnsUnknown() throws Exception {
         assertEquals(FileType.UNKNOWN, FileType.get("/path/to/file/file.foobar"));
@@ -0,0 +1,65 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MappedFileChannelTest {
+
+    private static final File ARCHIVE = new File(AbstractResourceTest.RESOURCES_DIR, "archive.zip");
+
+    @Test
+    public void read_acrossSegments_returnsFileContents() throws Exception {
+        byte[] expected = Files.readAllBytes(ARCHIVE.toPath());
+
+        try (MappedFileChannel channel = MappedFileChannel.open(ARCHIVE, 100)) {
+            assertEquals(expected.length, channel.size());
+
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length + 1);
+            while (channel.read(buffer) > 0) {
+                // read until the end
+            }
+
+            assertEquals(expected.length, buffer.position());
+            assertArrayEquals(expected, Arrays.copyOf(buffer.array(), expected.length));
+            assertEquals(-1, channel.read(buffer));
+        }
+    }
+
+    @Test
+    public void read_afterPosition_readsFromPosition() throws Exception {
+        byte[] expected = Files.readAllBytes(ARCHIVE.toPath());
+
+        try (MappedFileChannel channel = MappedFileChannel.open(ARCHIVE, 100)) {
+            ByteBuffer buffer = ByteBuffer.allocate(150);
+            channel.position(90).read(buffer);
+
+            for (int i = 0; i < 150; i++) {
+                assertEquals(expected[90 + i], buffer.get(i));
+            }
+            assertEquals(240, channel.position());
+        }
+    }
+
+}
@@ -33,6 +33,7 @@ import static java.nio.file.attribute.PosixFilePermission.OWNER_EXECUTE;
 import static java.nio.file.attribute.PosixFilePermission.OWNER_READ;
 import static java.nio.file.attribute.PosixFilePermission.OWNER_WRITE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class PosixFilePermissionsMapperTest {
 
@@ -108,4 +109,16 @@ public class PosixFilePermissionsMapperTest {
         assertEquals(posixFilePermissionsMapper.map(0055),
                 setOf(GROUP_READ, GROUP_EXECUTE, OTHERS_READ, OTHERS_EXECUTE));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void sameModeReturnsSharedSet() {
+        assertSame(posixFilePermissionsMapper.map(0644), new PosixFilePermissionsMapper().map(0644));
+    }
+
+    @Test
+    public void modeOfPermissionsIsInverseOfMap() {
+        for (int mode = 0; mode <= 0777; mode++) {
+            assertEquals(mode, PosixFilePermissionsMapper.mode(posixFilePermissionsMapper.map(mode)));
+        }
+    }
+}
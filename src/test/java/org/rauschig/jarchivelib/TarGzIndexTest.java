@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class TarGzIndexTest extends AbstractResourceTest {
+
+    private static final File ARCHIVE = new File(RESOURCES_DIR, "archive.tar.gz");
+
+    @Test
+    public void open_existingEntries_returnsEntryData() throws Exception {
+        TarGzIndex index = TarGzIndex.build(ARCHIVE);
+
+        assertEquals(12, index.list().size());
+        assertEntryEquals(new File(ARCHIVE_DIR, "file.txt"), index, ARCHIVE, "file.txt");
+        assertEntryEquals(new File(ARCHIVE_DIR, "folder/subfolder/subfolder_file.txt"), index, ARCHIVE,
+                "folder/subfolder/subfolder_file.txt");
+    }
+
+    @Test
+    public void open_nonExistingEntry_returnsNull() throws Exception {
+        assertNull(TarGzIndex.build(ARCHIVE).open(ARCHIVE, "missing.txt"));
+    }
+
+    @Test
+    public void open_afterWriteAndRead_returnsEntryData() throws Exception {
+        File file = new File(ARCHIVE_CREATE_DIR, "archive.tar.gz.idx");
+        TarGzIndex.build(ARCHIVE).write(file);
+
+        TarGzIndex index = TarGzIndex.read(file);
+
+        assertEntryEquals(new File(ARCHIVE_DIR, "file.txt"), index, ARCHIVE, "file.txt");
+    }
+
+    @Test
+    public void open_entriesBehindCheckpoints_returnsEntryData() throws Exception {
+        assertRandomAccess(new CompressionOptions());
+    }
+
+    @Test
+    public void open_entriesInStoredBlocks_returnsEntryData() throws Exception {
+        assertRandomAccess(new CompressionOptions().setLevel(0));
+    }
+
+    @Test
+    public void open_entriesOfParallelCompressedArchive_returnsEntryData() throws Exception {
+        assertRandomAccess(new CompressionOptions().setThreads(4).setBlockSize(64 * 1024));
+    }
+
+    @Test
+    public void open_entriesOfBgzfArchive_returnsEntryData() throws Exception {
+        assertRandomAccess(new CompressionOptions().setBgzf(true));
+    }
+
+    @Test
+    public void open_entriesOfBgzfArchiveWithIndex_returnsEntryData() throws Exception {
+        assertRandomAccess(new CompressionOptions().setBgzf(true).setBgzfIndex(true).setThreads(3));
+
+        assertTrue(new File(ARCHIVE_CREATE_DIR, "data.tar.gz.gzi").isFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void open_modifiedArchive_throwsException() throws Exception {
+        File archive = new File(ARCHIVE_CREATE_DIR, "archive.tar.gz");
+        Files.copy(ARCHIVE.toPath(), archive.toPath());
+        TarGzIndex index = TarGzIndex.build(archive);
+
+        assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+
+        index.open(archive, "file.txt");
+    }
+
+    private void assertRandomAccess(CompressionOptions options) throws Exception {
+        File source = new File(ARCHIVE_CREATE_DIR, "data");
+        assertTrue(source.mkdir());
+        for (int i = 0; i < 8; i++) {
+            byte[] data = CompressorGzipParallelTest.createTestData(100 * 1024 + i);
+            Files.write(new File(source, "data" + i + ".txt").toPath(), data);
+        }
+
+        Archiver archiver = ArchiverFactory.createArchiver(ArchiveFormat.TAR, CompressionType.GZIP, options);
+        File archive = archiver.create("data", ARCHIVE_CREATE_DIR, source);
+
+        TarGzIndex index = TarGzIndex.build(archive, 128 * 1024);
+
+        assertTrue(index.getCheckpointCount() > 1);
+        for (int i = 7; i >= 0; i--) {
+            assertEntryEquals(new File(source, "data" + i + ".txt"), index, archive, "data" + i + ".txt");
+        }
+    }
+
+    private static void assertEntryEquals(File expected, TarGzIndex index, File archive, String name)
+        throws IOException {
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream in = index.open(archive, name)) {
+            IOUtils.copy(in, actual);
+        }
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), actual.toByteArray());
+    }
+}
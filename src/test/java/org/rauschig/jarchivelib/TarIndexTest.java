@@ -0,0 +1,174 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TarIndexTest extends AbstractResourceTest {
+
+    private File archive;
+
+    @Before
+    public void copyArchive() throws IOException {
+        archive = new File(ARCHIVE_CREATE_DIR, "archive.tar");
+        Files.copy(new File(RESOURCES_DIR, "archive.tar").toPath(), archive.toPath());
+    }
+
+    @Test
+    public void open_createsSidecar() throws Exception {
+        TarIndex.open(archive);
+
+        assertTrue(new File(archive.getPath() + TarIndex.SIDECAR_SUFFIX).isFile());
+    }
+
+    @Test
+    public void stream_existingEntry_returnsEntryData() throws Exception {
+        TarIndex index = TarIndex.open(archive);
+
+        assertEquals(12, index.list().size());
+        assertEquals(17, index.getEntry("file.txt").getSize());
+        assertArrayEquals(Files.readAllBytes(new File(ARCHIVE_DIR, "folder/subfolder/subfolder_file.txt").toPath()),
+                read(index, "folder/subfolder/subfolder_file.txt"));
+    }
+
+    @Test
+    public void stream_nonExistingEntry_returnsNull() throws Exception {
+        TarIndex index = TarIndex.open(archive);
+
+        assertNull(index.getEntry("missing.txt"));
+        assertNull(index.stream("missing.txt"));
+    }
+
+    @Test
+    public void open_withExistingSidecar_readsIndex() throws Exception {
+        TarIndex.open(archive);
+
+        TarIndex index = TarIndex.open(archive);
+
+        assertArrayEquals(Files.readAllBytes(new File(ARCHIVE_DIR, "file.txt").toPath()), read(index, "file.txt"));
+    }
+
+    @Test
+    public void open_withCorruptSidecar_rebuildsIndex() throws Exception {
+        Files.write(new File(archive.getPath() + TarIndex.SIDECAR_SUFFIX).toPath(), new byte[]{ 1, 2, 3 });
+
+        TarIndex index = TarIndex.open(archive);
+
+        assertEquals(12, index.list().size());
+    }
+
+    @Test
+    public void extract_existingEntry_writesFile() throws Exception {
+        File file = TarIndex.open(archive).extract("folder/folder_file.txt", ARCHIVE_EXTRACT_DIR);
+
+        assertEquals(new File(ARCHIVE_EXTRACT_DIR, "folder/folder_file.txt"), file);
+        assertArrayEquals(Files.readAllBytes(new File(ARCHIVE_DIR, "folder/folder_file.txt").toPath()),
+                Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void lookup_afterAppend_findsAppendedEntries() throws Exception {
+        File tar = new File(ARCHIVE_CREATE_DIR, "appended.tar");
+        writeTar(tar, "first", "second");
+        TarIndex index = TarIndex.open(tar);
+        assertNull(index.getEntry("third"));
+
+        // the appended archive starts with the same bytes, like after tar -r
+        writeTar(tar, "first", "second", "third");
+
+        assertEquals("third", new String(read(index, "third"), StandardCharsets.UTF_8));
+        assertEquals("first", new String(read(TarIndex.open(tar), "first"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void lookup_afterRewrite_reindexesArchive() throws Exception {
+        File tar = new File(ARCHIVE_CREATE_DIR, "rewritten.tar");
+        writeTar(tar, "first", "second");
+        TarIndex index = TarIndex.open(tar);
+
+        writeTar(tar, "second");
+        assertTrue(tar.setLastModified(tar.lastModified() - 10000));
+
+        assertNull(index.getEntry("first"));
+        assertEquals("second", new String(read(index, "second"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void lookup_afterReplacementWithZeroFilledEntry_reindexesArchive() throws Exception {
+        File tar = new File(ARCHIVE_CREATE_DIR, "replaced.tar");
+        writeTar(tar, "a.bin", new byte[512]);
+        TarIndex.open(tar);
+
+        // the block before the indexed end is all zeros in both archives
+        writeTar(tar, "big.bin", new byte[40 * 1024]);
+        assertTrue(tar.setLastModified(tar.lastModified() + 10000));
+
+        TarIndex index = TarIndex.open(tar);
+        assertEquals(1, index.list().size());
+        assertNull(index.getEntry("a.bin"));
+        assertEquals(40 * 1024, index.getEntry("big.bin").getSize());
+        assertEquals(1, TarIndex.open(tar).list().size());
+    }
+
+    private static void writeTar(File file, String name, byte[] data) throws IOException {
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new FileOutputStream(file))) {
+            TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(data.length);
+            out.putArchiveEntry(entry);
+            out.write(data);
+            out.closeArchiveEntry();
+        }
+    }
+
+    private static void writeTar(File file, String... names) throws IOException {
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new FileOutputStream(file))) {
+            for (String name : names) {
+                byte[] data = name.getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(data.length);
+                entry.setModTime(new Date(1000000000000L));
+                out.putArchiveEntry(entry);
+                out.write(data);
+                out.closeArchiveEntry();
+            }
+        }
+    }
+
+    private static byte[] read(TarIndex index, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = index.stream(name)) {
+            IOUtils.copy(in, out);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2013 Thomas Rausch
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.rauschig.jarchivelib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+public class TarXzIndexTest extends AbstractResourceTest {
+
+    private static final File ARCHIVE = new File(RESOURCES_DIR, "archive.tar.xz");
+
+    @Test
+    public void open_existingEntries_returnsEntryData() throws Exception {
+        TarXzIndex index = TarXzIndex.build(ARCHIVE);
+
+        assertEquals(12, index.list().size());
+        assertEntryEquals(new File(ARCHIVE_DIR, "file.txt"), index, ARCHIVE, "file.txt");
+        assertEntryEquals(new File(ARCHIVE_DIR, "folder/subfolder/subfolder_file.txt"), index, ARCHIVE,
+                "folder/subfolder/subfolder_file.txt");
+    }
+
+    @Test
+    public void open_nonExistingEntry_returnsNull() throws Exception {
+        assertNull(TarXzIndex.build(ARCHIVE).open(ARCHIVE, "missing.txt"));
+    }
+
+    @Test
+    public void open_afterWriteAndRead_returnsEntryData() throws Exception {
+        File file = new File(ARCHIVE_CREATE_DIR, "archive.tar.xz.idx");
+        TarXzIndex.build(ARCHIVE).write(file);
+
+        TarXzIndex index = TarXzIndex.read(file);
+
+        assertEntryEquals(new File(ARCHIVE_DIR, "file.txt"), index, ARCHIVE, "file.txt");
+    }
+
+    @Test
+    public void open_entriesOfMultiBlockArchive_returnsEntryData() throws Exception {
+        File source = new File(ARCHIVE_CREATE_DIR, "data");
+        assertTrue(source.mkdir());
+        for (int i = 0; i < 8; i++) {
+            byte[] data = CompressorGzipParallelTest.createTestData(100 * 1024 + i);
+            Files.write(new File(source, "data" + i + ".txt").toPath(), data);
+        }
+
+        CompressionOptions options = new CompressionOptions().setThreads(4).setBlockSize(128 * 1024);
+        Archiver archiver = ArchiverFactory.createArchiver(ArchiveFormat.TAR, CompressionType.XZ, options);
+        File archive = archiver.create("data", ARCHIVE_CREATE_DIR, source);
+
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(archive))) {
+            assertTrue(xz.getBlockCount() > 1);
+        }
+
+        TarXzIndex index = TarXzIndex.build(archive);
+        for (int i = 7; i >= 0; i--) {
+            assertEntryEquals(new File(source, "data" + i + ".txt"), index, archive, "data" + i + ".txt");
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void open_modifiedArchive_throwsException() throws Exception {
+        File archive = new File(ARCHIVE_CREATE_DIR, "archive.tar.xz");
+        Files.copy(ARCHIVE.toPath(), archive.toPath());
+        TarXzIndex index = TarXzIndex.build(archive);
+
+        assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+
+        index.open(archive, "file.txt");
+    }
+
+    private static void assertEntryEquals(File expected, TarXzIndex index, File archive, String name)
+        throws IOException {
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream in = index.open(archive, name)) {
+            IOUtils.copy(in, actual);
+        }
+        assertArrayEquals(Files.readAllBytes(expected.toPath()), actual.toByteArray());
+    }
+}